@@ -12,7 +12,13 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import uk.tw.energy.builders.MeterReadingsBuilder;
+import uk.tw.energy.domain.ElectricityReading;
 import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.service.BinaryReadingCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -34,6 +40,33 @@ public class EndpointTest {
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
     }
 
+    @Test
+    public void shouldStoreReadingsUploadedInTheBinaryFormat() throws IOException {
+        MeterReadings meterReadings = new MeterReadingsBuilder().setSmartMeterId("erin").generateElectricityReadings().build();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        BinaryReadingCodec.encode(meterReadings.getSmartMeterId(), meterReadings.getElectricityReadings(),
+                ElectricityReading::getTime, ElectricityReading::getReading, body);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.valueOf(BinaryReadingCodec.MEDIA_TYPE));
+
+        ResponseEntity<String> response = restTemplate.postForEntity("/readings/store", new HttpEntity<>(body.toByteArray(), headers), String.class);
+        ResponseEntity<ElectricityReading[]> stored = restTemplate.getForEntity("/readings/read/erin", ElectricityReading[].class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(stored.getBody()).containsExactlyElementsOf(meterReadings.getElectricityReadings());
+    }
+
+    @Test
+    public void shouldStoreBatchOfReadingsForSeveralMeters() throws JsonProcessingException {
+        MeterReadings first = new MeterReadingsBuilder().setSmartMeterId("alice").generateElectricityReadings().build();
+        MeterReadings second = new MeterReadingsBuilder().setSmartMeterId("carol").generateElectricityReadings().build();
+        HttpEntity<String> entity = getStringHttpEntity(Arrays.asList(first, second));
+
+        ResponseEntity<String> response = restTemplate.postForEntity("/readings/batch-store", entity, String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
     @Test
     public void givenMeterIdShouldReturnAMeterReadingAssociatedWithMeterId() throws JsonProcessingException {
         String smartMeterId = "bob";
@@ -54,6 +87,14 @@ public class EndpointTest {
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
     }
 
+    @Test
+    public void givenSeededGasMeterShouldCompareItsGasPlans() {
+        ResponseEntity<String> response = restTemplate.getForEntity("/price-plans/gas/compare-all/smart-meter-0", String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).contains("\"pricePlanId\":\"gas-price-plan-0\"").contains("gas-price-plan-2");
+    }
+
     @Test
     public void givenMeterIdAndLimitShouldReturnRecommendedCheapestPricePlans() throws JsonProcessingException {
         String smartMeterId = "bob";
@@ -64,6 +105,25 @@ public class EndpointTest {
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
     }
 
+    @Test
+    public void shouldExposeIngestAndPricingMetricsForPrometheus() throws JsonProcessingException {
+        String smartMeterId = "dave";
+        populateMeterReadingsForMeter(smartMeterId);
+        restTemplate.getForEntity("/price-plans/compare-all/" + smartMeterId, String.class);
+
+        ResponseEntity<String> response = restTemplate.getForEntity("/actuator/prometheus", String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody())
+                .contains("readings_ingested_total{commodity=\"electricity\",}")
+                .contains("readings_store_heap_per_series_bytes{commodity=\"electricity\",}")
+                .contains("price_plans_phase_seconds_count{operation=\"compare-all\",phase=\"price\",}")
+                .contains("cache_gets_total{cache=\"price-plan-costs\",result=\"miss\",}")
+                .contains("executor_queued_tasks{name=\"price-plans-compute\",}")
+                .contains("tomcat_threads_busy_threads{name=")
+                .contains("http_server_requests_seconds{exception=\"None\",method=\"GET\",outcome=\"SUCCESS\",status=\"200\",uri=\"/price-plans/compare-all/{smartMeterId}\",quantile=\"0.999\",}");
+    }
+
     private HttpEntity<String> getStringHttpEntity(Object object) throws JsonProcessingException {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
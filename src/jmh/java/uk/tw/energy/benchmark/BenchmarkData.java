@@ -0,0 +1,83 @@
+package uk.tw.energy.benchmark;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.GasReading;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.generator.GasReadingGenerator;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.store.ReadingBatch;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Seeds the services under benchmark. Reading values come from {@link ElectricityReadingsGenerator} and
+ * {@link GasReadingGenerator}, but the generators' hourly spacing would put ten million readings eleven centuries
+ * back, so they are re-timed to end eight hours from now and span at most two years, at no more than one an hour.
+ */
+final class BenchmarkData {
+
+    static final String SMART_METER_ID = "smart-meter-0";
+
+    private static final int CHUNK = 100_000;
+    private static final long HISTORY_SECONDS = TimeUnit.DAYS.toSeconds(2 * 365);
+
+    private BenchmarkData() { }
+
+    static long intervalSeconds(int readings) {
+        return Math.max(1, Math.min(TimeUnit.HOURS.toSeconds(1), HISTORY_SECONDS / readings));
+    }
+
+    static Instant latest() {
+        return Instant.now().plusSeconds(TimeUnit.HOURS.toSeconds(8));
+    }
+
+    /**
+     * A service holding {@code readings} electricity and gas readings for {@link #SMART_METER_ID}, stored oldest chunk
+     * first so that every batch appends in order.
+     */
+    static MeterReadingService meterReadingService(int readings) {
+        MeterReadingService service = new MeterReadingService(new HashMap<>(), new HashMap<>());
+        ElectricityReadingsGenerator electricity = new ElectricityReadingsGenerator();
+        GasReadingGenerator gas = new GasReadingGenerator();
+        long interval = intervalSeconds(readings);
+        Instant oldest = latest().minusSeconds(interval * (readings - 1));
+        for (int start = 0; start < readings; start += CHUNK) {
+            int size = Math.min(CHUNK, readings - start);
+            Instant first = oldest.plusSeconds(interval * start);
+            service.storeReadings(SMART_METER_ID, retimed(electricity.generate(size), ElectricityReading::getReading, first, interval));
+            service.storeGasReadings(SMART_METER_ID, retimed(gas.generate(size), GasReading::getReading, first, interval));
+        }
+        return service;
+    }
+
+    static List<PricePlan> pricePlans(int count) {
+        Random random = new Random(1);
+        List<PricePlan> pricePlans = new ArrayList<>(count);
+        for (int plan = 0; plan < count; plan++) {
+            List<PricePlan.PeakTimeMultiplier> multipliers = new ArrayList<>();
+            for (DayOfWeek day : DayOfWeek.values()) {
+                multipliers.add(new PricePlan.PeakTimeMultiplier(day, BigDecimal.valueOf(100 + random.nextInt(100), 2)));
+            }
+            pricePlans.add(new PricePlan("price-plan-" + plan, "supplier-" + plan % 10,
+                    BigDecimal.valueOf(1 + random.nextInt(500), 3), multipliers));
+        }
+        return pricePlans;
+    }
+
+    private static <T> ReadingBatch retimed(List<T> readings, Function<T, BigDecimal> reading, Instant first, long interval) {
+        ReadingBatch batch = new ReadingBatch(readings.size());
+        for (int i = 0; i < readings.size(); i++) {
+            batch.add(first.plusSeconds(interval * i), reading.apply(readings.get(i)));
+        }
+        return batch;
+    }
+}
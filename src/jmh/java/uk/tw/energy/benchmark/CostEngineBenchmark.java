@@ -0,0 +1,91 @@
+package uk.tw.energy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.tw.energy.service.CostEngine;
+import uk.tw.energy.store.ReadingBatch;
+import uk.tw.energy.store.ReadingRollup;
+import uk.tw.energy.store.ReadingSeries;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Day-of-week costs of one week of rollups across a catalogue of plans, the work behind the rank endpoints, done
+ * with the BigDecimal chain PricePlanService used to run and with {@link CostEngine}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CostEngineBenchmark {
+
+    private static final Instant START = Instant.parse("2021-11-22T00:00:00Z");
+
+    @Param({"10", "1000"})
+    public int plans;
+
+    private ReadingRollup[] days;
+    private BigDecimal[] prices;
+    private long[] priceUnscaled;
+    private int[] priceScales;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        days = new ReadingRollup[7];
+        for (int day = 0; day < days.length; day++) {
+            ReadingSeries series = new ReadingSeries();
+            ReadingBatch batch = new ReadingBatch();
+            for (int i = 0; i < 96; i++) {
+                batch.add(START.plusSeconds(day * 86_400L + i * 900L), BigDecimal.valueOf(random.nextInt(10_000), 3));
+            }
+            series.append(batch);
+            days[day] = series.total();
+        }
+        prices = new BigDecimal[plans];
+        priceUnscaled = new long[plans];
+        priceScales = new int[plans];
+        for (int plan = 0; plan < plans; plan++) {
+            prices[plan] = BigDecimal.valueOf(random.nextInt(500), 3).multiply(BigDecimal.valueOf(100 + random.nextInt(50), 2));
+            priceUnscaled[plan] = prices[plan].unscaledValue().longValueExact();
+            priceScales[plan] = prices[plan].scale();
+        }
+    }
+
+    @Benchmark
+    public void bigDecimal(Blackhole blackhole) {
+        for (ReadingRollup day : days) {
+            for (BigDecimal price : prices) {
+                BigDecimal averageUsage = day.sumAsBigDecimal().divide(BigDecimal.valueOf(day.getCount()), RoundingMode.HALF_UP);
+                BigDecimal dayUsage = averageUsage.multiply(BigDecimal.valueOf(24)).setScale(4, RoundingMode.HALF_UP);
+                blackhole.consume(dayUsage.multiply(price).setScale(4, RoundingMode.HALF_UP));
+            }
+        }
+    }
+
+    @Benchmark
+    public void fixedPoint(Blackhole blackhole) {
+        for (ReadingRollup day : days) {
+            long dayUsage = CostEngine.dayUsage(CostEngine.averageReading(day), CostEngine.averageScale(day));
+            for (int plan = 0; plan < priceUnscaled.length; plan++) {
+                blackhole.consume(CostEngine.cost(dayUsage, CostEngine.SCALE, priceUnscaled[plan], priceScales[plan]));
+            }
+        }
+    }
+}
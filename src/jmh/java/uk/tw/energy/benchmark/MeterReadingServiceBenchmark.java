@@ -0,0 +1,70 @@
+package uk.tw.energy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.SeparateUsages;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.service.MeterReadingService;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MeterReadingService} against a meter with a growing history. {@code storeReadings} posts a day of readings
+ * after the latest one, as the meter would, through the same list overload the controller uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MeterReadingServiceBenchmark {
+
+    private static final int READINGS_PER_POST = 24;
+
+    @Param({"1000", "100000", "10000000"})
+    public int readings;
+
+    private MeterReadingService meterReadingService;
+    private List<ElectricityReading> post;
+    private long interval;
+    private Instant next;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        meterReadingService = BenchmarkData.meterReadingService(readings);
+        post = new ElectricityReadingsGenerator().generate(READINGS_PER_POST);
+        interval = BenchmarkData.intervalSeconds(readings);
+        next = BenchmarkData.latest().plusSeconds(interval);
+    }
+
+    @Benchmark
+    public void storeReadings() {
+        List<ElectricityReading> electricityReadings = new ArrayList<>(post.size());
+        for (ElectricityReading reading : post) {
+            electricityReadings.add(new ElectricityReading(next, reading.getReading()));
+            next = next.plusSeconds(interval);
+        }
+        meterReadingService.storeReadings(BenchmarkData.SMART_METER_ID, electricityReadings);
+    }
+
+    @Benchmark
+    public Optional<SeparateUsages> getSeparateUsages() {
+        return meterReadingService.getSeparateUsages(BenchmarkData.SMART_METER_ID);
+    }
+}
@@ -0,0 +1,80 @@
+package uk.tw.energy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.tw.energy.domain.Commodity;
+import uk.tw.energy.domain.DayCostElectricity;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.PricePlanCost;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.PricePlanService;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recommend and rank for the cheapest {@link #LIMIT} plans as the catalogue grows, against ordering every plan: a full
+ * sort of the cached compare-all costs as recommend used to do, and rank with no limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PlanSelectionBenchmark {
+
+    private static final int LIMIT = 3;
+    private static final int READINGS = 10_000;
+
+    @Param({"100", "1000", "10000"})
+    public int plans;
+
+    private PricePlanService pricePlanService;
+    private DayCostElectricity dayCostElectricity;
+
+    @Setup
+    public void setUp() {
+        MeterReadingService meterReadingService = BenchmarkData.meterReadingService(READINGS);
+        pricePlanService = new PricePlanService(BenchmarkData.pricePlans(plans), meterReadingService);
+        dayCostElectricity = new DayCostElectricity("price-plan-0", new ElectricityReading(Instant.now(), BigDecimal.ONE));
+    }
+
+    @Benchmark
+    public Optional<List<Map.Entry<String, BigDecimal>>> recommendCheapest() {
+        return pricePlanService.recommendCheapestPricePlans(Commodity.ELECTRICITY, BenchmarkData.SMART_METER_ID, LIMIT);
+    }
+
+    @Benchmark
+    public List<Map.Entry<String, BigDecimal>> recommendBySortingEveryPlan() {
+        List<Map.Entry<String, BigDecimal>> recommendations = new ArrayList<>(pricePlanService
+                .getConsumptionCostOfElectricityReadingsForEachPricePlan(BenchmarkData.SMART_METER_ID).get().entrySet());
+        recommendations.sort(Comparator.comparing(Map.Entry::getValue));
+        return recommendations.subList(0, Math.min(LIMIT, recommendations.size()));
+    }
+
+    @Benchmark
+    public Map<String, List<PricePlanCost>> rankCheapest() {
+        return pricePlanService.getPricePlanRank(BenchmarkData.SMART_METER_ID, dayCostElectricity, LIMIT);
+    }
+
+    @Benchmark
+    public Map<String, List<PricePlanCost>> rankEveryPlan() {
+        return pricePlanService.getPricePlanRank(BenchmarkData.SMART_METER_ID, dayCostElectricity, null);
+    }
+}
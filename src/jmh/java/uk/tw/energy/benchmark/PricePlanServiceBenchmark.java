@@ -0,0 +1,93 @@
+package uk.tw.energy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.tw.energy.domain.DayCostElectricity;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.PricePlanCost;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.PricePlanService;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every {@link PricePlanService} query for one meter across history lengths and plan catalogue sizes. Compare-all is
+ * measured both through the result cache, which hits on every call since nothing is ingested, and with the cache
+ * disabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PricePlanServiceBenchmark {
+
+    private static final int RANK_LIMIT = 3;
+
+    @Param({"1000", "100000", "10000000"})
+    public int readings;
+
+    @Param({"1", "10", "1000"})
+    public int plans;
+
+    private PricePlanService pricePlanService;
+    private PricePlanService uncachedPricePlanService;
+    private String pricePlanId;
+    private DayCostElectricity dayCostElectricity;
+
+    @Setup
+    public void setUp() {
+        MeterReadingService meterReadingService = BenchmarkData.meterReadingService(readings);
+        List<PricePlan> pricePlans = BenchmarkData.pricePlans(plans);
+        pricePlanService = new PricePlanService(pricePlans, meterReadingService);
+        uncachedPricePlanService = new PricePlanService(pricePlans, meterReadingService, 0, 0);
+        pricePlanId = pricePlans.get(plans - 1).getPlanName();
+        dayCostElectricity = new DayCostElectricity(pricePlanId, new ElectricityReading(Instant.now(), BigDecimal.ONE));
+    }
+
+    @Benchmark
+    public Optional<Map<String, BigDecimal>> compareAll() {
+        return pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(BenchmarkData.SMART_METER_ID);
+    }
+
+    @Benchmark
+    public Optional<Map<String, BigDecimal>> compareAllUncached() {
+        return uncachedPricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(BenchmarkData.SMART_METER_ID);
+    }
+
+    @Benchmark
+    public Optional<Map<String, BigDecimal>> lastWeek() {
+        return pricePlanService.getConsumptionCostOfElectricityReadingsForLastWeek(BenchmarkData.SMART_METER_ID, pricePlanId);
+    }
+
+    @Benchmark
+    public Map<String, BigDecimal> dayCost() {
+        return pricePlanService.getDayCostElectricityUsage(BenchmarkData.SMART_METER_ID, dayCostElectricity);
+    }
+
+    @Benchmark
+    public Map<String, BigDecimal> costRank() {
+        return pricePlanService.getCostForDayOfWeekRank(BenchmarkData.SMART_METER_ID, dayCostElectricity);
+    }
+
+    @Benchmark
+    public Map<String, List<PricePlanCost>> rank() {
+        return pricePlanService.getPricePlanRank(BenchmarkData.SMART_METER_ID, dayCostElectricity, RANK_LIMIT);
+    }
+}
@@ -0,0 +1,89 @@
+package uk.tw.energy.benchmark;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.store.ReadingBatch;
+import uk.tw.energy.store.ReadingStore;
+import uk.tw.energy.store.ReadingStoreOptions;
+import uk.tw.energy.store.StorageMode;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bytes per stored reading for the original {@code Map<String, List<ElectricityReading>>} layout and for each
+ * {@link StorageMode}. Footprint is not something JMH measures, so this runs as a plain program through the
+ * {@code footprint} Gradle task: {@code ./gradlew footprint --args="<meters> <readings per meter>"}.
+ * <p>
+ * The heap figure for the column layouts includes the daily rollups kept next to every series, the difference from
+ * the bare column bytes. Nothing is compacted here, so there are no hourly rollups. Layouts are compared on the total
+ * of heap and direct bytes, as a layout can only save memory overall if that goes down.
+ */
+public class ReadingFootprintBenchmark {
+
+    private static volatile Object retained;
+
+    public static void main(String[] args) {
+        int meters = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int readingsPerMeter = args.length > 1 ? Integer.parseInt(args[1]) : 720;
+        ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+        List<ElectricityReading> readings = generator.generate(readingsPerMeter);
+        long total = (long) meters * readingsPerMeter;
+
+        System.out.printf("%,d meters x %,d readings = %,d readings%n", meters, readingsPerMeter, total);
+        System.out.printf("%-10s %14s %14s %14s %14s%n", "layout", "heap B/rdg", "direct B/rdg", "total B/rdg", "columns B/rdg");
+
+        report("list", total, () -> {
+            Map<String, List<ElectricityReading>> byMeter = new HashMap<>();
+            for (int meter = 0; meter < meters; meter++) {
+                byMeter.put("smart-meter-" + meter, generator.generate(readingsPerMeter));
+            }
+            return byMeter;
+        }, null);
+        for (StorageMode mode : StorageMode.values()) {
+            report(mode.name().toLowerCase(), total, () -> {
+                ReadingStore store = new ReadingStore(ReadingStoreOptions.builder().storageMode(mode).build());
+                for (int meter = 0; meter < meters; meter++) {
+                    store.append("smart-meter-" + meter, ReadingBatch.of(readings, ElectricityReading::getTime, ElectricityReading::getReading));
+                }
+                return store;
+            }, store -> store.meterIds().stream()
+                    .map(id -> store.getSnapshot(id).get())
+                    .mapToLong(snapshot -> snapshot.heapBytes() + snapshot.directBytes())
+                    .sum());
+        }
+    }
+
+    private static <T> void report(String layout, long readings, Supplier<T> build, ToLongFunction<T> columnBytes) {
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+        T built = build.get();
+        retained = built;
+        long heap = usedHeap() - heapBefore;
+        long direct = usedDirect() - directBefore;
+        String columns = columnBytes == null ? "-" : String.format("%.1f", (double) columnBytes.applyAsLong(built) / readings);
+        System.out.printf("%-10s %14.1f %14.1f %14.1f %14s%n", layout, (double) heap / readings, (double) direct / readings,
+                (double) (heap + direct) / readings, columns);
+        retained = null;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long usedDirect() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+    }
+}
@@ -0,0 +1,81 @@
+package uk.tw.energy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.store.ReadingBatch;
+import uk.tw.energy.store.ReadingSeries;
+import uk.tw.energy.store.ReadingStoreOptions;
+import uk.tw.energy.store.SeriesSnapshot;
+import uk.tw.energy.store.StorageMode;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a {@link ReadingSeries} back under each {@link StorageMode}: a full scan of the values, the readings of one
+ * day, and finding where a day starts. Shows what {@link StorageMode#COMPRESSED} pays in decoding for its footprint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadingSeriesScanBenchmark {
+
+    private static final int READINGS = 100_000;
+
+    @Param({"HEAP", "OFF_HEAP", "COMPRESSED"})
+    public StorageMode mode;
+
+    private ReadingSeries series;
+    private Instant dayStart;
+    private Instant dayEnd;
+
+    @Setup
+    public void setUp() {
+        long interval = BenchmarkData.intervalSeconds(READINGS);
+        Instant first = BenchmarkData.latest().minusSeconds(interval * (READINGS - 1));
+        List<ElectricityReading> generated = new ElectricityReadingsGenerator().generate(READINGS);
+        ReadingBatch batch = new ReadingBatch(READINGS);
+        for (int i = 0; i < READINGS; i++) {
+            batch.add(first.plusSeconds(interval * i), generated.get(i).getReading());
+        }
+        series = new ReadingSeries(ReadingStoreOptions.builder().storageMode(mode).build());
+        series.append(batch);
+        dayStart = first.plusSeconds(interval * (READINGS / 2));
+        dayEnd = dayStart.plusSeconds(TimeUnit.DAYS.toSeconds(1));
+    }
+
+    @Benchmark
+    public long scanValues() {
+        SeriesSnapshot snapshot = series.snapshot();
+        long total = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            total += snapshot.value(i);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public List<ElectricityReading> readOneDay() {
+        return series.snapshot().toList(dayStart, dayEnd, ElectricityReading::new);
+    }
+
+    @Benchmark
+    public int findDayStart() {
+        return series.snapshot().indexFrom(dayStart);
+    }
+}
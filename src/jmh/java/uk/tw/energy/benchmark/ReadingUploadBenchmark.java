@@ -0,0 +1,70 @@
+package uk.tw.energy.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.service.BinaryReadingCodec;
+import uk.tw.energy.store.ReadingBatch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding one meter's upload into a {@link ReadingBatch}: JSON bound to {@link MeterReadings} as
+ * {@code /readings/store} does, against {@link BinaryReadingCodec}. Upload sizes are printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadingUploadBenchmark {
+
+    @Param({"24", "1000", "100000"})
+    public int readings;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<ElectricityReading> electricityReadings = new ElectricityReadingsGenerator().generate(readings);
+        json = objectMapper.writeValueAsBytes(new MeterReadings(BenchmarkData.SMART_METER_ID, electricityReadings));
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        BinaryReadingCodec.encode(BenchmarkData.SMART_METER_ID, electricityReadings,
+                ElectricityReading::getTime, ElectricityReading::getReading, body);
+        binary = body.toByteArray();
+        System.out.printf("%n%,d readings: json %,d bytes, binary %,d bytes%n", readings, json.length, binary.length);
+    }
+
+    @Benchmark
+    public ReadingBatch json() throws IOException {
+        MeterReadings meterReadings = objectMapper.readValue(json, MeterReadings.class);
+        return ReadingBatch.of(meterReadings.getElectricityReadings(), ElectricityReading::getTime, ElectricityReading::getReading);
+    }
+
+    @Benchmark
+    public ReadingBatch binary() throws IOException {
+        return BinaryReadingCodec.decode(new ByteArrayInputStream(binary)).getReadings();
+    }
+}
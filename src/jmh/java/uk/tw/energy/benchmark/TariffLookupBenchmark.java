@@ -0,0 +1,75 @@
+package uk.tw.energy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.tw.energy.domain.PricePlan;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PricePlan#getPrice} for a week of half-hourly times, against the stream over day multipliers it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TariffLookupBenchmark {
+
+    private static final BigDecimal UNIT_RATE = BigDecimal.TEN;
+
+    private final List<Map.Entry<DayOfWeek, BigDecimal>> multipliers = new ArrayList<>();
+    private PricePlan pricePlan;
+    private LocalDateTime[] times;
+
+    @Setup
+    public void setUp() {
+        List<PricePlan.PeakTimeMultiplier> peakTimeMultipliers = new ArrayList<>();
+        for (DayOfWeek day : DayOfWeek.values()) {
+            BigDecimal multiplier = BigDecimal.valueOf(day.getValue(), 1);
+            multipliers.add(new AbstractMap.SimpleImmutableEntry<>(day, multiplier));
+            peakTimeMultipliers.add(new PricePlan.PeakTimeMultiplier(day, multiplier));
+        }
+        pricePlan = new PricePlan("plan", "supplier", UNIT_RATE, peakTimeMultipliers);
+        times = new LocalDateTime[7 * 48];
+        LocalDateTime monday = LocalDateTime.of(2021, 11, 22, 0, 0);
+        for (int i = 0; i < times.length; i++) {
+            times[i] = monday.plusMinutes(30L * i);
+        }
+    }
+
+    @Benchmark
+    public void streamOverMultipliers(Blackhole blackhole) {
+        for (LocalDateTime dateTime : times) {
+            blackhole.consume(multipliers.stream()
+                    .filter(multiplier -> multiplier.getKey().equals(dateTime.minusHours(8).getDayOfWeek()))
+                    .findFirst()
+                    .map(multiplier -> UNIT_RATE.multiply(multiplier.getValue()))
+                    .orElse(UNIT_RATE));
+        }
+    }
+
+    @Benchmark
+    public void tariffTable(Blackhole blackhole) {
+        for (LocalDateTime dateTime : times) {
+            blackhole.consume(pricePlan.getPrice(dateTime));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package uk.tw.energy;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The pool that the pricing endpoints run their aggregation on, sized apart from Tomcat's request threads so slow
+ * CPU-bound queries cannot take every thread the cheap reads need. {@code price-plans.compute.threads} defaults to one
+ * per processor; work beyond {@code price-plans.compute.queue-capacity} waiting requests is rejected.
+ * <p>
+ * The pool reports {@code executor.active}, {@code executor.queued} and {@code executor.queue.remaining} tagged
+ * {@code name=price-plans-compute}; Tomcat's own pool shows up as {@code tomcat.threads.busy}.
+ */
+@Configuration
+public class ComputeConfiguration {
+
+    public static final String COMPUTE_EXECUTOR = "computeExecutor";
+
+    @Bean(name = COMPUTE_EXECUTOR, destroyMethod = "shutdownNow")
+    public ExecutorService computeExecutor(@Value("${price-plans.compute.threads:0}") int threads,
+                                           @Value("${price-plans.compute.queue-capacity:1000}") int queueCapacity,
+                                           MeterRegistry meterRegistry) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), task -> {
+                    Thread thread = new Thread(task, "price-plans-compute-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        return ExecutorServiceMetrics.monitor(meterRegistry, executor, "price-plans-compute", Collections.emptyList());
+    }
+}
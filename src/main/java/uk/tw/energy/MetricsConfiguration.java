@@ -0,0 +1,127 @@
+package uk.tw.energy;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import uk.tw.energy.domain.Commodity;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.PricePlanService;
+import uk.tw.energy.service.VersionedCache;
+import uk.tw.energy.store.ReadingStore;
+import uk.tw.energy.store.StorageMode;
+
+/**
+ * Store and cache metrics, scraped from {@code /actuator/prometheus}. Endpoint latencies come from Spring's own
+ * {@code http.server.requests} timer and the pricing phases from {@link PricePlanService#PHASE_TIMER}; their
+ * percentiles are set in application.properties.
+ * <p>
+ * Store gauges read running totals the stores keep as their series change, so a scrape does not walk the series.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public MeterBinder readingStoreMetrics(MeterReadingService meterReadingService) {
+        return registry -> {
+            for (Commodity commodity : Commodity.values()) {
+                bindStore(registry, meterReadingService, commodity);
+            }
+            Gauge.builder("readings.store.direct.reserved", StorageMode.OFF_HEAP, StorageMode::directReservedBytes)
+                    .description("Direct memory held by off-heap slabs; what exceeds readings.store.direct is fragmentation")
+                    .baseUnit("bytes")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder pricePlanCostCacheMetrics(PricePlanService pricePlanService) {
+        return new VersionedCacheMetrics(pricePlanService.getCostCache(Commodity.ELECTRICITY), "price-plan-costs");
+    }
+
+    @Bean
+    public MeterBinder gasPricePlanCostCacheMetrics(PricePlanService pricePlanService) {
+        return new VersionedCacheMetrics(pricePlanService.getCostCache(Commodity.GAS), "gas-price-plan-costs");
+    }
+
+    private static void bindStore(MeterRegistry registry, MeterReadingService meterReadingService, Commodity commodity) {
+        Tags tags = Tags.of("commodity", commodity.name().toLowerCase());
+        ReadingStore store = meterReadingService.getStore(commodity);
+        FunctionCounter.builder("readings.ingested", meterReadingService, service -> service.getReadingsIngested(commodity))
+                .description("Readings stored since startup; its rate is ingest throughput")
+                .tags(tags)
+                .register(registry);
+        Gauge.builder("readings.store.meters", store, s -> s.meterIds().size())
+                .tags(tags)
+                .register(registry);
+        Gauge.builder("readings.store.readings", store, ReadingStore::readingCount)
+                .description("Raw readings held, excluding those compacted into rollups")
+                .tags(tags)
+                .register(registry);
+        Gauge.builder("readings.store.readings.per.meter", store, s -> perMeter(s, s.readingCount()))
+                .tags(tags)
+                .register(registry);
+        Gauge.builder("readings.store.heap", store, ReadingStore::heapBytes)
+                .description("Estimated heap held by reading columns and rollups")
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(registry);
+        Gauge.builder("readings.store.heap.per.series", store, s -> perMeter(s, s.heapBytes()))
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(registry);
+        Gauge.builder("readings.store.direct", store, ReadingStore::directBytes)
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(registry);
+    }
+
+    private static double perMeter(ReadingStore store, long total) {
+        int meters = store.meterIds().size();
+        return meters == 0 ? 0 : (double) total / meters;
+    }
+
+    private static final class VersionedCacheMetrics extends CacheMeterBinder {
+
+        private final VersionedCache<?> cache;
+
+        private VersionedCacheMetrics(VersionedCache<?> cache, String cacheName) {
+            super(cache, cacheName, Tags.empty());
+            this.cache = cache;
+        }
+
+        @Override
+        protected Long size() {
+            return (long) cache.size();
+        }
+
+        @Override
+        protected long hitCount() {
+            return cache.hitCount();
+        }
+
+        @Override
+        protected Long missCount() {
+            return cache.missCount();
+        }
+
+        @Override
+        protected Long evictionCount() {
+            return cache.evictionCount();
+        }
+
+        @Override
+        protected long putCount() {
+            // every miss is computed and stored
+            return cache.missCount();
+        }
+
+        @Override
+        protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package uk.tw.energy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.ReadingCompactor;
+import uk.tw.energy.store.MappedReadingLog;
+import uk.tw.energy.store.ReadingLog;
+import uk.tw.energy.store.ReadingStoreOptions;
+import uk.tw.energy.store.RetentionPolicy;
+import uk.tw.energy.store.StorageMode;
+import uk.tw.energy.store.TariffCalendar;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.nio.file.Paths;
+
+@Configuration
+public class ReadingStoreConfiguration {
+
+    @Bean
+    public ReadingStoreOptions readingStoreOptions(@Value("${readings.store.mode:heap}") String storageMode,
+                                                   @Value("${readings.retention.raw-days:-1}") int rawDays,
+                                                   @Value("${readings.retention.hourly-days:-1}") int hourlyDays,
+                                                   @Value("${tariff.time-zone:}") String timeZone) {
+        return ReadingStoreOptions.builder()
+                .storageMode(StorageMode.parse(storageMode))
+                .calendar(timeZone.isEmpty() ? TariffCalendar.systemDefault() : new TariffCalendar(ZoneId.of(timeZone)))
+                .retention(RetentionPolicy.ofDays(rawDays, hourlyDays))
+                .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReadingCompactor readingCompactor(MeterReadingService meterReadingService,
+                                             @Value("${readings.retention.compaction-interval-minutes:60}") long intervalMinutes) {
+        return new ReadingCompactor(meterReadingService, Duration.ofMinutes(intervalMinutes));
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReadingLog readingLog(@Value("${readings.log.directory:}") String directory,
+                                 @Value("${readings.log.segment-size:67108864}") int segmentSize,
+                                 @Value("${readings.log.sync:true}") boolean syncOnAppend) throws IOException {
+        if (directory.isEmpty()) {
+            return ReadingLog.NONE;
+        }
+        return new MappedReadingLog(Paths.get(directory), segmentSize, syncOnAppend);
+    }
+}
@@ -1,33 +1,64 @@
 package uk.tw.energy.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.tw.energy.domain.Commodity;
 import uk.tw.energy.domain.ElectricityReading;
 import uk.tw.energy.domain.GasMeterReadings;
 import uk.tw.energy.domain.GasReading;
+import uk.tw.energy.domain.MeterIngestSummary;
 import uk.tw.energy.domain.MeterReadings;
 import uk.tw.energy.domain.SeparateUsages;
+import uk.tw.energy.exception.BadRequest;
+import uk.tw.energy.exception.ServiceUnavailable;
+import uk.tw.energy.service.BatchReadingIngestService;
+import uk.tw.energy.service.BinaryReadingCodec;
 import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.ReadingIngestPipeline;
+import uk.tw.energy.store.FixedPoint;
+import uk.tw.energy.store.ReadingBatch;
+import uk.tw.energy.store.ReadingCursor;
+import uk.tw.energy.store.ReadingPage;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/readings")
 public class MeterReadingController {
 
+    public static final String NEXT_CURSOR_HEADER = "Next-Cursor";
+
     private final MeterReadingService meterReadingService;
+    private final BatchReadingIngestService batchReadingIngestService;
+    private final ReadingIngestPipeline readingIngestPipeline;
+    private final ObjectMapper objectMapper;
 
-    public MeterReadingController(MeterReadingService meterReadingService) {
+    public MeterReadingController(MeterReadingService meterReadingService, BatchReadingIngestService batchReadingIngestService,
+                                  ReadingIngestPipeline readingIngestPipeline, ObjectMapper objectMapper) {
         this.meterReadingService = meterReadingService;
+        this.batchReadingIngestService = batchReadingIngestService;
+        this.readingIngestPipeline = readingIngestPipeline;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping("/store")
@@ -35,16 +66,49 @@ public class MeterReadingController {
         if (!isMeterReadingsValid(meterReadings)) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
-        meterReadingService.storeReadings(meterReadings.getSmartMeterId(), meterReadings.getElectricityReadings());
-        return ResponseEntity.ok().build();
+        return submit(Commodity.ELECTRICITY, meterReadings.getSmartMeterId(),
+                batchOf(meterReadings.getElectricityReadings(), ElectricityReading::getTime, ElectricityReading::getReading));
     }
     @PostMapping("/gas-store")
     public ResponseEntity storeGasReadings(@RequestBody GasMeterReadings gasMeterReadings) {
         if (!isGasMeterReadingsValid(gasMeterReadings)) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
-        meterReadingService.storeGasReadings(gasMeterReadings.getSmartMeterId(), gasMeterReadings.getGasReadings());
-        return ResponseEntity.ok().build();
+        return submit(Commodity.GAS, gasMeterReadings.getSmartMeterId(),
+                batchOf(gasMeterReadings.getGasReadings(), GasReading::getTime, GasReading::getReading));
+    }
+    @PostMapping(value = "/store", consumes = BinaryReadingCodec.MEDIA_TYPE)
+    public ResponseEntity<Void> storeBinaryReadings(InputStream body) throws IOException {
+        BinaryReadingCodec.Upload upload = BinaryReadingCodec.decode(body);
+        if (!isUploadValid(upload)) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        return submit(Commodity.ELECTRICITY, upload.getSmartMeterId(), upload.getReadings());
+    }
+    @PostMapping(value = "/gas-store", consumes = BinaryReadingCodec.MEDIA_TYPE)
+    public ResponseEntity<Void> storeBinaryGasReadings(InputStream body) throws IOException {
+        BinaryReadingCodec.Upload upload = BinaryReadingCodec.decode(body);
+        if (!isUploadValid(upload)) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        return submit(Commodity.GAS, upload.getSmartMeterId(), upload.getReadings());
+    }
+    @PostMapping(value = "/batch-store", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<MeterIngestSummary>> storeBatchReadings(InputStream body) throws IOException {
+        return ResponseEntity.ok(batchReadingIngestService.storeBatch(body));
+    }
+
+    /**
+     * 200 once stored, or 202 once queued when ingest is asynchronous.
+     *
+     * @throws ServiceUnavailable if the ingest queue is full
+     */
+    private ResponseEntity<Void> submit(Commodity commodity, String smartMeterId, ReadingBatch batch) {
+        if (!readingIngestPipeline.submit(commodity, smartMeterId, batch)) {
+            throw new ServiceUnavailable("Too many readings waiting to be stored, try again later",
+                    readingIngestPipeline.getRetryAfterSeconds());
+        }
+        return readingIngestPipeline.isAsync() ? ResponseEntity.accepted().build() : ResponseEntity.ok().build();
     }
 
     private boolean isMeterReadingsValid(MeterReadings meterReadings) {
@@ -53,6 +117,9 @@ public class MeterReadingController {
         return smartMeterId != null && !smartMeterId.isEmpty()
                 && electricityReadings != null && !electricityReadings.isEmpty();
     }
+    private boolean isUploadValid(BinaryReadingCodec.Upload upload) {
+        return !upload.getSmartMeterId().isEmpty() && !upload.getReadings().isEmpty();
+    }
     private boolean isGasMeterReadingsValid(GasMeterReadings gasMeterReadings) {
         String smartMeterId = gasMeterReadings.getSmartMeterId();
         List<GasReading> gasReadings = gasMeterReadings.getGasReadings();
@@ -60,17 +127,87 @@ public class MeterReadingController {
                 && gasReadings != null && !gasReadings.isEmpty();
     }
 
+    /**
+     * Readings at or after {@code from} and before {@code to}, written to the response as they are read. With a
+     * {@code limit}, the {@value #NEXT_CURSOR_HEADER} header carries the cursor for the next page, which replaces
+     * {@code from} on the following request; it is absent on the last page.
+     */
     @GetMapping("/read/{smartMeterId}")
-    public ResponseEntity readReadings(@PathVariable String smartMeterId) {
-        Optional<List<ElectricityReading>> readings = meterReadingService.getReadings(smartMeterId);
-        return readings.isPresent()
-                ? ResponseEntity.ok(readings.get())
-                : ResponseEntity.notFound().build();
+    public ResponseEntity<StreamingResponseBody> readReadings(@PathVariable String smartMeterId,
+                                                              @RequestParam(value = "from", required = false) String from,
+                                                              @RequestParam(value = "to", required = false) String to,
+                                                              @RequestParam(value = "limit", required = false) Integer limit,
+                                                              @RequestParam(value = "cursor", required = false) String cursor) {
+        Optional<ReadingPage> page = meterReadingService.getReadingsPage(smartMeterId,
+                startOf(from, cursor), parseInstant("to", to, Instant.MAX), pageSize(limit));
+        return stream(page, ElectricityReading::new);
     }
     @GetMapping("gas/{smartMeterId}")
-    public ResponseEntity gasReadings(@PathVariable String smartMeterId){
-        Optional<List<GasReading>> readings = meterReadingService.getGasReadings(smartMeterId);
-        return readings.isPresent()? ResponseEntity.ok(readings.get()):ResponseEntity.notFound().build();
+    public ResponseEntity<StreamingResponseBody> gasReadings(@PathVariable String smartMeterId,
+                                                             @RequestParam(value = "from", required = false) String from,
+                                                             @RequestParam(value = "to", required = false) String to,
+                                                             @RequestParam(value = "limit", required = false) Integer limit,
+                                                             @RequestParam(value = "cursor", required = false) String cursor){
+        Optional<ReadingPage> page = meterReadingService.getGasReadingsPage(smartMeterId,
+                startOf(from, cursor), parseInstant("to", to, Instant.MAX), pageSize(limit));
+        return stream(page, GasReading::new);
+    }
+
+    private <T> ResponseEntity<StreamingResponseBody> stream(Optional<ReadingPage> page, BiFunction<Instant, BigDecimal, T> factory) {
+        if (!page.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        page.get().next().ifPresent(next -> response.header(NEXT_CURSOR_HEADER, next.toString()));
+        return response.body(out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartArray();
+                page.get().forEach((time, reading) -> generator.writeObject(factory.apply(time, reading)));
+                generator.writeEndArray();
+            }
+        });
+    }
+
+    private static <T> ReadingBatch batchOf(List<T> readings, Function<T, Instant> time, Function<T, BigDecimal> reading) {
+        try {
+            return ReadingBatch.of(readings, time, reading);
+        } catch (ArithmeticException e) {
+            throw new BadRequest("Readings must have at most " + FixedPoint.SCALE + " decimal places and be below "
+                    + BigDecimal.valueOf(Long.MAX_VALUE, FixedPoint.SCALE));
+        }
+    }
+
+    private ReadingCursor startOf(String from, String cursor) {
+        if (cursor == null) {
+            return ReadingCursor.at(parseInstant("from", from, Instant.MIN));
+        }
+        try {
+            return ReadingCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequest(e.getMessage());
+        }
+    }
+
+    private Instant parseInstant(String name, String value, Instant absent) {
+        if (value == null) {
+            return absent;
+        }
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new BadRequest("Malformed " + name + ": " + value);
+        }
+    }
+
+    private int pageSize(Integer limit) {
+        if (limit == null) {
+            return Integer.MAX_VALUE;
+        }
+        if (limit < 1) {
+            throw new BadRequest("limit must be at least 1");
+        }
+        return limit;
     }
 
     @GetMapping("separate-usage/{smartMeterId}")
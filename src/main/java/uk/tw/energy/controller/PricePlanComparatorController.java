@@ -1,5 +1,7 @@
 package uk.tw.energy.controller;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -7,108 +9,143 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import uk.tw.energy.ComputeConfiguration;
+import uk.tw.energy.domain.Commodity;
 import uk.tw.energy.domain.DayCostElectricity;
 import uk.tw.energy.domain.DayOfWeekRequest;
 import uk.tw.energy.domain.PricePlanCost;
 import uk.tw.energy.exception.BadRequest;
+import uk.tw.energy.exception.ServiceUnavailable;
 import uk.tw.energy.service.AccountService;
 import uk.tw.energy.service.PricePlanService;
 
 import java.math.BigDecimal;
 import java.rmi.MarshalledObject;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Pricing endpoints. Request checks run on the servlet thread; the pricing itself runs on the
+ * {@link ComputeConfiguration#COMPUTE_EXECUTOR} pool, and the servlet thread is released while it does.
+ */
 @RestController
 @RequestMapping("/price-plans")
 public class PricePlanComparatorController {
 
     public final static String PRICE_PLAN_ID_KEY = "pricePlanId";
     public final static String PRICE_PLAN_COMPARISONS_KEY = "pricePlanComparisons";
+    private static final long RETRY_AFTER_SECONDS = 1;
     private final PricePlanService pricePlanService;
     private final AccountService accountService;
+    private final Executor computeExecutor;
 
     public PricePlanComparatorController(PricePlanService pricePlanService, AccountService accountService) {
+        this(pricePlanService, accountService, Runnable::run);
+    }
+
+    @Autowired
+    public PricePlanComparatorController(PricePlanService pricePlanService, AccountService accountService,
+                                         @Qualifier(ComputeConfiguration.COMPUTE_EXECUTOR) Executor computeExecutor) {
         this.pricePlanService = pricePlanService;
         this.accountService = accountService;
+        this.computeExecutor = computeExecutor;
     }
 
     @GetMapping("/compare-all/{smartMeterId}")
-    public ResponseEntity<Map<String, Object>> calculatedCostForEachPricePlan(@PathVariable String smartMeterId) {
-        String pricePlanId = accountService.getPricePlanIdForSmartMeterId(smartMeterId);
-        Optional<Map<String, BigDecimal>> consumptionsForPricePlans =
-                pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(smartMeterId);
-
-        if (!consumptionsForPricePlans.isPresent()) {
-            return ResponseEntity.notFound().build();
-        }
-
-        Map<String, Object> pricePlanComparisons = new HashMap<>();
-        pricePlanComparisons.put(PRICE_PLAN_ID_KEY, pricePlanId);
-        pricePlanComparisons.put(PRICE_PLAN_COMPARISONS_KEY, consumptionsForPricePlans.get());
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> calculatedCostForEachPricePlan(@PathVariable String smartMeterId) {
+        return compareAll(Commodity.ELECTRICITY, smartMeterId, accountService.getPricePlanIdForSmartMeterId(smartMeterId));
+    }
 
-        return consumptionsForPricePlans.isPresent()
-                ? ResponseEntity.ok(pricePlanComparisons)
-                : ResponseEntity.notFound().build();
+    @GetMapping("/gas/compare-all/{smartMeterId}")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> calculatedGasCostForEachPricePlan(@PathVariable String smartMeterId) {
+        return compareAll(Commodity.GAS, smartMeterId, accountService.getGasPricePlanIdForSmartMeterId(smartMeterId));
     }
 
     @GetMapping("/recommend/{smartMeterId}")
-    public ResponseEntity<List<Map.Entry<String, BigDecimal>>> recommendCheapestPricePlans(@PathVariable String smartMeterId,
-                                                                                           @RequestParam(value = "limit", required = false) Integer limit) {
-        Optional<Map<String, BigDecimal>> consumptionsForPricePlans =
-                pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(smartMeterId);
-
-        if (!consumptionsForPricePlans.isPresent()) {
-            return ResponseEntity.notFound().build();
-        }
-
-        List<Map.Entry<String, BigDecimal>> recommendations = new ArrayList<>(consumptionsForPricePlans.get().entrySet());
-        recommendations.sort(Comparator.comparing(Map.Entry::getValue));
-
-        if (limit != null && limit < recommendations.size()) {
-            recommendations = recommendations.subList(0, limit);
-        }
+    public CompletableFuture<ResponseEntity<List<Map.Entry<String, BigDecimal>>>> recommendCheapestPricePlans(@PathVariable String smartMeterId,
+                                                                                                              @RequestParam(value = "limit", required = false) Integer limit) {
+        return recommend(Commodity.ELECTRICITY, smartMeterId, limit);
+    }
 
-        return ResponseEntity.ok(recommendations);
+    @GetMapping("/gas/recommend/{smartMeterId}")
+    public CompletableFuture<ResponseEntity<List<Map.Entry<String, BigDecimal>>>> recommendCheapestGasPricePlans(@PathVariable String smartMeterId,
+                                                                                                                 @RequestParam(value = "limit", required = false) Integer limit) {
+        return recommend(Commodity.GAS, smartMeterId, limit);
     }
 
     @GetMapping("/last-week/{smartMeterId}")
-    public ResponseEntity<Map<String,BigDecimal>>getPriceOfLastWeekUsage(@PathVariable String smartMeterId){
-
-        String pricePlanId = Optional.ofNullable(accountService.getPricePlanIdForSmartMeterId(smartMeterId)).orElseThrow(()->
-                new BadRequest("PricePlanId Not Found"));
-        Optional<Map<String, BigDecimal>> lastWeekCostPrice =
-                pricePlanService.getConsumptionCostOfElectricityReadingsForLastWeek(smartMeterId,pricePlanId);
-        return ResponseEntity.ok(lastWeekCostPrice.get());
+    public CompletableFuture<ResponseEntity<Map<String,BigDecimal>>>getPriceOfLastWeekUsage(@PathVariable String smartMeterId){
+        return lastWeek(Commodity.ELECTRICITY, smartMeterId, accountService.getPricePlanIdForSmartMeterId(smartMeterId));
+    }
 
+    @GetMapping("/gas/last-week/{smartMeterId}")
+    public CompletableFuture<ResponseEntity<Map<String,BigDecimal>>>getPriceOfLastWeekGasUsage(@PathVariable String smartMeterId){
+        return lastWeek(Commodity.GAS, smartMeterId, accountService.getGasPricePlanIdForSmartMeterId(smartMeterId));
     }
 
     @GetMapping("/day-electricity/{smartMeterId}")
-    public ResponseEntity<Map<String,BigDecimal>>getDayCostElectricityUsage(@PathVariable String smartMeterId, @RequestBody DayCostElectricity dayCostElectricity){
-        Map<String,BigDecimal> dayCostElectricityUsage = pricePlanService.getDayCostElectricityUsage(smartMeterId,dayCostElectricity);
-
-        return ResponseEntity.ok(dayCostElectricityUsage);
+    public CompletableFuture<ResponseEntity<Map<String,BigDecimal>>>getDayCostElectricityUsage(@PathVariable String smartMeterId, @RequestBody DayCostElectricity dayCostElectricity){
+        return compute(() -> ResponseEntity.ok(pricePlanService.getDayCostElectricityUsage(smartMeterId,dayCostElectricity)));
     }
     @GetMapping("/cost-rank/{smartMeterId}")
-    public ResponseEntity<Map<String,BigDecimal>>getCurrentPricePlanRankForDifferentDaysOfWeek(@PathVariable String smartMeterId,
-                                                                                                @RequestBody DayCostElectricity dayCostElectricity){
-        Map<String,BigDecimal> dayOfWeekRank = pricePlanService.getCostForDayOfWeekRank(smartMeterId,dayCostElectricity);
-
-        return ResponseEntity.ok(dayOfWeekRank);
+    public CompletableFuture<ResponseEntity<Map<String,BigDecimal>>>getCurrentPricePlanRankForDifferentDaysOfWeek(@PathVariable String smartMeterId,
+                                                                                                                   @RequestBody DayCostElectricity dayCostElectricity){
+        return compute(() -> ResponseEntity.ok(pricePlanService.getCostForDayOfWeekRank(smartMeterId,dayCostElectricity)));
     }
 
     @GetMapping("/rank/{smartMeterId}")
-    public ResponseEntity<Map<String,List<PricePlanCost>>>getPricePlanRank(@PathVariable String smartMeterId, @RequestBody DayCostElectricity dayCostElectricity,
-                                                                            @RequestParam(value = "limit", required = false) Integer limit){
-        Map<String,List<PricePlanCost>>pricePlanRankMap = pricePlanService.getPricePlanRank(smartMeterId,dayCostElectricity,limit);
+    public CompletableFuture<ResponseEntity<Map<String,List<PricePlanCost>>>>getPricePlanRank(@PathVariable String smartMeterId, @RequestBody DayCostElectricity dayCostElectricity,
+                                                                                               @RequestParam(value = "limit", required = false) Integer limit){
+        return compute(() -> ResponseEntity.ok(pricePlanService.getPricePlanRank(smartMeterId,dayCostElectricity,limit)));
+    }
+
+    private CompletableFuture<ResponseEntity<Map<String, Object>>> compareAll(Commodity commodity, String smartMeterId, String pricePlanId) {
+        return compute(() -> {
+            Optional<Map<String, BigDecimal>> consumptionsForPricePlans =
+                    pricePlanService.getConsumptionCostForEachPricePlan(commodity, smartMeterId);
+
+            if (!consumptionsForPricePlans.isPresent()) {
+                return ResponseEntity.notFound().build();
+            }
 
-        return ResponseEntity.ok(pricePlanRankMap);
+            Map<String, Object> pricePlanComparisons = new HashMap<>();
+            pricePlanComparisons.put(PRICE_PLAN_ID_KEY, pricePlanId);
+            pricePlanComparisons.put(PRICE_PLAN_COMPARISONS_KEY, consumptionsForPricePlans.get());
 
+            return ResponseEntity.ok(pricePlanComparisons);
+        });
     }
 
+    private CompletableFuture<ResponseEntity<List<Map.Entry<String, BigDecimal>>>> recommend(Commodity commodity, String smartMeterId, Integer limit) {
+        return compute(() -> pricePlanService.recommendCheapestPricePlans(commodity, smartMeterId, limit)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build()));
+    }
+
+    private CompletableFuture<ResponseEntity<Map<String,BigDecimal>>> lastWeek(Commodity commodity, String smartMeterId, String accountPricePlanId) {
+        String pricePlanId = Optional.ofNullable(accountPricePlanId).orElseThrow(()->
+                new BadRequest("PricePlanId Not Found"));
+        return compute(() -> {
+            Optional<Map<String, BigDecimal>> lastWeekCostPrice =
+                    pricePlanService.getConsumptionCostForLastWeek(commodity, smartMeterId, pricePlanId);
+            return ResponseEntity.ok(lastWeekCostPrice.get());
+        });
+    }
 
+    /**
+     * @throws ServiceUnavailable if the compute pool's queue is full
+     */
+    private <T> CompletableFuture<T> compute(Supplier<T> pricing) {
+        try {
+            return CompletableFuture.supplyAsync(pricing, computeExecutor);
+        } catch (RejectedExecutionException e) {
+            throw new ServiceUnavailable("Too many pricing requests in progress, try again later", RETRY_AFTER_SECONDS);
+        }
+    }
 }
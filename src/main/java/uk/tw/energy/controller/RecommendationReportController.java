@@ -0,0 +1,52 @@
+package uk.tw.energy.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import uk.tw.energy.domain.RecommendationJobStatus;
+import uk.tw.energy.domain.RecommendationReportPage;
+import uk.tw.energy.exception.BadRequest;
+import uk.tw.energy.service.RecommendationBatchJob;
+
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/price-plans/recommendations")
+public class RecommendationReportController {
+
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private final RecommendationBatchJob recommendationBatchJob;
+
+    public RecommendationReportController(RecommendationBatchJob recommendationBatchJob) {
+        this.recommendationBatchJob = recommendationBatchJob;
+    }
+
+    @PostMapping("/run")
+    public ResponseEntity<RecommendationJobStatus> run() {
+        boolean started = recommendationBatchJob.start();
+        return ResponseEntity.status(started ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT)
+                .body(recommendationBatchJob.getStatus());
+    }
+
+    @GetMapping("/status")
+    public ResponseEntity<RecommendationJobStatus> status() {
+        return ResponseEntity.ok(recommendationBatchJob.getStatus());
+    }
+
+    @GetMapping("/report")
+    public ResponseEntity<RecommendationReportPage> report(@RequestParam(value = "page", defaultValue = "0") int page,
+                                                           @RequestParam(value = "size", defaultValue = "100") int size) {
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequest("page must be at least 0 and size between 1 and " + MAX_PAGE_SIZE);
+        }
+        Optional<RecommendationReportPage> report = recommendationBatchJob.getReport(page, size);
+        return report.isPresent()
+                ? ResponseEntity.ok(report.get())
+                : ResponseEntity.notFound().build();
+    }
+}
@@ -0,0 +1,6 @@
+package uk.tw.energy.domain;
+
+public enum Commodity {
+    ELECTRICITY,
+    GAS
+}
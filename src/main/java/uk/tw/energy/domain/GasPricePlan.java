@@ -1,52 +1,54 @@
 package uk.tw.energy.domain;
 
 import java.math.BigDecimal;
-import java.time.DayOfWeek;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
 
-public class GasPricePlan {
+public class GasPricePlan implements TariffPlan {
     private final String energySupplier;
     private final String planName;
     private final BigDecimal unitRate; // unit price per kWh
-    private final List<PricePlan.PeakTimeMultiplier> peakTimeMultipliers;
+    private final TariffTable tariff;
 
     public GasPricePlan(String planName, String energySupplier, BigDecimal unitRate, List<PricePlan.PeakTimeMultiplier> peakTimeMultipliers) {
+        this(planName, energySupplier, unitRate, peakTimeMultipliers, Collections.emptyList());
+    }
+
+    public GasPricePlan(String planName, String energySupplier, BigDecimal unitRate, List<PricePlan.PeakTimeMultiplier> peakTimeMultipliers,
+                        List<PricePlan.TimeOfUseBand> timeOfUseBands) {
+        if (unitRate == null) {
+            throw new IllegalArgumentException("Price plan " + planName + " has no unit rate");
+        }
         this.planName = planName;
         this.energySupplier = energySupplier;
         this.unitRate = unitRate;
-        this.peakTimeMultipliers = peakTimeMultipliers;
+        this.tariff = TariffTable.compile(unitRate,
+                peakTimeMultipliers == null ? Collections.emptyList() : peakTimeMultipliers, timeOfUseBands);
     }
 
+    @Override
     public String getEnergySupplier() {
         return energySupplier;
     }
 
+    @Override
     public String getPlanName() {
         return planName;
     }
 
+    @Override
     public BigDecimal getUnitRate() {
         return unitRate;
     }
 
     public BigDecimal getPrice(LocalDateTime dateTime) {
-        return peakTimeMultipliers.stream()
-                .filter(multiplier -> multiplier.dayOfWeek.equals(dateTime.minusHours(8).getDayOfWeek()))
-                .findFirst()
-                .map(multiplier -> unitRate.multiply(multiplier.multiplier))
-                .orElse(unitRate);
+        return tariff.price(TariffTable.slot(dateTime));
     }
 
-
-    public static class PeakTimeMultiplier {
-
-        DayOfWeek dayOfWeek;
-        BigDecimal multiplier;
-
-        public PeakTimeMultiplier(DayOfWeek dayOfWeek, BigDecimal multiplier) {
-            this.dayOfWeek = dayOfWeek;
-            this.multiplier = multiplier;
-        }
+    @Override
+    public TariffTable tariff() {
+        return tariff;
     }
+
 }
@@ -2,6 +2,7 @@ package uk.tw.energy.domain;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.Objects;
 
 public class GasReading {
     private Instant time;
@@ -21,4 +22,21 @@ public class GasReading {
     public Instant getTime() {
         return time;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        GasReading that = (GasReading) o;
+        return Objects.equals(time, that.time) && Objects.equals(reading, that.reading);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(time, reading);
+    }
 }
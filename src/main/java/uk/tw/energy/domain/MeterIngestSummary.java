@@ -0,0 +1,14 @@
+package uk.tw.energy.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MeterIngestSummary {
+    private String smartMeterId;
+    private long accepted;
+    private long rejected;
+}
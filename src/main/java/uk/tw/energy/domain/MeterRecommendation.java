@@ -0,0 +1,22 @@
+package uk.tw.energy.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class MeterRecommendation {
+    private Commodity commodity;
+    private String smartMeterId;
+    private String currentPricePlanId;
+    private BigDecimal currentCost;
+    private List<PricePlanCost> cheapestPricePlans;
+    private BigDecimal potentialSaving;
+}
@@ -3,41 +3,58 @@ package uk.tw.energy.domain;
 import java.math.BigDecimal;
 import java.time.DayOfWeek;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
-public class PricePlan {
+public class PricePlan implements TariffPlan {
 
     private final String energySupplier;
     private final String planName;
     private final BigDecimal unitRate; // unit price per kWh
-    private final List<PeakTimeMultiplier> peakTimeMultipliers;
+    private final TariffTable tariff;
 
     public PricePlan(String planName, String energySupplier, BigDecimal unitRate, List<PeakTimeMultiplier> peakTimeMultipliers) {
+        this(planName, energySupplier, unitRate, peakTimeMultipliers, Collections.emptyList());
+    }
+
+    public PricePlan(String planName, String energySupplier, BigDecimal unitRate, List<PeakTimeMultiplier> peakTimeMultipliers,
+                     List<TimeOfUseBand> timeOfUseBands) {
+        if (unitRate == null) {
+            throw new IllegalArgumentException("Price plan " + planName + " has no unit rate");
+        }
         this.planName = planName;
         this.energySupplier = energySupplier;
         this.unitRate = unitRate;
-        this.peakTimeMultipliers = peakTimeMultipliers;
+        this.tariff = TariffTable.compile(unitRate,
+                peakTimeMultipliers == null ? Collections.emptyList() : peakTimeMultipliers, timeOfUseBands);
     }
 
+    @Override
     public String getEnergySupplier() {
         return energySupplier;
     }
 
+    @Override
     public String getPlanName() {
         return planName;
     }
 
+    @Override
     public BigDecimal getUnitRate() {
         return unitRate;
     }
 
     public BigDecimal getPrice(LocalDateTime dateTime) {
-        return peakTimeMultipliers.stream()
-                .filter(multiplier -> multiplier.dayOfWeek.equals(dateTime.minusHours(8).getDayOfWeek()))
-                .findFirst()
-                .map(multiplier -> unitRate.multiply(multiplier.multiplier))
-                .orElse(unitRate);
+        return tariff.price(TariffTable.slot(dateTime));
+    }
+
+    /**
+     * The compiled half-hourly prices behind {@link #getPrice}.
+     */
+    @Override
+    public TariffTable tariff() {
+        return tariff;
     }
 
 
@@ -51,4 +68,30 @@ public class PricePlan {
             this.multiplier = multiplier;
         }
     }
+
+    /**
+     * A multiplier for a wall-clock time band, from {@code start} up to but excluding {@code end}, on one day of the
+     * week or on every day when {@code dayOfWeek} is null. An {@code end} of midnight runs to the end of the day.
+     * Bands are applied in half hours, so times should fall on the hour or half hour.
+     */
+    public static class TimeOfUseBand {
+
+        DayOfWeek dayOfWeek;
+        LocalTime start;
+        LocalTime end;
+        BigDecimal multiplier;
+
+        public TimeOfUseBand(DayOfWeek dayOfWeek, LocalTime start, LocalTime end, BigDecimal multiplier) {
+            this.dayOfWeek = dayOfWeek;
+            this.start = start;
+            this.end = end;
+            this.multiplier = multiplier;
+        }
+
+        boolean covers(DayOfWeek day, LocalTime time) {
+            return (dayOfWeek == null || dayOfWeek.equals(day))
+                    && !time.isBefore(start)
+                    && (end.equals(LocalTime.MIDNIGHT) || time.isBefore(end));
+        }
+    }
 }
@@ -0,0 +1,25 @@
+package uk.tw.energy.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class RecommendationJobStatus {
+
+    public enum State { IDLE, RUNNING, COMPLETED, FAILED }
+
+    private State state;
+    private long totalMeters;
+    private long processedMeters;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private double metersPerSecond;
+    private String error;
+}
@@ -0,0 +1,19 @@
+package uk.tw.energy.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RecommendationReportPage {
+    private Instant generatedAt;
+    private int page;
+    private int size;
+    private long totalRecommendations;
+    private List<MeterRecommendation> recommendations;
+}
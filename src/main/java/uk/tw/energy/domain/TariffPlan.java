@@ -0,0 +1,20 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * What pricing needs from a plan, whichever fuel it is for, so electricity and gas plans share one cost path.
+ */
+public interface TariffPlan {
+
+    String getPlanName();
+
+    String getEnergySupplier();
+
+    BigDecimal getUnitRate();
+
+    /**
+     * The plan's compiled half-hourly prices.
+     */
+    TariffTable tariff();
+}
@@ -0,0 +1,113 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * A plan's price for every half hour of the week, compiled once so that looking up the price for a time is an array
+ * read. Slots are indexed by wall-clock day of week and half hour, see {@link #slot}.
+ * <p>
+ * A day's {@link PricePlan.PeakTimeMultiplier} covers the tariff day, which runs from 08:00 to 08:00 the next morning.
+ * A {@link PricePlan.TimeOfUseBand} replaces the multiplier for the wall-clock half hours it covers; where bands
+ * overlap, the first one listed wins.
+ */
+public final class TariffTable {
+
+    public static final int SLOTS_PER_DAY = 48;
+    public static final int SLOTS = 7 * SLOTS_PER_DAY;
+
+    private static final int TARIFF_DAY_START_HOUR = 8;
+
+    private final BigDecimal[] prices = new BigDecimal[SLOTS];
+    private final long[] unscaledPrices = new long[SLOTS];
+    private final int[] priceScales = new int[SLOTS];
+    private int cheapestSlot;
+
+    private TariffTable() { }
+
+    static TariffTable compile(BigDecimal unitRate, List<PricePlan.PeakTimeMultiplier> peakTimeMultipliers,
+                               List<PricePlan.TimeOfUseBand> timeOfUseBands) {
+        TariffTable table = new TariffTable();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            BigDecimal multiplier = bandMultiplier(timeOfUseBands, slot);
+            if (multiplier == null) {
+                multiplier = dayMultiplier(peakTimeMultipliers, tariffDay(slot));
+            }
+            BigDecimal price = multiplier == null ? unitRate : unitRate.multiply(multiplier);
+            table.prices[slot] = price;
+            table.unscaledPrices[slot] = price.unscaledValue().longValueExact();
+            table.priceScales[slot] = price.scale();
+            if (price.compareTo(table.prices[table.cheapestSlot]) < 0) {
+                table.cheapestSlot = slot;
+            }
+        }
+        return table;
+    }
+
+    public static int slot(LocalDateTime dateTime) {
+        return slot(dateTime.getDayOfWeek(), dateTime.getHour(), dateTime.getMinute());
+    }
+
+    /**
+     * The slot for a wall-clock minute counted from Monday 00:00, as {@code TariffCalendar#minuteOfWeek} gives it.
+     */
+    public static int slotOfMinuteOfWeek(int minuteOfWeek) {
+        return minuteOfWeek / 30;
+    }
+
+    static int slot(DayOfWeek dayOfWeek, int hour, int minute) {
+        return (dayOfWeek.getValue() - 1) * SLOTS_PER_DAY + hour * 2 + minute / 30;
+    }
+
+    public BigDecimal price(int slot) {
+        return prices[slot];
+    }
+
+    public long unscaledPrice(int slot) {
+        return unscaledPrices[slot];
+    }
+
+    public int priceScale(int slot) {
+        return priceScales[slot];
+    }
+
+    /**
+     * The lowest price in any slot, unscaled at {@link #minimumPriceScale}, so no usage can cost less on this plan.
+     */
+    public long minimumUnscaledPrice() {
+        return unscaledPrices[cheapestSlot];
+    }
+
+    public int minimumPriceScale() {
+        return priceScales[cheapestSlot];
+    }
+
+    private static DayOfWeek tariffDay(int slot) {
+        DayOfWeek day = DayOfWeek.of(slot / SLOTS_PER_DAY + 1);
+        return slot % SLOTS_PER_DAY < TARIFF_DAY_START_HOUR * 2 ? day.minus(1) : day;
+    }
+
+    private static BigDecimal dayMultiplier(List<PricePlan.PeakTimeMultiplier> peakTimeMultipliers, DayOfWeek tariffDay) {
+        for (PricePlan.PeakTimeMultiplier peakTimeMultiplier : peakTimeMultipliers) {
+            if (peakTimeMultiplier.dayOfWeek.equals(tariffDay)) {
+                return peakTimeMultiplier.multiplier;
+            }
+        }
+        return null;
+    }
+
+    private static BigDecimal bandMultiplier(List<PricePlan.TimeOfUseBand> timeOfUseBands, int slot) {
+        DayOfWeek day = DayOfWeek.of(slot / SLOTS_PER_DAY + 1);
+        int halfHour = slot % SLOTS_PER_DAY;
+        LocalTime start = LocalTime.of(halfHour / 2, halfHour % 2 * 30);
+        for (PricePlan.TimeOfUseBand band : timeOfUseBands) {
+            if (band.covers(day, start)) {
+                return band.multiplier;
+            }
+        }
+        return null;
+    }
+}
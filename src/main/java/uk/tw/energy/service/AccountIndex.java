@@ -0,0 +1,97 @@
+package uk.tw.energy.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Which plan each meter is on and which meters each plan has, kept in step with each other. Looking up a meter's plan
+ * takes no lock. Changes take the write lock and enumerations take the read lock, so an enumeration sees a bulk switch
+ * either wholly applied or not at all, and costs O(k) in the meters it returns rather than a scan of every account.
+ */
+final class AccountIndex {
+
+    private final Map<String, String> planByMeter = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> metersByPlan = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    AccountIndex(Map<String, String> accounts) {
+        accounts.forEach(this::assignLocked);
+    }
+
+    String planOf(String smartMeterId) {
+        return planByMeter.get(smartMeterId);
+    }
+
+    Set<String> metersOn(String pricePlanId) {
+        lock.readLock().lock();
+        try {
+            Set<String> meters = metersByPlan.get(pricePlanId);
+            return meters == null ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(meters));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    Map<String, Integer> countsByPlan() {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> counts = new HashMap<>(metersByPlan.size() * 2);
+            metersByPlan.forEach((pricePlanId, meters) -> counts.put(pricePlanId, meters.size()));
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void assignAll(Map<String, String> assignments) {
+        assignments.forEach((smartMeterId, pricePlanId) -> {
+            if (smartMeterId == null || pricePlanId == null) {
+                throw new IllegalArgumentException("Meter and price plan ids are required");
+            }
+        });
+        lock.writeLock().lock();
+        try {
+            assignments.forEach(this::assignLocked);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int moveAll(String fromPricePlanId, String toPricePlanId) {
+        lock.writeLock().lock();
+        try {
+            if (fromPricePlanId.equals(toPricePlanId)) {
+                return metersByPlan.getOrDefault(fromPricePlanId, Collections.emptySet()).size();
+            }
+            Set<String> meters = metersByPlan.remove(fromPricePlanId);
+            if (meters == null) {
+                return 0;
+            }
+            for (String smartMeterId : meters) {
+                planByMeter.put(smartMeterId, toPricePlanId);
+            }
+            metersByPlan.computeIfAbsent(toPricePlanId, pricePlanId -> new HashSet<>()).addAll(meters);
+            return meters.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void assignLocked(String smartMeterId, String pricePlanId) {
+        String previous = planByMeter.put(smartMeterId, pricePlanId);
+        if (previous != null && !previous.equals(pricePlanId)) {
+            Set<String> previousMeters = metersByPlan.get(previous);
+            previousMeters.remove(smartMeterId);
+            if (previousMeters.isEmpty()) {
+                metersByPlan.remove(previous);
+            }
+        }
+        metersByPlan.computeIfAbsent(pricePlanId, id -> new HashSet<>()).add(smartMeterId);
+    }
+}
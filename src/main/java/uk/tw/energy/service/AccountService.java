@@ -1,19 +1,66 @@
 package uk.tw.energy.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.Commodity;
 
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * The price plan each meter's account is on, per fuel, indexed both ways so that a plan's meters can be listed and
+ * counted without scanning every account. See {@link AccountIndex} for what concurrent readers see.
+ */
 @Service
 public class AccountService {
 
-    private final Map<String, String> smartMeterToPricePlanAccounts;
+    private final Map<Commodity, AccountIndex> accounts = new EnumMap<>(Commodity.class);
 
     public AccountService(Map<String, String> smartMeterToPricePlanAccounts) {
-        this.smartMeterToPricePlanAccounts = smartMeterToPricePlanAccounts;
+        this(smartMeterToPricePlanAccounts, Collections.emptyMap());
+    }
+
+    @Autowired
+    public AccountService(Map<String, String> smartMeterToPricePlanAccounts, Map<String, String> gasToPricePlanAccounts) {
+        accounts.put(Commodity.ELECTRICITY, new AccountIndex(smartMeterToPricePlanAccounts));
+        accounts.put(Commodity.GAS, new AccountIndex(gasToPricePlanAccounts));
     }
 
     public String getPricePlanIdForSmartMeterId(String smartMeterId) {
-        return smartMeterToPricePlanAccounts.get(smartMeterId);
+        return accounts.get(Commodity.ELECTRICITY).planOf(smartMeterId);
+    }
+
+    public String getGasPricePlanIdForSmartMeterId(String smartMeterId) {
+        return accounts.get(Commodity.GAS).planOf(smartMeterId);
+    }
+
+    /**
+     * A copy of the meters on {@code pricePlanId}; empty for a plan nobody is on.
+     */
+    public Set<String> getSmartMeterIdsOnPricePlan(Commodity commodity, String pricePlanId) {
+        return accounts.get(commodity).metersOn(pricePlanId);
+    }
+
+    /**
+     * Accounts on each plan that has any.
+     */
+    public Map<String, Integer> getAccountCountsByPricePlan(Commodity commodity) {
+        return accounts.get(commodity).countsByPlan();
+    }
+
+    /**
+     * Puts each meter in {@code smartMeterToPricePlan} on its plan, all in one step.
+     */
+    public void switchPricePlans(Commodity commodity, Map<String, String> smartMeterToPricePlan) {
+        accounts.get(commodity).assignAll(smartMeterToPricePlan);
+    }
+
+    /**
+     * Moves every account on {@code fromPricePlanId} to {@code toPricePlanId} in one step, returning how many moved.
+     */
+    public int movePricePlanAccounts(Commodity commodity, String fromPricePlanId, String toPricePlanId) {
+        return accounts.get(commodity).moveAll(fromPricePlanId, toPricePlanId);
     }
 }
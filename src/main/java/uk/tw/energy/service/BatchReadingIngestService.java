@@ -0,0 +1,251 @@
+package uk.tw.energy.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.Commodity;
+import uk.tw.energy.domain.MeterIngestSummary;
+import uk.tw.energy.exception.BadRequest;
+import uk.tw.energy.exception.ServiceUnavailable;
+import uk.tw.energy.store.ReadingBatch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a JSON array of meter documents token by token and hands readings to the {@link ReadingIngestPipeline} in
+ * chunks as they are parsed, so an upload never has to be held in memory as a whole and is subject to the same
+ * bounded queues, and 503s when they are full, as single uploads.
+ * <p>
+ * Readings that come before their document's {@code smartMeterId} are held until it arrives, up to one chunk per
+ * commodity; a document that needs more than that is rejected. An upload is not stored atomically: chunks handed over
+ * before a malformed part, or before the pipeline turns one away, stay stored, and the error says how many readings
+ * that was, so a client resending the upload should leave those out.
+ */
+@Service
+public class BatchReadingIngestService {
+
+    static final int CHUNK_SIZE = 1024;
+
+    private static final String SMART_METER_ID = "smartMeterId";
+    private static final String ELECTRICITY_READINGS = "electricityReadings";
+    private static final String GAS_READINGS = "gasReadings";
+    private static final String TIME = "time";
+    private static final String READING = "reading";
+
+    private final ReadingIngestPipeline readingIngestPipeline;
+    private final JsonFactory jsonFactory;
+
+    public BatchReadingIngestService(MeterReadingService meterReadingService, ObjectMapper objectMapper) {
+        this(new ReadingIngestPipeline(meterReadingService), objectMapper);
+    }
+
+    @Autowired
+    public BatchReadingIngestService(ReadingIngestPipeline readingIngestPipeline, ObjectMapper objectMapper) {
+        this.readingIngestPipeline = readingIngestPipeline;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * @throws BadRequest if the upload is malformed, or a document has more than a chunk of readings before its meter id
+     * @throws ServiceUnavailable if the pipeline turns a chunk away
+     */
+    public List<MeterIngestSummary> storeBatch(InputStream body) throws IOException {
+        Map<String, MeterIngestSummary> summaries = new LinkedHashMap<>();
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new BadRequest("Expected an array of meter readings");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                readDocument(parser, summaries);
+            }
+            if (token != JsonToken.END_ARRAY) {
+                throw new BadRequest("Expected an array of meter readings");
+            }
+        } catch (JsonProcessingException e) {
+            throw new BadRequest(partially("Malformed meter readings: " + e.getOriginalMessage(), summaries));
+        } catch (BadRequest e) {
+            throw new BadRequest(partially(e.getMessage(), summaries));
+        } catch (ServiceUnavailable e) {
+            throw new ServiceUnavailable(partially(e.getMessage(), summaries), e.getRetryAfterSeconds());
+        }
+        return new ArrayList<>(summaries.values());
+    }
+
+    private static String partially(String message, Map<String, MeterIngestSummary> summaries) {
+        long stored = summaries.values().stream().mapToLong(MeterIngestSummary::getAccepted).sum();
+        return stored == 0 ? message : message + "; " + stored + " readings before it were already stored";
+    }
+
+    private void readDocument(JsonParser parser, Map<String, MeterIngestSummary> summaries) throws IOException {
+        Document document = new Document(summaries);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (SMART_METER_ID.equals(field) && value == JsonToken.VALUE_STRING) {
+                document.smartMeterId = parser.getText();
+                document.flush();
+            } else if (ELECTRICITY_READINGS.equals(field) && value == JsonToken.START_ARRAY) {
+                readReadings(parser, document, Commodity.ELECTRICITY);
+            } else if (GAS_READINGS.equals(field) && value == JsonToken.START_ARRAY) {
+                readReadings(parser, document, Commodity.GAS);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        document.finish();
+    }
+
+    private void readReadings(JsonParser parser, Document document, Commodity commodity) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.START_OBJECT && readReading(parser, document.batch(commodity))) {
+                if (document.batch(commodity).size() >= CHUNK_SIZE) {
+                    if (!document.hasMeterId()) {
+                        throw new BadRequest("smartMeterId must come before more than " + CHUNK_SIZE + " "
+                                + commodity.name().toLowerCase() + " readings");
+                    }
+                    document.flush();
+                }
+            } else {
+                parser.skipChildren();
+                document.rejected++;
+            }
+        }
+    }
+
+    private boolean readReading(JsonParser parser, ReadingBatch batch) throws IOException {
+        Instant time = null;
+        BigDecimal reading = null;
+        boolean valid = true;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            try {
+                if (TIME.equals(field)) {
+                    time = readTime(parser, value);
+                } else if (READING.equals(field)) {
+                    reading = readDecimal(parser, value);
+                } else {
+                    parser.skipChildren();
+                }
+            } catch (DateTimeParseException | ArithmeticException | NumberFormatException e) {
+                valid = false;
+            }
+        }
+        if (!valid || time == null || reading == null) {
+            return false;
+        }
+        try {
+            batch.add(time, reading);
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    private static Instant readTime(JsonParser parser, JsonToken value) throws IOException {
+        switch (value) {
+            case VALUE_STRING:
+                return Instant.parse(parser.getText());
+            case VALUE_NUMBER_INT:
+                return Instant.ofEpochSecond(parser.getLongValue());
+            case VALUE_NUMBER_FLOAT:
+                BigDecimal seconds = parser.getDecimalValue();
+                long wholeSeconds = seconds.longValue();
+                int nanos = seconds.subtract(BigDecimal.valueOf(wholeSeconds)).movePointRight(9).intValue();
+                return Instant.ofEpochSecond(wholeSeconds, nanos);
+            default:
+                parser.skipChildren();
+                return null;
+        }
+    }
+
+    private static BigDecimal readDecimal(JsonParser parser, JsonToken value) throws IOException {
+        switch (value) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDecimalValue();
+            case VALUE_STRING:
+                return new BigDecimal(parser.getText().trim());
+            default:
+                parser.skipChildren();
+                return null;
+        }
+    }
+
+    private class Document {
+        private final Map<String, MeterIngestSummary> summaries;
+        private String smartMeterId;
+        private ReadingBatch electricity = new ReadingBatch(CHUNK_SIZE);
+        private ReadingBatch gas = new ReadingBatch(CHUNK_SIZE);
+        private long rejected;
+
+        private Document(Map<String, MeterIngestSummary> summaries) {
+            this.summaries = summaries;
+        }
+
+        /**
+         * The chunk being filled; replaced by a fresh one each time it is handed to the pipeline.
+         */
+        private ReadingBatch batch(Commodity commodity) {
+            return commodity == Commodity.GAS ? gas : electricity;
+        }
+
+        private boolean hasMeterId() {
+            return smartMeterId != null && !smartMeterId.isEmpty();
+        }
+
+        private void flush() {
+            if (!hasMeterId()) {
+                return;
+            }
+            if (!electricity.isEmpty()) {
+                submit(Commodity.ELECTRICITY, electricity);
+                electricity = new ReadingBatch(CHUNK_SIZE);
+            }
+            if (!gas.isEmpty()) {
+                submit(Commodity.GAS, gas);
+                gas = new ReadingBatch(CHUNK_SIZE);
+            }
+        }
+
+        /**
+         * Counts the chunk as accepted as soon as it is handed over, so the summaries always say what has been stored.
+         *
+         * @throws ServiceUnavailable if the pipeline turns the chunk away
+         */
+        private void submit(Commodity commodity, ReadingBatch batch) {
+            if (!readingIngestPipeline.submit(commodity, smartMeterId, batch)) {
+                throw new ServiceUnavailable("Too many readings waiting to be stored, try again later",
+                        readingIngestPipeline.getRetryAfterSeconds());
+            }
+            MeterIngestSummary summary = summary();
+            summary.setAccepted(summary.getAccepted() + batch.size());
+        }
+
+        private void finish() {
+            flush();
+            MeterIngestSummary summary = summary();
+            summary.setRejected(summary.getRejected() + rejected + electricity.size() + gas.size());
+            electricity.clear();
+            gas.clear();
+        }
+
+        private MeterIngestSummary summary() {
+            return summaries.computeIfAbsent(smartMeterId, id -> new MeterIngestSummary(id, 0, 0));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package uk.tw.energy.service;
+
+import uk.tw.energy.exception.BadRequest;
+import uk.tw.energy.store.FixedPoint;
+import uk.tw.energy.store.ReadingBatch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A compact binary upload of one meter's readings, accepted by the store endpoints as {@link #MEDIA_TYPE}. Readings
+ * decode straight into a {@link ReadingBatch}, with no Instant or BigDecimal in between.
+ * <pre>
+ * byte     version, currently 1
+ * varint   length of the smart meter id, then its UTF-8 bytes
+ * byte     scale of every value, 0 to {@value FixedPoint#SCALE}
+ * varint   number of readings, then for each reading:
+ *   zigzag varint  seconds since the previous reading (since the epoch for the first)
+ *   varint         nanosecond of the second
+ *   zigzag varint  unscaled value at the upload's scale
+ * </pre>
+ * Varints are little-endian base 128; zigzag maps signed to unsigned as in protocol buffers. Every reading of an
+ * upload is stored with the upload's scale.
+ */
+public final class BinaryReadingCodec {
+
+    public static final String MEDIA_TYPE = "application/x-meter-readings";
+
+    private static final int VERSION = 1;
+    private static final int MAX_INITIAL_CAPACITY = 1 << 16;
+
+    private BinaryReadingCodec() { }
+
+    public static final class Upload {
+        private final String smartMeterId;
+        private final ReadingBatch readings;
+
+        private Upload(String smartMeterId, ReadingBatch readings) {
+            this.smartMeterId = smartMeterId;
+            this.readings = readings;
+        }
+
+        public String getSmartMeterId() {
+            return smartMeterId;
+        }
+
+        public ReadingBatch getReadings() {
+            return readings;
+        }
+    }
+
+    /**
+     * @throws BadRequest if the upload is malformed or truncated
+     */
+    public static Upload decode(InputStream body) throws IOException {
+        InputStream in = new BufferedInputStream(body);
+        try {
+            int version = readByte(in);
+            if (version != VERSION) {
+                throw new BadRequest("Unsupported reading upload version " + version);
+            }
+            String smartMeterId = readMeterId(in);
+            int scale = readByte(in);
+            if (scale > FixedPoint.SCALE) {
+                throw new BadRequest("Reading scale must be at most " + FixedPoint.SCALE);
+            }
+            long toFixedPoint = pow10(FixedPoint.SCALE - scale);
+            long count = readVarint(in);
+            ReadingBatch batch = new ReadingBatch((int) Math.min(count, MAX_INITIAL_CAPACITY));
+            long epochSecond = 0;
+            for (long i = 0; i < count; i++) {
+                epochSecond = Math.addExact(epochSecond, unzigzag(readVarint(in)));
+                long nano = readVarint(in);
+                if (epochSecond < Instant.MIN.getEpochSecond() || epochSecond > Instant.MAX.getEpochSecond()
+                        || nano < 0 || nano > 999_999_999) {
+                    throw new BadRequest("Reading time out of range");
+                }
+                batch.add(epochSecond, (int) nano, Math.multiplyExact(unzigzag(readVarint(in)), toFixedPoint), scale);
+            }
+            return new Upload(smartMeterId, batch);
+        } catch (EOFException e) {
+            throw new BadRequest("Truncated reading upload");
+        } catch (ArithmeticException e) {
+            throw new BadRequest("Reading out of range");
+        }
+    }
+
+    /**
+     * Encodes readings at the widest scale among them.
+     *
+     * @throws IllegalArgumentException if a reading has more than {@value FixedPoint#SCALE} decimal places
+     */
+    public static <T> void encode(String smartMeterId, List<T> readings, Function<T, Instant> time,
+                                  Function<T, BigDecimal> reading, OutputStream body) throws IOException {
+        int scale = 0;
+        for (T r : readings) {
+            scale = Math.max(scale, reading.apply(r).scale());
+        }
+        if (scale > FixedPoint.SCALE) {
+            throw new IllegalArgumentException("Reading scale must be at most " + FixedPoint.SCALE);
+        }
+        OutputStream out = new BufferedOutputStream(body);
+        out.write(VERSION);
+        byte[] meterId = smartMeterId.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, meterId.length);
+        out.write(meterId);
+        out.write(scale);
+        writeVarint(out, readings.size());
+        long previousSecond = 0;
+        for (T r : readings) {
+            Instant instant = time.apply(r);
+            writeVarint(out, zigzag(Math.subtractExact(instant.getEpochSecond(), previousSecond)));
+            writeVarint(out, instant.getNano());
+            writeVarint(out, zigzag(reading.apply(r).setScale(scale).unscaledValue().longValueExact()));
+            previousSecond = instant.getEpochSecond();
+        }
+        out.flush();
+    }
+
+    private static String readMeterId(InputStream in) throws IOException {
+        long length = readVarint(in);
+        if (length > MeterReadingService.MAX_SMART_METER_ID_BYTES) {
+            throw new BadRequest("Smart meter id too long");
+        }
+        byte[] bytes = new byte[(int) length];
+        int read = 0;
+        while (read < bytes.length) {
+            int n = in.read(bytes, read, bytes.length - read);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte(in);
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new BadRequest("Malformed varint");
+    }
+
+    private static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long encoded) {
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    private static long pow10(int exponent) {
+        long power = 1;
+        for (int i = 0; i < exponent; i++) {
+            power *= 10;
+        }
+        return power;
+    }
+}
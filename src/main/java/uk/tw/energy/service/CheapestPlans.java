@@ -0,0 +1,132 @@
+package uk.tw.energy.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The {@code k} cheapest of a run of priced plans, kept in a bounded max-heap with the dearest kept plan at the root,
+ * so picking them from {@code P} plans costs O(P log K) rather than the O(P log P) of sorting them all. Plans are
+ * identified by their index in the catalog; equal costs go to the lower index, as a stable sort would.
+ */
+final class CheapestPlans {
+
+    private final int[] plans;
+    private final long[] costs;
+    private int size;
+
+    CheapestPlans(int k) {
+        plans = new int[k];
+        costs = new long[k];
+    }
+
+    boolean isFull() {
+        return size == plans.length;
+    }
+
+    /**
+     * Cost of the dearest plan kept; a plan that cannot come in under it cannot make the cut once {@link #isFull}.
+     */
+    long worstCost() {
+        return costs[0];
+    }
+
+    void offer(int plan, long cost) {
+        if (size < plans.length) {
+            plans[size] = plan;
+            costs[size] = cost;
+            siftUp(size++);
+        } else if (size > 0 && (cost < costs[0] || cost == costs[0] && plan < plans[0])) {
+            plans[0] = plan;
+            costs[0] = cost;
+            siftDown(0, size);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Sorts the kept plans cheapest first, in place, after which {@link #plan} and {@link #cost} read them in order.
+     * Nothing may be offered afterwards.
+     */
+    void sort() {
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    int plan(int rank) {
+        return plans[rank];
+    }
+
+    long cost(int rank) {
+        return costs[rank];
+    }
+
+    /**
+     * The {@code k} first of {@code items} in {@code order}, in that order.
+     */
+    static <T> List<T> cheapest(Collection<T> items, int k, Comparator<? super T> order) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<T> kept = new PriorityQueue<>(Math.min(k, items.size()) + 1, order.reversed());
+        for (T item : items) {
+            if (kept.size() < k) {
+                kept.add(item);
+            } else if (order.compare(item, kept.peek()) < 0) {
+                kept.poll();
+                kept.add(item);
+            }
+        }
+        List<T> cheapest = new ArrayList<>(kept);
+        cheapest.sort(order);
+        return cheapest;
+    }
+
+    private void siftUp(int child) {
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (!dearer(child, parent)) {
+                return;
+            }
+            swap(child, parent);
+            child = parent;
+        }
+    }
+
+    private void siftDown(int parent, int end) {
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= end) {
+                return;
+            }
+            if (child + 1 < end && dearer(child + 1, child)) {
+                child++;
+            }
+            if (!dearer(child, parent)) {
+                return;
+            }
+            swap(child, parent);
+            parent = child;
+        }
+    }
+
+    private boolean dearer(int a, int b) {
+        return costs[a] > costs[b] || costs[a] == costs[b] && plans[a] > plans[b];
+    }
+
+    private void swap(int a, int b) {
+        int plan = plans[a];
+        plans[a] = plans[b];
+        plans[b] = plan;
+        long cost = costs[a];
+        costs[a] = costs[b];
+        costs[b] = cost;
+    }
+}
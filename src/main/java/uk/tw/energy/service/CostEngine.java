@@ -0,0 +1,78 @@
+package uk.tw.energy.service;
+
+import uk.tw.energy.store.FixedPoint;
+import uk.tw.energy.store.ReadingRollup;
+
+import java.math.BigDecimal;
+
+/**
+ * Usage and cost arithmetic for {@link PricePlanService} on fixed-point longs. Every step rounds
+ * {@link java.math.RoundingMode#HALF_UP} at the same scale as the BigDecimal calculation it replaces, so results are
+ * identical once converted back with {@link #toBigDecimal}; nothing is allocated until then. The one exception is
+ * {@link #usageOver}: the BigDecimal calculation took the elapsed time as a double number of hours, which this divides
+ * exactly, so the two can differ in the last decimal place when the time is not a whole number of quarter hours.
+ * Readings only reach here if {@link FixedPoint} holds them exactly.
+ * <p>
+ * Usages and costs come back at {@link #SCALE}; averages come back at {@link #averageScale} of their rollup.
+ */
+public final class CostEngine {
+
+    public static final int SCALE = 4;
+
+    private static final long SECONDS_PER_HOUR = 3600;
+    private static final long HOURS_PER_DAY = 24;
+
+    private CostEngine() { }
+
+    /**
+     * The scale a BigDecimal sum of the rollup's readings would have.
+     */
+    public static int averageScale(ReadingRollup rollup) {
+        return Math.max(0, rollup.getMaxScale());
+    }
+
+    /**
+     * Mean of the rollup's readings at {@link #averageScale}.
+     */
+    public static long averageReading(ReadingRollup rollup) {
+        int scale = averageScale(rollup);
+        long sum = FixedPoint.rescale(rollup.getSum(), FixedPoint.SCALE, scale);
+        return FixedPoint.divide(sum, scale, rollup.getCount(), scale);
+    }
+
+    /**
+     * kWh used over {@code seconds} at an average draw of {@code average} kW.
+     */
+    public static long usageOver(long average, int averageScale, long seconds) {
+        return FixedPoint.divide(Math.multiplyExact(average, seconds), averageScale, SECONDS_PER_HOUR, SCALE);
+    }
+
+    /**
+     * kWh used over a whole day at an average draw of {@code average} kW.
+     */
+    public static long dayUsage(long average, int averageScale) {
+        return FixedPoint.rescale(Math.multiplyExact(average, HOURS_PER_DAY), averageScale, SCALE);
+    }
+
+    /**
+     * Cost of a whole day at an average draw of {@code average} kW, rounding only the cost and not the usage.
+     */
+    public static long dayCost(long average, int averageScale, BigDecimal price) {
+        return cost(Math.multiplyExact(average, HOURS_PER_DAY), averageScale, price);
+    }
+
+    /**
+     * Cost of {@code usage} at {@code price}, where {@code usage} may be at any scale.
+     */
+    public static long cost(long usage, int usageScale, long price, int priceScale) {
+        return FixedPoint.multiply(usage, usageScale, price, priceScale, SCALE);
+    }
+
+    public static long cost(long usage, int usageScale, BigDecimal price) {
+        return cost(usage, usageScale, price.unscaledValue().longValueExact(), price.scale());
+    }
+
+    public static BigDecimal toBigDecimal(long value) {
+        return BigDecimal.valueOf(value, SCALE);
+    }
+}
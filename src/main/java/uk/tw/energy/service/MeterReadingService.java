@@ -1,85 +1,205 @@
 package uk.tw.energy.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.Commodity;
 import uk.tw.energy.domain.ElectricityReading;
 import uk.tw.energy.domain.GasReading;
 import uk.tw.energy.domain.SeparateUsages;
+import uk.tw.energy.exception.BadRequest;
+import uk.tw.energy.store.ReadingBatch;
+import uk.tw.energy.store.ReadingCursor;
+import uk.tw.energy.store.ReadingLog;
+import uk.tw.energy.store.ReadingPage;
+import uk.tw.energy.store.ReadingRollup;
+import uk.tw.energy.store.ReadingSeries;
+import uk.tw.energy.store.ReadingStore;
+import uk.tw.energy.store.ReadingStoreOptions;
+import uk.tw.energy.store.SeriesImage;
+import uk.tw.energy.store.TariffCalendar;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.ZoneId;
-import java.time.ZoneOffset;
-import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Service
 public class MeterReadingService {
 
-    private final Map<String, List<ElectricityReading>> meterAssociatedReadings;
-    private final Map<String,List<GasReading>> gasMeterAssociatedReadings;
+    /**
+     * Longest smart meter id accepted, in UTF-8 bytes; the reading log could not record a much longer one.
+     */
+    public static final int MAX_SMART_METER_ID_BYTES = 1024;
+
+    private final ReadingStore electricityStore;
+    private final ReadingStore gasStore;
+    private final ReadingLog readingLog;
+    private final TariffCalendar calendar;
+    private final LongAdder electricityReadingsIngested = new LongAdder();
+    private final LongAdder gasReadingsIngested = new LongAdder();
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
 
 
     public MeterReadingService(Map<String, List<ElectricityReading>> meterAssociatedReadings, Map<String,List<GasReading>> gasMeterAssociatedReadings) {
-        this.meterAssociatedReadings = meterAssociatedReadings;
-        this.gasMeterAssociatedReadings= gasMeterAssociatedReadings;
+        this(meterAssociatedReadings, gasMeterAssociatedReadings, ReadingLog.NONE);
+    }
+
+    public MeterReadingService(Map<String, List<ElectricityReading>> meterAssociatedReadings, Map<String,List<GasReading>> gasMeterAssociatedReadings,
+                               ReadingLog readingLog) {
+        this(meterAssociatedReadings, gasMeterAssociatedReadings, readingLog, ReadingStoreOptions.defaults());
+    }
+
+    @Autowired
+    public MeterReadingService(Map<String, List<ElectricityReading>> meterAssociatedReadings, Map<String,List<GasReading>> gasMeterAssociatedReadings,
+                               ReadingLog readingLog, ReadingStoreOptions storeOptions) {
+        this.electricityStore = new ReadingStore(storeOptions);
+        this.gasStore = new ReadingStore(storeOptions);
+        this.readingLog = readingLog;
+        this.calendar = storeOptions.getCalendar();
+        readingLog.replay(new ReadingLog.Replayer() {
+            @Override
+            public void replay(Commodity commodity, String smartMeterId, ReadingBatch batch) {
+                storeFor(commodity).append(smartMeterId, batch);
+            }
+
+            @Override
+            public void restore(Commodity commodity, String smartMeterId, SeriesImage image) {
+                storeFor(commodity).restore(smartMeterId, image);
+            }
+        });
+        if (electricityStore.meterIds().isEmpty() && gasStore.meterIds().isEmpty()) {
+            meterAssociatedReadings.forEach(this::storeReadings);
+            gasMeterAssociatedReadings.forEach(this::storeGasReadings);
+        }
     }
 
     public Optional<List<ElectricityReading>> getReadings(String smartMeterId) {
-        return Optional.ofNullable(meterAssociatedReadings.get(smartMeterId));
+        return electricityStore.getSeries(smartMeterId).map(series -> series.toList(ElectricityReading::new));
+    }
+
+    public Optional<List<ElectricityReading>> getReadings(String smartMeterId, Instant from, Instant to) {
+        return electricityStore.getSeries(smartMeterId).map(series -> series.toList(from, to, ElectricityReading::new));
     }
 
     public void storeReadings(String smartMeterId, List<ElectricityReading> electricityReadings) {
-        if (!meterAssociatedReadings.containsKey(smartMeterId)) {
-            meterAssociatedReadings.put(smartMeterId, new ArrayList<>());
-        }
-        meterAssociatedReadings.get(smartMeterId).addAll(electricityReadings);
+        storeReadings(smartMeterId, ReadingBatch.of(electricityReadings, ElectricityReading::getTime, ElectricityReading::getReading));
+    }
+
+    public void storeReadings(String smartMeterId, ReadingBatch batch) {
+        store(Commodity.ELECTRICITY, smartMeterId, batch);
     }
 
     public Optional<List<GasReading>> getGasReadings(String smartMeterId) {
-        return Optional.ofNullable(gasMeterAssociatedReadings.get(smartMeterId));
+        return gasStore.getSeries(smartMeterId).map(series -> series.toList(GasReading::new));
+    }
+
+    public Optional<List<GasReading>> getGasReadings(String smartMeterId, Instant from, Instant to) {
+        return gasStore.getSeries(smartMeterId).map(series -> series.toList(from, to, GasReading::new));
+    }
+
+    /**
+     * A page of the meter's electricity readings from {@code cursor} up to, but excluding, {@code to}.
+     */
+    public Optional<ReadingPage> getReadingsPage(String smartMeterId, ReadingCursor cursor, Instant to, int limit) {
+        return electricityStore.getSeries(smartMeterId).map(series -> series.page(cursor, to, limit));
+    }
+
+    public Optional<ReadingPage> getGasReadingsPage(String smartMeterId, ReadingCursor cursor, Instant to, int limit) {
+        return gasStore.getSeries(smartMeterId).map(series -> series.page(cursor, to, limit));
     }
 
     public void storeGasReadings(String smartMeterId, List<GasReading> gasReadings) {
-        if (!meterAssociatedReadings.containsKey(smartMeterId)) {
-            gasMeterAssociatedReadings.put(smartMeterId, new ArrayList<>());
+        storeGasReadings(smartMeterId, ReadingBatch.of(gasReadings, GasReading::getTime, GasReading::getReading));
+    }
+
+    public void storeGasReadings(String smartMeterId, ReadingBatch batch) {
+        store(Commodity.GAS, smartMeterId, batch);
+    }
+
+    private void store(Commodity commodity, String smartMeterId, ReadingBatch batch) {
+        checkSmartMeterId(smartMeterId);
+        checkpointLock.readLock().lock();
+        try {
+            readingLog.append(commodity, smartMeterId, batch);
+            storeFor(commodity).append(smartMeterId, batch);
+        } finally {
+            checkpointLock.readLock().unlock();
         }
-        gasMeterAssociatedReadings.get(smartMeterId).addAll(gasReadings);
+        (commodity == Commodity.GAS ? gasReadingsIngested : electricityReadingsIngested).add(batch.size());
+    }
+
+    /**
+     * Readings stored since startup, not counting any replayed from the reading log.
+     */
+    public long getReadingsIngested(Commodity commodity) {
+        return (commodity == Commodity.GAS ? gasReadingsIngested : electricityReadingsIngested).sum();
+    }
+
+    public ReadingStore getStore(Commodity commodity) {
+        return storeFor(commodity);
+    }
+
+    /**
+     * Applies the configured retention policy to every electricity and gas series, then checkpoints the reading log so
+     * that a restart comes back to the compacted series and the log no longer holds what they replace.
+     */
+    public void compact(Instant now) {
+        electricityStore.compact(now);
+        gasStore.compact(now);
+        checkpoint();
+    }
+
+    /**
+     * Writes every series to the reading log as a checkpoint of everything logged so far. Stores wait only while each
+     * series' snapshot is taken and its rollups copied; the readings are written from the snapshots once they resume.
+     */
+    public void checkpoint() {
+        if (readingLog == ReadingLog.NONE) {
+            return;
+        }
+        long mark;
+        Map<Commodity, Map<String, SeriesImage>> images = new EnumMap<>(Commodity.class);
+        checkpointLock.writeLock().lock();
+        try {
+            mark = readingLog.mark();
+            for (Commodity commodity : Commodity.values()) {
+                images.put(commodity, storeFor(commodity).images());
+            }
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+        readingLog.checkpoint(mark, images);
+    }
+
+    /**
+     * The calendar the stores group readings by, for callers that need query windows on the same day boundaries.
+     */
+    public TariffCalendar getCalendar() {
+        return calendar;
+    }
+
+    private ReadingStore storeFor(Commodity commodity) {
+        return commodity == Commodity.GAS ? gasStore : electricityStore;
     }
 
     public Optional<SeparateUsages> getSeparateUsages(String smartMeterId) {
         Map<String,BigDecimal> dayOfWeekElectricityReadings = new HashMap<>();
         Map<String,BigDecimal> dayOfWeekGasReadings = new HashMap<>();
-        int dayOfWeek = Instant.now().atZone(ZoneId.systemDefault()).getDayOfWeek().getValue();
-        LocalDateTime currenTime = LocalDateTime.of(LocalDate.now(), LocalTime.MIN);
-        Instant todayStart = currenTime.toInstant(ZoneOffset.UTC);
-
-        List<ElectricityReading> weekElectricityReadings = getReadings(smartMeterId).get().stream().filter(electricityReading -> electricityReading
-                .getTime().isBefore(todayStart.minusMillis(TimeUnit.DAYS.toMillis(dayOfWeek-1)))&&
-                electricityReading.getTime().isAfter(todayStart.minusMillis(TimeUnit.DAYS.toMillis(dayOfWeek+6)))
-        ).collect(Collectors.toList());
-
-        List<GasReading> weekGasReadings = getGasReadings(smartMeterId).get().stream().filter(gasReading -> gasReading
-                .getTime().isBefore(todayStart.minusMillis(TimeUnit.DAYS.toMillis(dayOfWeek-1)))&&
-                gasReading.getTime().isAfter(todayStart.minusMillis(TimeUnit.DAYS.toMillis(dayOfWeek+6)))
-        ).collect(Collectors.toList());
-        Map<String,List<BigDecimal>> electricityReadingsMap = getReadingMap(weekElectricityReadings);
-        Map<String,List<BigDecimal>> gasReadingMap = getGasReadingMap(weekGasReadings);
-        electricityReadingsMap.forEach((s, bigDecimals) -> {
-            BigDecimal bigDecimal = bigDecimals.stream().reduce(BigDecimal.ZERO, BigDecimal::add);
-            dayOfWeekElectricityReadings.put(s,bigDecimal);
-        });
-        gasReadingMap.forEach((s, bigDecimals) -> {
-            BigDecimal bigDecimal = bigDecimals.stream().reduce(BigDecimal.ZERO,BigDecimal::add);
-            dayOfWeekGasReadings.put(s,bigDecimal);
-        });
+        TariffCalendar.Window lastWeek = calendar.week(Instant.now()).previous();
+        Instant weekStart = lastWeek.from();
+        Instant weekEnd = lastWeek.to();
+
+        getDayOfWeekRollups(smartMeterId, weekStart, weekEnd).get()
+                .forEach((day, rollup) -> dayOfWeekElectricityReadings.put(day, rollup.sumAsBigDecimal()));
+        getGasDayOfWeekRollups(smartMeterId, weekStart, weekEnd).get()
+                .forEach((day, rollup) -> dayOfWeekGasReadings.put(day, rollup.sumAsBigDecimal()));
         final BigDecimal[] electricityUsage = {BigDecimal.valueOf(0)};
         dayOfWeekElectricityReadings.forEach((s, bigDecimals) -> electricityUsage[0] = electricityUsage[0].add(bigDecimals));
         final BigDecimal[] gasUsage = {BigDecimal.valueOf(0)};
@@ -94,36 +214,58 @@ public class MeterReadingService {
 
     }
 
-    private Map<String, List<BigDecimal>> getReadingMap(List<ElectricityReading> electricityReadingList) {
-        Map<String,List<BigDecimal>> readingsMap = new HashMap<>();
-        electricityReadingList.forEach(electricityReading ->{
-            if(readingsMap.containsKey(electricityReading.getTime().minusMillis(TimeUnit.HOURS.toMillis(8)).atZone(ZoneId.systemDefault()).getDayOfWeek().toString())){
-                List<BigDecimal> list1 = readingsMap.get(electricityReading.getTime().minusMillis(TimeUnit.HOURS.toMillis(8)).atZone(ZoneId.systemDefault()).getDayOfWeek().toString());
-                list1.add(electricityReading.getReading());
-                readingsMap.put(electricityReading.getTime().minusMillis(TimeUnit.HOURS.toMillis(8)).atZone(ZoneId.systemDefault()).getDayOfWeek().toString(),list1 );
-            }else {
-                List<BigDecimal> list = new ArrayList<>();
-                list.add(electricityReading.getReading());
-                readingsMap.put(electricityReading.getTime().minusMillis(TimeUnit.HOURS.toMillis(8)).atZone(ZoneId.systemDefault()).getDayOfWeek().toString(),list);
-            }});
-
-
-        return readingsMap;
-    }
-    private Map<String, List<BigDecimal>> getGasReadingMap(List<GasReading> gasReadingList) {
-
-        Map<String,List<BigDecimal>> gasReadingsMap = new HashMap<>();
-        gasReadingList.forEach(gasReading ->{
-            if(gasReadingsMap.containsKey(gasReading.getTime().minusMillis(TimeUnit.HOURS.toMillis(8)).atZone(ZoneId.systemDefault()).getDayOfWeek().toString())){
-                List<BigDecimal> list1 = gasReadingsMap.get(gasReading.getTime().minusMillis(TimeUnit.HOURS.toMillis(8)).atZone(ZoneId.systemDefault()).getDayOfWeek().toString());
-                list1.add(gasReading.getReading());
-                gasReadingsMap.put(gasReading.getTime().minusMillis(TimeUnit.HOURS.toMillis(8)).atZone(ZoneId.systemDefault()).getDayOfWeek().toString(),list1 );
-            }else {
-                List<BigDecimal> list = new ArrayList<>();
-                list.add(gasReading.getReading());
-                gasReadingsMap.put(gasReading.getTime().minusMillis(TimeUnit.HOURS.toMillis(8)).atZone(ZoneId.systemDefault()).getDayOfWeek().toString(),list);
-            }});
-        return gasReadingsMap;
+    public Optional<Map<String, ReadingRollup>> getDayOfWeekRollups(String smartMeterId, Instant from, Instant to) {
+        return getDayOfWeekRollups(Commodity.ELECTRICITY, smartMeterId, from, to);
+    }
+
+    public Optional<Map<String, ReadingRollup>> getGasDayOfWeekRollups(String smartMeterId, Instant from, Instant to) {
+        return getDayOfWeekRollups(Commodity.GAS, smartMeterId, from, to);
+    }
+
+    public Optional<Map<String, ReadingRollup>> getDayOfWeekRollups(Commodity commodity, String smartMeterId, Instant from, Instant to) {
+        return storeFor(commodity).getSeries(smartMeterId).map(series -> byDayOfWeek(series.aggregateByDay(from, to)));
+    }
+
+    public Optional<ReadingRollup> getReadingsRollup(String smartMeterId, Instant from, Instant to) {
+        return electricityStore.getSeries(smartMeterId).map(series -> series.aggregate(from, to));
+    }
+
+    /**
+     * Version of the meter's electricity readings, see {@link ReadingSeries#version()}; -1 for an unknown meter.
+     */
+    public long getReadingsVersion(String smartMeterId) {
+        return getReadingsVersion(Commodity.ELECTRICITY, smartMeterId);
+    }
+
+    public long getReadingsVersion(Commodity commodity, String smartMeterId) {
+        return storeFor(commodity).getSeries(smartMeterId).map(ReadingSeries::version).orElse(-1L);
+    }
+
+    /**
+     * Rollup of every electricity reading the meter has ever sent, compacted or not; empty if it has sent none.
+     */
+    public Optional<ReadingRollup> getReadingsSummary(String smartMeterId) {
+        return getReadingsSummary(Commodity.ELECTRICITY, smartMeterId);
+    }
+
+    public Optional<ReadingRollup> getReadingsSummary(Commodity commodity, String smartMeterId) {
+        return storeFor(commodity).getSeries(smartMeterId).map(ReadingSeries::total);
+    }
+
+    /**
+     * @throws BadRequest if {@code smartMeterId} is longer than {@link #MAX_SMART_METER_ID_BYTES}
+     */
+    static void checkSmartMeterId(String smartMeterId) {
+        if (smartMeterId.getBytes(StandardCharsets.UTF_8).length > MAX_SMART_METER_ID_BYTES) {
+            throw new BadRequest("Smart meter id too long");
+        }
+    }
+
+    private static Map<String, ReadingRollup> byDayOfWeek(Map<Long, ReadingRollup> dailyRollups) {
+        Map<String, ReadingRollup> dayOfWeekRollups = new HashMap<>();
+        dailyRollups.forEach((day, rollup) ->
+                dayOfWeekRollups.merge(TariffCalendar.dayOfWeek(day).toString(), rollup, ReadingRollup::merge));
+        return dayOfWeekRollups;
     }
 
 }
@@ -0,0 +1,305 @@
+package uk.tw.energy.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.Commodity;
+import uk.tw.energy.domain.GasPricePlan;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.TariffPlan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * The price plans on offer, held as an immutable {@link Snapshot} indexed by plan id. A request takes the current
+ * snapshot once and prices against it throughout, and reading it takes no lock.
+ * <p>
+ * With {@code price-plans.catalog.file} set, plans are read from that JSON file at startup and again whenever its
+ * modification time changes, checked every {@code price-plans.catalog.reload-interval-seconds}. A reload builds a
+ * whole new snapshot and swaps it in; a file that fails to parse leaves the current one in place, is logged and counts
+ * towards {@code price-plans.catalog.reloads{result=failure}}. The file lists plans under {@code electricity} and {@code gas};
+ * a fuel the file leaves out keeps the seeded plans:
+ * <pre>
+ * {"electricity": [{"planName": "price-plan-0", "energySupplier": "Dr Evil's Dark Energy", "unitRate": 10,
+ *                   "peakTimeMultipliers": [{"dayOfWeek": "SATURDAY", "multiplier": 1.5}],
+ *                   "timeOfUseBands": [{"dayOfWeek": null, "start": "16:00", "end": "19:00", "multiplier": 2}]}],
+ *  "gas": [{"planName": "gas-price-plan-0", "energySupplier": "Dr Evil's Dark Gas", "unitRate": 10}]}
+ * </pre>
+ */
+@Service
+public class PricePlanCatalog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(PricePlanCatalog.class);
+
+    private final List<PricePlan> seededPricePlans;
+    private final List<GasPricePlan> seededGasPricePlans;
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService reloader;
+    private final Counter reloads;
+    private final Counter failedReloads;
+
+    private volatile Snapshot snapshot;
+    private FileTime loadedModifiedTime;
+
+    public PricePlanCatalog(List<PricePlan> pricePlans, List<GasPricePlan> gasPricePlans) {
+        this(pricePlans, gasPricePlans, "", 0, new ObjectMapper(), new CompositeMeterRegistry());
+    }
+
+    @Autowired
+    public PricePlanCatalog(List<PricePlan> pricePlans, List<GasPricePlan> gasPricePlans,
+                            @Value("${price-plans.catalog.file:}") String file,
+                            @Value("${price-plans.catalog.reload-interval-seconds:30}") long reloadIntervalSeconds,
+                            ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.seededPricePlans = pricePlans;
+        this.seededGasPricePlans = gasPricePlans;
+        this.file = file.isEmpty() ? null : Paths.get(file);
+        this.objectMapper = objectMapper;
+        this.reloads = Counter.builder("price-plans.catalog.reloads")
+                .description("Price plan file reloads")
+                .tag("result", "success")
+                .register(meterRegistry);
+        this.failedReloads = Counter.builder("price-plans.catalog.reloads")
+                .description("Price plan file reloads")
+                .tag("result", "failure")
+                .register(meterRegistry);
+
+        if (this.file == null) {
+            snapshot = new Snapshot(0, pricePlans, gasPricePlans);
+            reloader = null;
+            return;
+        }
+        try {
+            reload();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read price plans from " + file, e);
+        }
+        if (reloadIntervalSeconds <= 0) {
+            reloader = null;
+            return;
+        }
+        reloader = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "price-plan-catalog-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloader.scheduleWithFixedDelay(this::reloadIfModified, reloadIntervalSeconds, reloadIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Runs {@code listener} after each new snapshot is swapped in.
+     */
+    public void onReload(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * Reads the catalog file and swaps in the plans it lists.
+     *
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if it does not describe a valid set of plans
+     */
+    public synchronized Snapshot reload() throws IOException {
+        FileTime modifiedTime = Files.getLastModifiedTime(file);
+        JsonNode root = objectMapper.readTree(file.toFile());
+        List<PricePlan> pricePlans = root.has("electricity")
+                ? readPlans(root.get("electricity"), PricePlanCatalog::readPricePlan) : seededPricePlans;
+        List<GasPricePlan> gasPricePlans = root.has("gas")
+                ? readPlans(root.get("gas"), PricePlanCatalog::readGasPricePlan) : seededGasPricePlans;
+
+        Snapshot current = snapshot;
+        snapshot = new Snapshot(current == null ? 0 : current.version + 1, pricePlans, gasPricePlans);
+        loadedModifiedTime = modifiedTime;
+        reloads.increment();
+        reloadListeners.forEach(Runnable::run);
+        return snapshot;
+    }
+
+    @Override
+    public void close() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+
+    private synchronized void reloadIfModified() {
+        try {
+            if (!Files.getLastModifiedTime(file).equals(loadedModifiedTime)) {
+                reload();
+            }
+        } catch (IOException | RuntimeException e) {
+            failedReloads.increment();
+            log.error("Failed to reload price plans from {}, keeping the current ones", file, e);
+        }
+    }
+
+    private static <P> List<P> readPlans(JsonNode plans, Function<JsonNode, P> reader) {
+        if (!plans.isArray()) {
+            throw new IllegalArgumentException("Expected an array of price plans");
+        }
+        List<P> read = new ArrayList<>(plans.size());
+        plans.forEach(plan -> read.add(reader.apply(plan)));
+        return read;
+    }
+
+    private static PricePlan readPricePlan(JsonNode plan) {
+        return new PricePlan(requiredText(plan, "planName"), plan.path("energySupplier").asText(null),
+                requiredDecimal(plan, "unitRate"), readPeakTimeMultipliers(plan), readTimeOfUseBands(plan));
+    }
+
+    private static GasPricePlan readGasPricePlan(JsonNode plan) {
+        return new GasPricePlan(requiredText(plan, "planName"), plan.path("energySupplier").asText(null),
+                requiredDecimal(plan, "unitRate"), readPeakTimeMultipliers(plan), readTimeOfUseBands(plan));
+    }
+
+    private static List<PricePlan.PeakTimeMultiplier> readPeakTimeMultipliers(JsonNode plan) {
+        List<PricePlan.PeakTimeMultiplier> multipliers = new ArrayList<>();
+        plan.path("peakTimeMultipliers").forEach(multiplier -> multipliers.add(new PricePlan.PeakTimeMultiplier(
+                DayOfWeek.valueOf(requiredText(multiplier, "dayOfWeek")), requiredDecimal(multiplier, "multiplier"))));
+        return multipliers;
+    }
+
+    private static List<PricePlan.TimeOfUseBand> readTimeOfUseBands(JsonNode plan) {
+        List<PricePlan.TimeOfUseBand> bands = new ArrayList<>();
+        plan.path("timeOfUseBands").forEach(band -> bands.add(new PricePlan.TimeOfUseBand(
+                band.path("dayOfWeek").isTextual() ? DayOfWeek.valueOf(band.get("dayOfWeek").asText()) : null,
+                LocalTime.parse(requiredText(band, "start")), LocalTime.parse(requiredText(band, "end")),
+                requiredDecimal(band, "multiplier"))));
+        return bands;
+    }
+
+    private static String requiredText(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        if (value == null || !value.isTextual()) {
+            throw new IllegalArgumentException("Missing " + field + " in " + node);
+        }
+        return value.asText();
+    }
+
+    private static BigDecimal requiredDecimal(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        if (value == null || !value.isNumber()) {
+            throw new IllegalArgumentException("Missing " + field + " in " + node);
+        }
+        return value.decimalValue();
+    }
+
+    /**
+     * One version of the catalog. Never changes once built.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final Map<Commodity, List<TariffPlan>> plans = new EnumMap<>(Commodity.class);
+        private final Map<Commodity, Map<String, TariffPlan>> plansById = new EnumMap<>(Commodity.class);
+        private final Map<Commodity, int[]> plansByMinimumPrice = new EnumMap<>(Commodity.class);
+        private final Map<Commodity, long[]> unscaledUnitRates = new EnumMap<>(Commodity.class);
+        private final Map<Commodity, int[]> unitRateScales = new EnumMap<>(Commodity.class);
+
+        Snapshot(long version, List<PricePlan> pricePlans, List<GasPricePlan> gasPricePlans) {
+            this.version = version;
+            index(Commodity.ELECTRICITY, pricePlans);
+            index(Commodity.GAS, gasPricePlans);
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * The fuel's plans in the order they were listed.
+         */
+        public List<TariffPlan> plans(Commodity commodity) {
+            return plans.get(commodity);
+        }
+
+        public Optional<TariffPlan> plan(Commodity commodity, String planName) {
+            return Optional.ofNullable(plansById.get(commodity).get(planName));
+        }
+
+        /**
+         * Indexes into {@link #plans} ordered by each plan's lowest price in any slot, cheapest first, so a search for
+         * the cheapest plans can stop at the first plan whose lowest price already rules it out.
+         */
+        int[] plansByMinimumPrice(Commodity commodity) {
+            return plansByMinimumPrice.get(commodity);
+        }
+
+        /**
+         * Each plan's unit rate as an unscaled value and scale, in the order of {@link #plans}, so the flat-rate cost
+         * of a usage on every plan is one long multiplication per plan.
+         */
+        long[] unscaledUnitRates(Commodity commodity) {
+            return unscaledUnitRates.get(commodity);
+        }
+
+        int[] unitRateScales(Commodity commodity) {
+            return unitRateScales.get(commodity);
+        }
+
+        private void index(Commodity commodity, List<? extends TariffPlan> commodityPlans) {
+            Map<String, TariffPlan> byId = new HashMap<>(commodityPlans.size() * 2);
+            for (TariffPlan plan : commodityPlans) {
+                if (byId.put(plan.getPlanName(), plan) != null) {
+                    throw new IllegalArgumentException("Duplicate " + commodity.name().toLowerCase() + " price plan " + plan.getPlanName());
+                }
+            }
+            plans.put(commodity, Collections.unmodifiableList(new ArrayList<>(commodityPlans)));
+            plansById.put(commodity, Collections.unmodifiableMap(byId));
+            BigDecimal[] minimumPrices = commodityPlans.stream()
+                    .map(plan -> BigDecimal.valueOf(plan.tariff().minimumUnscaledPrice(), plan.tariff().minimumPriceScale()))
+                    .toArray(BigDecimal[]::new);
+            plansByMinimumPrice.put(commodity, IntStream.range(0, minimumPrices.length).boxed()
+                    .sorted(Comparator.comparing(plan -> minimumPrices[plan]))
+                    .mapToInt(Integer::intValue)
+                    .toArray());
+            long[] unscaled = new long[commodityPlans.size()];
+            int[] scales = new int[commodityPlans.size()];
+            for (int plan = 0; plan < unscaled.length; plan++) {
+                BigDecimal unitRate = commodityPlans.get(plan).getUnitRate();
+                try {
+                    unscaled[plan] = unitRate.unscaledValue().longValueExact();
+                } catch (ArithmeticException e) {
+                    throw new IllegalArgumentException("Unit rate out of range for price plan " + commodityPlans.get(plan).getPlanName());
+                }
+                scales[plan] = unitRate.scale();
+            }
+            unscaledUnitRates.put(commodity, unscaled);
+            unitRateScales.put(commodity, scales);
+        }
+    }
+}
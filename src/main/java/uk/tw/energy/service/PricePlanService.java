@@ -1,203 +1,333 @@
 package uk.tw.energy.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.Commodity;
 import uk.tw.energy.domain.DayCostElectricity;
-import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.GasPricePlan;
 import uk.tw.energy.domain.PricePlan;
 import uk.tw.energy.domain.PricePlanCost;
+import uk.tw.energy.domain.TariffPlan;
+import uk.tw.energy.domain.TariffTable;
+import uk.tw.energy.exception.BadRequest;
+import uk.tw.energy.store.ReadingRollup;
+import uk.tw.energy.store.TariffCalendar;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.ZoneId;
-import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
 public class PricePlanService {
 
     public static final String YYYY_MM_DD = "yyyy-MM-dd";
-    private final List<PricePlan> pricePlans;
+
+    /**
+     * Time spent in each phase of a query, tagged by {@code operation} and {@code phase}: {@code filter} finds the
+     * requested plan, {@code bucket} gathers the meter's rollups, {@code price} costs them and {@code sort} orders
+     * the results.
+     */
+    public static final String PHASE_TIMER = "price.plans.phase";
+
+    private static final String FILTER = "filter";
+    private static final String BUCKET = "bucket";
+    private static final String PRICE = "price";
+    private static final String SORT = "sort";
+
+    private final PricePlanCatalog catalog;
     private final MeterReadingService meterReadingService;
+    private final Map<Commodity, VersionedCache<Optional<Map<String, BigDecimal>>>> costCaches = new EnumMap<>(Commodity.class);
+    private final MeterRegistry meterRegistry;
+    private final TariffCalendar calendar;
 
     public PricePlanService(List<PricePlan> pricePlans, MeterReadingService meterReadingService) {
-        this.pricePlans = pricePlans;
+        this(pricePlans, Collections.emptyList(), meterReadingService);
+    }
+
+    public PricePlanService(List<PricePlan> pricePlans, List<GasPricePlan> gasPricePlans, MeterReadingService meterReadingService) {
+        this(new PricePlanCatalog(pricePlans, gasPricePlans), meterReadingService);
+    }
+
+    public PricePlanService(List<PricePlan> pricePlans, MeterReadingService meterReadingService,
+                            int cacheMaxSize, long cacheMaxAgeSeconds) {
+        this(new PricePlanCatalog(pricePlans, Collections.emptyList()), meterReadingService, cacheMaxSize, cacheMaxAgeSeconds,
+                new CompositeMeterRegistry());
+    }
+
+    public PricePlanService(PricePlanCatalog catalog, MeterReadingService meterReadingService) {
+        this(catalog, meterReadingService, 10_000, 300, new CompositeMeterRegistry());
+    }
+
+    @Autowired
+    public PricePlanService(PricePlanCatalog catalog, MeterReadingService meterReadingService,
+                            @Value("${price-plans.cache.max-size:10000}") int cacheMaxSize,
+                            @Value("${price-plans.cache.max-age-seconds:300}") long cacheMaxAgeSeconds,
+                            MeterRegistry meterRegistry) {
+        this.catalog = catalog;
         this.meterReadingService = meterReadingService;
+        this.calendar = meterReadingService.getCalendar();
+        for (Commodity commodity : Commodity.values()) {
+            costCaches.put(commodity, new VersionedCache<>(cacheMaxSize, Duration.ofSeconds(cacheMaxAgeSeconds)));
+        }
+        this.meterRegistry = meterRegistry;
+        catalog.onReload(() -> costCaches.values().forEach(VersionedCache::invalidateAll));
     }
 
+    public PricePlanCatalog getCatalog() {
+        return catalog;
+    }
 
+
+    /**
+     * Cost of the meter's readings on every plan, served from cache until the meter's readings change.
+     */
     public Optional<Map<String, BigDecimal>> getConsumptionCostOfElectricityReadingsForEachPricePlan(String smartMeterId) {
-        Optional<List<ElectricityReading>> electricityReadings = meterReadingService.getReadings(smartMeterId);
+        return getConsumptionCostForEachPricePlan(Commodity.ELECTRICITY, smartMeterId);
+    }
+
+    public Optional<Map<String, BigDecimal>> getConsumptionCostOfGasReadingsForEachPricePlan(String smartMeterId) {
+        return getConsumptionCostForEachPricePlan(Commodity.GAS, smartMeterId);
+    }
 
-        return electricityReadings.map(readings -> pricePlans.stream().collect(
-                Collectors.toMap(PricePlan::getPlanName, t -> calculateCost(readings, t))));
+    public Optional<Map<String, BigDecimal>> getConsumptionCostForEachPricePlan(Commodity commodity, String smartMeterId) {
+        long version = meterReadingService.getReadingsVersion(commodity, smartMeterId);
+        return costCaches.get(commodity).get(smartMeterId, version, () -> calculateCostForEachPricePlan(commodity, smartMeterId));
+    }
 
+    public VersionedCache<?> getCostCache() {
+        return getCostCache(Commodity.ELECTRICITY);
     }
 
-    private BigDecimal calculateCost(List<ElectricityReading> electricityReadings, PricePlan pricePlan) {
-        BigDecimal average = calculateAverageReading(electricityReadings);
-        BigDecimal timeElapsed = calculateTimeElapsed(electricityReadings);
+    public VersionedCache<?> getCostCache(Commodity commodity) {
+        return costCaches.get(commodity);
+    }
 
-        BigDecimal averagedCost = average.multiply(timeElapsed).setScale(4,RoundingMode.HALF_UP);
-        return averagedCost.multiply(pricePlan.getUnitRate());
+    /**
+     * As {@link #getConsumptionCostOfElectricityReadingsForEachPricePlan}, bypassing the cache.
+     */
+    Optional<Map<String, BigDecimal>> calculateCostForEachPricePlan(String smartMeterId) {
+        return calculateCostForEachPricePlan(Commodity.ELECTRICITY, smartMeterId);
     }
 
-    private BigDecimal calculateAverageReading(List<ElectricityReading> electricityReadings) {
-        BigDecimal summedReadings = electricityReadings.stream()
-                .map(ElectricityReading::getReading)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    Optional<Map<String, BigDecimal>> calculateCostForEachPricePlan(Commodity commodity, String smartMeterId) {
+        String operation = operation(commodity, "compare-all");
+        Optional<ReadingRollup> readingsSummary = timed(operation, BUCKET, () -> meterReadingService.getReadingsSummary(commodity, smartMeterId));
 
-        return summedReadings.divide(BigDecimal.valueOf(electricityReadings.size()), RoundingMode.HALF_UP);
+        return readingsSummary.map(summary -> timed(operation, PRICE,
+                () -> getCostOnEveryPricePlan(catalog.snapshot(), commodity, calculateAveragedUsage(summary))));
     }
 
-    private BigDecimal calculateTimeElapsed(List<ElectricityReading> electricityReadings) {
-        ElectricityReading first = electricityReadings.stream()
-                .min(Comparator.comparing(ElectricityReading::getTime))
-                .get();
-        ElectricityReading last = electricityReadings.stream()
-                .max(Comparator.comparing(ElectricityReading::getTime))
-                .get();
+    /**
+     * kWh used between the first and last reading at {@link CostEngine#SCALE}, worked out once per meter from the
+     * all-time rollup that every append keeps current, and then priced for every plan.
+     */
+    private static long calculateAveragedUsage(ReadingRollup readingsSummary) {
+        return CostEngine.usageOver(CostEngine.averageReading(readingsSummary),
+                CostEngine.averageScale(readingsSummary), readingsSummary.elapsedSeconds());
+    }
 
-        return BigDecimal.valueOf(Duration.between(first.getTime(), last.getTime()).getSeconds() / 3600.0);
+    /**
+     * Flat-rate cost of {@code usage} on each plan, exactly as {@code usage.multiply(unitRate)} would give it, using
+     * the unit rates the snapshot unpacked when it was loaded.
+     */
+    private static Map<String, BigDecimal> getCostOnEveryPricePlan(PricePlanCatalog.Snapshot snapshot, Commodity commodity, long usage) {
+        List<TariffPlan> pricePlans = snapshot.plans(commodity);
+        long[] unitRates = snapshot.unscaledUnitRates(commodity);
+        int[] unitRateScales = snapshot.unitRateScales(commodity);
+        Map<String, BigDecimal> costs = new HashMap<>(pricePlans.size() * 2);
+        for (int plan = 0; plan < unitRates.length; plan++) {
+            BigDecimal cost;
+            try {
+                cost = BigDecimal.valueOf(Math.multiplyExact(usage, unitRates[plan]), CostEngine.SCALE + unitRateScales[plan]);
+            } catch (ArithmeticException e) {
+                cost = CostEngine.toBigDecimal(usage).multiply(pricePlans.get(plan).getUnitRate());
+            }
+            costs.put(pricePlans.get(plan).getPlanName(), cost);
+        }
+        return Collections.unmodifiableMap(costs);
     }
 
     public Optional<Map<String, BigDecimal>> getConsumptionCostOfElectricityReadingsForLastWeek(String smartMeterId, String pricePlanId) {
+        return getConsumptionCostForLastWeek(Commodity.ELECTRICITY, smartMeterId, pricePlanId);
+    }
 
-        int dayOfWeek = Instant.now().atZone(ZoneId.systemDefault()).getDayOfWeek().getValue();
-        LocalDateTime currenTime = LocalDateTime.of(LocalDate.now(), LocalTime.MIN);
-        Instant todayStart = currenTime.toInstant(ZoneOffset.UTC);
+    public Optional<Map<String, BigDecimal>> getConsumptionCostOfGasReadingsForLastWeek(String smartMeterId, String pricePlanId) {
+        return getConsumptionCostForLastWeek(Commodity.GAS, smartMeterId, pricePlanId);
+    }
+
+    /**
+     * Usage for each day of last week keyed by date, plus the week's cost on {@code pricePlanId} keyed by meter id.
+     */
+    public Optional<Map<String, BigDecimal>> getConsumptionCostForLastWeek(Commodity commodity, String smartMeterId, String pricePlanId) {
+        String operation = operation(commodity, "last-week");
+        TariffCalendar.Window lastWeek = calendar.week(Instant.now()).previous();
 
-        List<ElectricityReading> weekElectricityReading = meterReadingService.getReadings(smartMeterId).get().stream().filter(electricityReading -> electricityReading
-                .getTime().isBefore(todayStart.minusMillis(TimeUnit.DAYS.toMillis(dayOfWeek-1)))&&
-                electricityReading.getTime().isAfter(todayStart.minusMillis(TimeUnit.DAYS.toMillis(dayOfWeek+6)))
-                ).collect(Collectors.toList());
+        Map<String, ReadingRollup> dayOfWeekRollups = timed(operation, BUCKET, () -> meterReadingService.getDayOfWeekRollups(commodity, smartMeterId,
+                lastWeek.from(), lastWeek.to()).get());
 
-        PricePlan pricePlan = pricePlans.stream().filter(pricePlan1 -> pricePlan1.getPlanName().equals(pricePlanId)).collect(Collectors.toList()).get(0);
-        Map<String,List<ElectricityReading>> electricityReadingMap =getElectricityReadingMap(weekElectricityReading);
-        Map<String,BigDecimal> dayOfWeekCostMap = getDayOfWeekCostMap(electricityReadingMap,pricePlan);
+        TariffPlan pricePlan = timed(operation, FILTER, () -> findPlan(catalog.snapshot(), commodity, pricePlanId));
+        Map<String,BigDecimal> dayOfWeekCostMap = timed(operation, PRICE, () -> getDayOfWeekCostMap(dayOfWeekRollups,pricePlan));
         Map<String,BigDecimal> weekElectricityReadingMap = new HashMap<>();
         final BigDecimal[] sumCostOfWeek = {BigDecimal.valueOf(0)};
         dayOfWeekCostMap.forEach((s, electricityReading) -> {
             sumCostOfWeek[0] = sumCostOfWeek[0].add(electricityReading);
 
         });
-        electricityReadingMap.forEach((s, electricityReadings) -> {
-           BigDecimal sumUsage = electricityReadings.stream().map(ElectricityReading::getReading).reduce(BigDecimal.ZERO,BigDecimal::add);
-           String  date = getFormatTime(electricityReadings.get(0).getTime());
-           weekElectricityReadingMap.put(date,sumUsage);
-        });
+        dayOfWeekRollups.forEach((s, rollup) -> weekElectricityReadingMap.put(getFormatTime(rollup.firstTime()), rollup.sumAsBigDecimal()));
         weekElectricityReadingMap.put(smartMeterId,sumCostOfWeek[0]);
-        LinkedHashMap<String,BigDecimal> linkedHashMap = weekElectricityReadingMap.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey()).collect(Collectors.toMap(Map.Entry::getKey,Map.Entry::getValue,(e1,e2)->e1, LinkedHashMap::new));
+        LinkedHashMap<String,BigDecimal> linkedHashMap = timed(operation, SORT, () -> weekElectricityReadingMap.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey()).collect(Collectors.toMap(Map.Entry::getKey,Map.Entry::getValue,(e1,e2)->e1, LinkedHashMap::new)));
         return Optional.of(linkedHashMap);
     }
 
 
 
     public Map<String, BigDecimal> getDayCostElectricityUsage(String smartMeterId, DayCostElectricity dayCostElectricity) {
-        LocalDateTime currenTime = LocalDateTime.of(LocalDate.now(), LocalTime.MIN);
-        Instant todayStart = currenTime.toInstant(ZoneOffset.UTC);
-        List<ElectricityReading> electricityReadingList = meterReadingService.getReadings(smartMeterId).get().stream()
-                .filter(electricityReading -> electricityReading.getTime().isAfter(todayStart)&&
-                        electricityReading.getTime().isBefore(Instant.now())).collect(Collectors.toList());
+        Instant now = Instant.now();
+        ReadingRollup todayRollup = timed("day-cost", BUCKET, () -> meterReadingService.getReadingsRollup(smartMeterId, calendar.day(now).from(), now).get());
         Map<String,BigDecimal> map = new HashMap<>();
-        PricePlan pricePlan = pricePlans.stream().filter(pricePlan1 -> pricePlan1.getPlanName().equals(dayCostElectricity.getPricePlanId())).findFirst().get();
-        BigDecimal sum = electricityReadingList.stream().map(ElectricityReading::getReading).reduce(BigDecimal.ZERO, BigDecimal::add);
-        BigDecimal averageUsage = sum.divide(BigDecimal.valueOf(electricityReadingList.size()),RoundingMode.HALF_UP);
-        BigDecimal costOfDayUsage = averageUsage.multiply(BigDecimal.valueOf(24))
-                .multiply(pricePlan.getPrice(dayCostElectricity.getElectricityReading().getTime().atZone(ZoneId.systemDefault()).toLocalDateTime()))
-                .setScale(4,RoundingMode.HALF_UP);
-        map.put(smartMeterId,costOfDayUsage);
+        TariffPlan pricePlan = timed("day-cost", FILTER, () -> findPlan(catalog.snapshot(), Commodity.ELECTRICITY, dayCostElectricity.getPricePlanId()));
+        long costOfDayUsage = timed("day-cost", PRICE, () -> CostEngine.dayCost(CostEngine.averageReading(todayRollup), CostEngine.averageScale(todayRollup),
+                pricePlan.tariff().price(tariffSlot(dayCostElectricity.getElectricityReading().getTime()))));
+        map.put(smartMeterId,CostEngine.toBigDecimal(costOfDayUsage));
         return map;
     }
 
 
     public Map<String, BigDecimal> getCostForDayOfWeekRank(String smartMeterId, DayCostElectricity dayCostElectricity) {
-        List<ElectricityReading> electricityReadingList = getElectricityReadings(smartMeterId,dayCostElectricity);
+        Map<String, ReadingRollup> dayOfWeekRollups = timed("cost-rank", BUCKET, () -> getWeekRollups(smartMeterId,dayCostElectricity));
 
-        Map<String, List<ElectricityReading>> stringListHashMap = getElectricityReadingMap(electricityReadingList);
-
-        PricePlan pricePlan = pricePlans.stream().filter(pricePlan1 -> pricePlan1.getPlanName().equals(dayCostElectricity.getPricePlanId())).findFirst().get();
-        Map<String, BigDecimal> map = getDayOfWeekCostMap(stringListHashMap, pricePlan);
-        return map.entrySet().stream().sorted(Map.Entry.comparingByValue())
-                .collect(Collectors.toMap(Map.Entry::getKey,Map.Entry::getValue,(e1,e2)->e1, LinkedHashMap::new));
+        TariffPlan pricePlan = timed("cost-rank", FILTER, () -> findPlan(catalog.snapshot(), Commodity.ELECTRICITY, dayCostElectricity.getPricePlanId()));
+        Map<String, BigDecimal> map = timed("cost-rank", PRICE, () -> getDayOfWeekCostMap(dayOfWeekRollups, pricePlan));
+        return timed("cost-rank", SORT, () -> map.entrySet().stream().sorted(Map.Entry.comparingByValue())
+                .collect(Collectors.toMap(Map.Entry::getKey,Map.Entry::getValue,(e1,e2)->e1, LinkedHashMap::new)));
         }
 
 
+    /**
+     * The {@code limit} cheapest plans for each day of the reading's week, or every plan when {@code limit} is null.
+     * Plans are tried in order of their lowest price, and a day stops once even that price cannot beat the dearest
+     * plan kept so far.
+     */
     public Map<String, List<PricePlanCost>> getPricePlanRank(String smartMeterId, DayCostElectricity dayCostElectricity, Integer limit) {
-         List<ElectricityReading> electricityReadingList = getElectricityReadings(smartMeterId, dayCostElectricity);
-         Map<String,List<ElectricityReading>> electricityReadingMap = getElectricityReadingMap(electricityReadingList);
-         Map<String, List<PricePlanCost>> map = new HashMap<>();
-         electricityReadingMap.forEach(((s, electricityReadings) -> {
-             List<PricePlanCost> pricePlanCosts = new ArrayList<>();
-             pricePlans.forEach(pricePlan -> {
-                    BigDecimal sumUsage = electricityReadings.stream().map(ElectricityReading::getReading).reduce(BigDecimal.ZERO, BigDecimal::add);
-                    BigDecimal averageUsage = sumUsage.divide(BigDecimal.valueOf(electricityReadings.size()),RoundingMode.HALF_UP);
-                    BigDecimal day0fWeekUsage = averageUsage.multiply(BigDecimal.valueOf(24)).setScale(4,RoundingMode.HALF_UP);
-                    BigDecimal dayOfWeekCost = day0fWeekUsage.multiply(pricePlan.getPrice(electricityReadings.get(0).getTime().atZone(ZoneId.systemDefault()).toLocalDateTime())).setScale(4,RoundingMode.HALF_UP);
-                    PricePlanCost pricePlanCost = new PricePlanCost(pricePlan.getPlanName(),dayOfWeekCost);
-                    pricePlanCosts.add(pricePlanCost);
-                });
-             List<PricePlanCost> pricePlanCostList = pricePlanCosts.stream().sorted(Comparator.comparing(PricePlanCost::getUsage)).limit(limit).collect(Collectors.toList());
-             map.put(s,pricePlanCostList);
-             }));
-         return map;
-    }
-
-
-    private List<ElectricityReading> getElectricityReadings(String smartMeterId, DayCostElectricity dayCostElectricity) {
-        int dayOfWeek = dayCostElectricity.getElectricityReading().getTime().atZone(ZoneId.systemDefault()).getDayOfWeek().getValue();
-        Instant instant = LocalDateTime.of(dayCostElectricity.getElectricityReading().getTime().atZone(ZoneId.systemDefault()).toLocalDate(),LocalTime.MIN).toInstant(ZoneOffset.UTC);
-        return meterReadingService.getReadings(smartMeterId).get().stream()
-                .filter(electricityReading -> electricityReading.getTime().isAfter(instant.minusMillis(TimeUnit.DAYS.toMillis(dayOfWeek-1)))
-                        &&electricityReading.getTime().isBefore(instant.plusMillis(TimeUnit.DAYS.toMillis(8-dayOfWeek)))
-                ).collect(Collectors.toList());
-    }
-
-    private Map<String, List<ElectricityReading>> getElectricityReadingMap(List<ElectricityReading> electricityReadingList) {
-        Map<String,List<ElectricityReading>> stringListHashMap = new HashMap<>();
-
-        electricityReadingList.forEach(electricityReading ->{
-            if(stringListHashMap.containsKey(electricityReading.getTime().minusMillis(TimeUnit.HOURS.toMillis(8)).atZone(ZoneId.systemDefault()).getDayOfWeek().toString())){
-                List<ElectricityReading> list1 = stringListHashMap.get(electricityReading.getTime().minusMillis(TimeUnit.HOURS.toMillis(8)).atZone(ZoneId.systemDefault()).getDayOfWeek().toString());
-                list1.add(electricityReading);
-                stringListHashMap.put(electricityReading.getTime().minusMillis(TimeUnit.HOURS.toMillis(8)).atZone(ZoneId.systemDefault()).getDayOfWeek().toString(),list1 );
-            }else {
-                List<ElectricityReading> list = new ArrayList<>();
-                list.add(electricityReading);
-                stringListHashMap.put(electricityReading.getTime().minusMillis(TimeUnit.HOURS.toMillis(8)).atZone(ZoneId.systemDefault()).getDayOfWeek().toString(),list);
-            }});
-        return stringListHashMap;
-    }
-
-    private Map<String, BigDecimal> getDayOfWeekCostMap(Map<String, List<ElectricityReading>> stringListHashMap, PricePlan pricePlan) {
+         PricePlanCatalog.Snapshot snapshot = catalog.snapshot();
+         List<TariffPlan> pricePlans = snapshot.plans(Commodity.ELECTRICITY);
+         int[] byMinimumPrice = snapshot.plansByMinimumPrice(Commodity.ELECTRICITY);
+         int k = limit == null ? pricePlans.size() : Math.max(0, Math.min(limit, pricePlans.size()));
+         Map<String, ReadingRollup> dayOfWeekRollups = timed("rank", BUCKET, () -> getWeekRollups(smartMeterId, dayCostElectricity));
+         Map<String, CheapestPlans> cheapestByDay = timed("rank", PRICE, () -> {
+             Map<String, CheapestPlans> cheapest = new HashMap<>();
+             dayOfWeekRollups.forEach((s, rollup) -> {
+                 long dayUsage = getDayOfWeekUsage(rollup);
+                 int slot = getTariffSlot(rollup);
+                 CheapestPlans dayCheapest = new CheapestPlans(k);
+                 for (int i = 0; i < byMinimumPrice.length && k > 0; i++) {
+                     TariffPlan pricePlan = pricePlans.get(byMinimumPrice[i]);
+                     if (dayCheapest.isFull() && dayUsage >= 0 && getMinimumDayOfWeekCost(dayUsage, pricePlan) > dayCheapest.worstCost()) {
+                         break;
+                     }
+                     dayCheapest.offer(byMinimumPrice[i], getDayOfWeekCost(dayUsage, slot, pricePlan));
+                 }
+                 cheapest.put(s, dayCheapest);
+             });
+             return cheapest;
+         });
+         return timed("rank", SORT, () -> {
+             Map<String, List<PricePlanCost>> map = new HashMap<>();
+             cheapestByDay.forEach((s, cheapest) -> {
+                 cheapest.sort();
+                 List<PricePlanCost> ranked = new ArrayList<>(cheapest.size());
+                 for (int rank = 0; rank < cheapest.size(); rank++) {
+                     ranked.add(new PricePlanCost(pricePlans.get(cheapest.plan(rank)).getPlanName(), CostEngine.toBigDecimal(cheapest.cost(rank))));
+                 }
+                 map.put(s, ranked);
+             });
+             return map;
+         });
+    }
+
+    /**
+     * The {@code limit} cheapest plans for the meter's readings, or all of them when {@code limit} is null, cheapest
+     * first; empty if the meter has no readings.
+     */
+    public Optional<List<Map.Entry<String, BigDecimal>>> recommendCheapestPricePlans(Commodity commodity, String smartMeterId, Integer limit) {
+        return getConsumptionCostForEachPricePlan(commodity, smartMeterId).map(costs -> timed(operation(commodity, "recommend"), SORT,
+                () -> CheapestPlans.cheapest(costs.entrySet(), limit == null ? costs.size() : limit,
+                        Map.Entry.<String, BigDecimal>comparingByValue().thenComparing(Map.Entry.comparingByKey()))));
+    }
+
+
+    private Map<String, ReadingRollup> getWeekRollups(String smartMeterId, DayCostElectricity dayCostElectricity) {
+        TariffCalendar.Window week = calendar.week(dayCostElectricity.getElectricityReading().getTime());
+        return meterReadingService.getDayOfWeekRollups(smartMeterId, week.from(), week.to()).get();
+    }
+
+    private Map<String, BigDecimal> getDayOfWeekCostMap(Map<String, ReadingRollup> dayOfWeekRollups, TariffPlan pricePlan) {
         Map<String,BigDecimal> map = new HashMap<>();
-        stringListHashMap.forEach((s, electricityReadings) -> {
-            BigDecimal sumUsage = electricityReadings.stream().map(ElectricityReading::getReading).reduce(BigDecimal.ZERO, BigDecimal::add);
-            BigDecimal averageUsage = sumUsage.divide(BigDecimal.valueOf(electricityReadings.size()),RoundingMode.HALF_UP);
-            BigDecimal day0fWeekUsage = averageUsage.multiply(BigDecimal.valueOf(24)).setScale(4,RoundingMode.HALF_UP);
-            BigDecimal dayOfWeekCost = day0fWeekUsage.multiply(pricePlan.getPrice(electricityReadings.get(0).getTime().atZone(ZoneId.systemDefault()).toLocalDateTime())).setScale(4,RoundingMode.HALF_UP);
-            map.put(s,dayOfWeekCost);
-        });
+        dayOfWeekRollups.forEach((s, rollup) -> map.put(s, CostEngine.toBigDecimal(getDayOfWeekCost(getDayOfWeekUsage(rollup), getTariffSlot(rollup), pricePlan))));
         return map;
     }
 
+    private long getDayOfWeekUsage(ReadingRollup rollup) {
+        return CostEngine.dayUsage(CostEngine.averageReading(rollup), CostEngine.averageScale(rollup));
+    }
+
+    private int getTariffSlot(ReadingRollup rollup) {
+        return tariffSlot(rollup.firstTime());
+    }
+
+    private int tariffSlot(Instant time) {
+        return TariffTable.slotOfMinuteOfWeek(calendar.minuteOfWeek(time.getEpochSecond()));
+    }
+
+    private long getDayOfWeekCost(long dayOfWeekUsage, int slot, TariffPlan pricePlan) {
+        TariffTable tariff = pricePlan.tariff();
+        return CostEngine.cost(dayOfWeekUsage, CostEngine.SCALE, tariff.unscaledPrice(slot), tariff.priceScale(slot));
+    }
+
+    /**
+     * @throws BadRequest if the catalog has no such plan
+     */
+    private static TariffPlan findPlan(PricePlanCatalog.Snapshot snapshot, Commodity commodity, String pricePlanId) {
+        return snapshot.plan(commodity, pricePlanId).orElseThrow(() -> new BadRequest("PricePlanId Not Found"));
+    }
+
+    /**
+     * Gas queries are timed apart from their electricity counterparts, as {@code gas-compare-all} and so on.
+     */
+    private static String operation(Commodity commodity, String operation) {
+        return commodity == Commodity.GAS ? "gas-" + operation : operation;
+    }
+
+    /**
+     * A lower bound on {@link #getDayOfWeekCost} in any slot, as long as the usage is not negative.
+     */
+    private long getMinimumDayOfWeekCost(long dayOfWeekUsage, TariffPlan pricePlan) {
+        TariffTable tariff = pricePlan.tariff();
+        return CostEngine.cost(dayOfWeekUsage, CostEngine.SCALE, tariff.minimumUnscaledPrice(), tariff.minimumPriceScale());
+    }
+
+    private <T> T timed(String operation, String phase, Supplier<T> work) {
+        return meterRegistry.timer(PHASE_TIMER, "operation", operation, "phase", phase).record(work);
+    }
+
     private String getFormatTime(Instant instant){
-        ZonedDateTime instant1 = instant.atZone(ZoneId.systemDefault());
+        ZonedDateTime instant1 = instant.atZone(calendar.getZone());
         return DateTimeFormatter.ofPattern(YYYY_MM_DD).format(instant1);
     }
 
@@ -0,0 +1,49 @@
+package uk.tw.energy.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link MeterReadingService#compact} on a background thread at a fixed interval, so readings past the
+ * configured retention are folded into their rollups without holding up ingestion or queries. A run that fails is
+ * logged and the next one goes ahead as scheduled.
+ */
+public class ReadingCompactor implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadingCompactor.class);
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "reading-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReadingCompactor(MeterReadingService meterReadingService, Duration interval) {
+        long intervalMillis = interval.toMillis();
+        executor.scheduleWithFixedDelay(() -> compact(meterReadingService),
+                intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A task that throws is never run again by the executor, so a failure must not escape.
+     */
+    private static void compact(MeterReadingService meterReadingService) {
+        try {
+            meterReadingService.compact(Instant.now());
+        } catch (RuntimeException e) {
+            log.error("Reading compaction failed, retrying at the next interval", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,321 @@
+package uk.tw.energy.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.Commodity;
+import uk.tw.energy.exception.BadRequest;
+import uk.tw.energy.store.ReadingBatch;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Takes validated uploads off the request thread. With {@code readings.ingest.async} on, each upload goes into one of
+ * {@code readings.ingest.writers} bounded queues, picked by meter id so a meter's uploads stay in order, and a writer
+ * thread per queue drains up to {@code readings.ingest.max-drain} uploads at a time into the store, coalescing the
+ * uploads of each meter into a single append. A full queue turns the upload away rather than letting the backlog,
+ * and the memory it holds, grow without bound; callers answer with 503 and {@link #getRetryAfterSeconds}.
+ * <p>
+ * With it off, the default, uploads are stored on the caller's thread as before. Either way the pipeline publishes
+ * {@code readings.ingest.queue.depth}, the readings per write as {@code readings.ingest.batch.size}, and the time from
+ * submission until readings are queryable as {@code readings.ingest.lag}.
+ * <p>
+ * An accepted async upload (a 202) is queued, not yet durable: if writing it to the store then fails, or it is still
+ * queued when {@link #close} gives up waiting, it is dropped, logged with its meter id and counted in
+ * {@code readings.ingest.failed}.
+ */
+@Service
+public class ReadingIngestPipeline implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadingIngestPipeline.class);
+
+    private static final long POLL_MILLIS = 100;
+    private static final long SHUTDOWN_SECONDS = 10;
+
+    private final MeterReadingService meterReadingService;
+    private final boolean async;
+    private final int maxDrain;
+    private final long retryAfterSeconds;
+    private final List<BlockingQueue<Upload>> queues = new ArrayList<>();
+    private final ExecutorService writers;
+    private final AtomicLong inFlight = new AtomicLong();
+    private final ReadWriteLock submitLock = new ReentrantReadWriteLock();
+    private volatile boolean running = true;
+
+    private final DistributionSummary batchSize;
+    private final Timer lag;
+    private final Counter rejected;
+    private final Counter failed;
+
+    public ReadingIngestPipeline(MeterReadingService meterReadingService) {
+        this(meterReadingService, false, 1, 1, 1, 1, new CompositeMeterRegistry());
+    }
+
+    @Autowired
+    public ReadingIngestPipeline(MeterReadingService meterReadingService,
+                                 @Value("${readings.ingest.async:false}") boolean async,
+                                 @Value("${readings.ingest.queue-capacity:4096}") int queueCapacity,
+                                 @Value("${readings.ingest.writers:2}") int writerCount,
+                                 @Value("${readings.ingest.max-drain:256}") int maxDrain,
+                                 @Value("${readings.ingest.retry-after-seconds:1}") long retryAfterSeconds,
+                                 MeterRegistry meterRegistry) {
+        this.meterReadingService = meterReadingService;
+        this.async = async;
+        this.maxDrain = Math.max(1, maxDrain);
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        Gauge.builder("readings.ingest.queue.depth", this, ReadingIngestPipeline::queueDepth)
+                .description("Uploads accepted but not yet written to the store")
+                .register(meterRegistry);
+        batchSize = DistributionSummary.builder("readings.ingest.batch.size")
+                .description("Readings written to the store per drain of an ingest queue")
+                .baseUnit("readings")
+                .register(meterRegistry);
+        lag = Timer.builder("readings.ingest.lag")
+                .description("Time from an upload being accepted until its readings can be queried")
+                .register(meterRegistry);
+        rejected = Counter.builder("readings.ingest.rejected")
+                .description("Uploads turned away because their ingest queue was full")
+                .register(meterRegistry);
+        failed = Counter.builder("readings.ingest.failed")
+                .description("Uploads accepted but lost to an error while writing them to the store")
+                .register(meterRegistry);
+
+        if (!async) {
+            writers = null;
+            return;
+        }
+        int writerThreads = Math.max(1, writerCount);
+        int perQueue = Math.max(1, queueCapacity / writerThreads);
+        AtomicInteger threadNumber = new AtomicInteger();
+        writers = Executors.newFixedThreadPool(writerThreads, task -> {
+            Thread thread = new Thread(task, "reading-ingest-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < writerThreads; i++) {
+            BlockingQueue<Upload> queue = new ArrayBlockingQueue<>(perQueue);
+            queues.add(queue);
+            writers.execute(() -> drain(queue));
+        }
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Stores {@code batch}, or with async ingest queues it to be stored. Returns false, storing nothing, if the
+     * meter's queue is full or the pipeline has been closed. The batch must not be touched afterwards.
+     *
+     * @throws BadRequest if the meter id is too long to store, checked here so that it is never accepted with a 202
+     */
+    public boolean submit(Commodity commodity, String smartMeterId, ReadingBatch batch) {
+        MeterReadingService.checkSmartMeterId(smartMeterId);
+        long submittedNanos = System.nanoTime();
+        if (!async) {
+            store(commodity, smartMeterId, batch);
+            lag.record(System.nanoTime() - submittedNanos, TimeUnit.NANOSECONDS);
+            batchSize.record(batch.size());
+            return true;
+        }
+        Upload upload = new Upload(commodity, smartMeterId, batch, submittedNanos);
+        boolean queued;
+        submitLock.readLock().lock();
+        try {
+            inFlight.incrementAndGet();
+            queued = running && queues.get(Math.floorMod(smartMeterId.hashCode(), queues.size())).offer(upload);
+        } finally {
+            submitLock.readLock().unlock();
+        }
+        if (!queued) {
+            inFlight.decrementAndGet();
+            rejected.increment();
+        }
+        return queued;
+    }
+
+    /**
+     * Uploads accepted but not yet written to the store.
+     */
+    public long queueDepth() {
+        return inFlight.get();
+    }
+
+    /**
+     * Blocks until every accepted upload has been written.
+     */
+    void awaitIdle() throws InterruptedException {
+        while (inFlight.get() > 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Stops accepting uploads and waits for the writers to store those already queued. No upload can be mid-submit
+     * once accepting has stopped, so the writers see every accepted upload before they find their queues empty; any
+     * still queued when the wait runs out are dropped as failed.
+     */
+    @Override
+    public void close() {
+        submitLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            submitLock.writeLock().unlock();
+        }
+        if (writers == null) {
+            return;
+        }
+        writers.shutdown();
+        try {
+            if (!writers.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                writers.shutdownNow();
+                writers.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            writers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        List<Upload> abandoned = new ArrayList<>();
+        queues.forEach(queue -> queue.drainTo(abandoned));
+        if (!abandoned.isEmpty()) {
+            inFlight.addAndGet(-abandoned.size());
+            failed.increment(abandoned.size());
+            log.error("Dropped {} accepted uploads still queued at shutdown", abandoned.size());
+        }
+    }
+
+    private void drain(BlockingQueue<Upload> queue) {
+        List<Upload> drained = new ArrayList<>(maxDrain);
+        while (running || !queue.isEmpty()) {
+            try {
+                Upload first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                drained.add(first);
+                queue.drainTo(drained, maxDrain - 1);
+                writeAll(drained);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable e) {
+                // the writer must outlive anything a drain throws, or its queue would never be emptied again
+                failed.increment(drained.size());
+                log.error("Dropped {} accepted uploads after an unexpected failure draining them", drained.size(), e);
+            } finally {
+                inFlight.addAndGet(-drained.size());
+                drained.clear();
+            }
+        }
+    }
+
+    private void writeAll(List<Upload> drained) {
+        Map<Commodity, Map<String, List<Upload>>> byMeter = new EnumMap<>(Commodity.class);
+        for (Upload upload : drained) {
+            byMeter.computeIfAbsent(upload.commodity, commodity -> new LinkedHashMap<>())
+                    .computeIfAbsent(upload.smartMeterId, id -> new ArrayList<>())
+                    .add(upload);
+        }
+        long readings = 0;
+        for (Map.Entry<Commodity, Map<String, List<Upload>>> commodity : byMeter.entrySet()) {
+            for (Map.Entry<String, List<Upload>> meter : commodity.getValue().entrySet()) {
+                List<Upload> uploads = meter.getValue();
+                ReadingBatch batch = uploads.get(0).batch;
+                if (uploads.size() > 1) {
+                    batch = new ReadingBatch(uploads.stream().mapToInt(upload -> upload.batch.size()).sum());
+                    for (Upload upload : uploads) {
+                        batch.addAll(upload.batch);
+                    }
+                }
+                if (tryStore(commodity.getKey(), meter.getKey(), batch, uploads.size() == 1)) {
+                    readings += batch.size();
+                    recordLag(uploads);
+                    continue;
+                }
+                for (Upload upload : uploads) {
+                    if (tryStore(upload.commodity, upload.smartMeterId, upload.batch, true)) {
+                        readings += upload.batch.size();
+                        recordLag(Collections.singletonList(upload));
+                    }
+                }
+            }
+        }
+        batchSize.record(readings);
+    }
+
+    /**
+     * Stores {@code batch}, returning false if that fails. A failed coalesced batch is not logged or counted here:
+     * its uploads are retried one by one, so that a single bad upload only loses itself.
+     */
+    private boolean tryStore(Commodity commodity, String smartMeterId, ReadingBatch batch, boolean single) {
+        try {
+            store(commodity, smartMeterId, batch);
+            return true;
+        } catch (Throwable e) {
+            if (single) {
+                failed.increment();
+                log.error("Dropped an accepted {} upload of {} readings for meter {}",
+                        commodity.name().toLowerCase(), batch.size(), smartMeterId, e);
+            }
+            return false;
+        }
+    }
+
+    private void recordLag(List<Upload> uploads) {
+        long now = System.nanoTime();
+        for (Upload upload : uploads) {
+            lag.record(now - upload.submittedNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void store(Commodity commodity, String smartMeterId, ReadingBatch batch) {
+        if (commodity == Commodity.GAS) {
+            meterReadingService.storeGasReadings(smartMeterId, batch);
+        } else {
+            meterReadingService.storeReadings(smartMeterId, batch);
+        }
+    }
+
+    private static final class Upload {
+        private final Commodity commodity;
+        private final String smartMeterId;
+        private final ReadingBatch batch;
+        private final long submittedNanos;
+
+        private Upload(Commodity commodity, String smartMeterId, ReadingBatch batch, long submittedNanos) {
+            this.commodity = commodity;
+            this.smartMeterId = smartMeterId;
+            this.batch = batch;
+            this.submittedNanos = submittedNanos;
+        }
+    }
+}
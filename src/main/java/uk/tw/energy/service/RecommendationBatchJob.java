@@ -0,0 +1,241 @@
+package uk.tw.energy.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.Commodity;
+import uk.tw.energy.domain.MeterRecommendation;
+import uk.tw.energy.domain.PricePlanCost;
+import uk.tw.energy.domain.RecommendationJobStatus;
+import uk.tw.energy.domain.RecommendationReportPage;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Works out the cheapest plans for every meter with electricity or gas readings, against the plans of that commodity,
+ * and how much each account would save by moving from its current plan to the cheapest one. The meters, electricity
+ * then gas and each in id order, are split in halves on a fork-join pool until a range is small enough to work
+ * through on one thread; each meter's result goes into its own slot, so workers never contend.
+ * <p>
+ * One run at a time. The report is served from the last completed run, so its pages stay consistent while the next
+ * run is in progress. A run that fails is logged and reported as {@code FAILED} with its error in the status.
+ */
+@Service
+public class RecommendationBatchJob implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RecommendationBatchJob.class);
+
+    static final int LEAF_SIZE = 64;
+
+    private static final Comparator<Map.Entry<String, BigDecimal>> CHEAPEST_FIRST =
+            Map.Entry.<String, BigDecimal>comparingByValue().thenComparing(Map.Entry.comparingByKey());
+
+    private final PricePlanService pricePlanService;
+    private final AccountService accountService;
+    private final MeterReadingService meterReadingService;
+    private final int rankLimit;
+    private final ForkJoinPool pool;
+    private final ExecutorService launcher = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "recommendation-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Run current;
+    private volatile Run lastCompleted;
+
+    public RecommendationBatchJob(PricePlanService pricePlanService, AccountService accountService,
+                                  MeterReadingService meterReadingService,
+                                  @Value("${recommendations.batch.rank-limit:3}") int rankLimit,
+                                  @Value("${recommendations.batch.parallelism:0}") int parallelism) {
+        this.pricePlanService = pricePlanService;
+        this.accountService = accountService;
+        this.meterReadingService = meterReadingService;
+        this.rankLimit = rankLimit;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Starts a run over the meters present now. Returns false, without starting anything, if a run is in progress.
+     */
+    public synchronized boolean start() {
+        if (current != null && current.state == RecommendationJobStatus.State.RUNNING) {
+            return false;
+        }
+        List<Commodity> commodities = new ArrayList<>();
+        List<String> meterIds = new ArrayList<>();
+        for (Commodity commodity : Commodity.values()) {
+            String[] ids = meterReadingService.getStore(commodity).meterIds().toArray(new String[0]);
+            Arrays.sort(ids);
+            commodities.addAll(Collections.nCopies(ids.length, commodity));
+            meterIds.addAll(Arrays.asList(ids));
+        }
+        Run run = new Run(commodities.toArray(new Commodity[0]), meterIds.toArray(new String[0]));
+        current = run;
+        run.future = launcher.submit(() -> execute(run));
+        return true;
+    }
+
+    public RecommendationJobStatus getStatus() {
+        Run run = current;
+        if (run == null) {
+            return RecommendationJobStatus.builder().state(RecommendationJobStatus.State.IDLE).build();
+        }
+        long processed = run.processed.sum();
+        Instant end = run.finishedAt == null ? Instant.now() : run.finishedAt;
+        long elapsedMillis = Math.max(1, Duration.between(run.startedAt, end).toMillis());
+        return RecommendationJobStatus.builder()
+                .state(run.state)
+                .totalMeters(run.meterIds.length)
+                .processedMeters(processed)
+                .startedAt(run.startedAt)
+                .finishedAt(run.finishedAt)
+                .metersPerSecond(processed * 1000.0 / elapsedMillis)
+                .error(run.error)
+                .build();
+    }
+
+    /**
+     * A page of the last completed run's recommendations, electricity then gas meters in id order, or empty if no run
+     * has completed. Meters with no plans to price are left out, so every page but the last is full and the total
+     * counts recommendations, not meters.
+     */
+    public Optional<RecommendationReportPage> getReport(int page, int size) {
+        Run run = lastCompleted;
+        if (run == null) {
+            return Optional.empty();
+        }
+        int from = (int) Math.min((long) page * size, run.report.length);
+        int to = Math.min(from + size, run.report.length);
+        return Optional.of(new RecommendationReportPage(run.finishedAt, page, size, run.report.length,
+                Arrays.asList(Arrays.copyOfRange(run.report, from, to))));
+    }
+
+    /**
+     * Blocks until the current run, if any, has finished.
+     */
+    void awaitCurrentRun() throws InterruptedException, ExecutionException {
+        Run run = current;
+        if (run != null) {
+            run.future.get();
+        }
+    }
+
+    @Override
+    public void close() {
+        launcher.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    private void execute(Run run) {
+        try {
+            pool.invoke(new MeterRange(run, 0, run.meterIds.length));
+            run.report = Arrays.stream(run.results).filter(Objects::nonNull).toArray(MeterRecommendation[]::new);
+            run.finishedAt = Instant.now();
+            run.state = RecommendationJobStatus.State.COMPLETED;
+            lastCompleted = run;
+        } catch (Throwable e) {
+            // an Error too, or the run would stay RUNNING and no other could start
+            log.error("Recommendation run started at {} failed after {} of {} meters", run.startedAt,
+                    run.processed.sum(), run.meterIds.length, e);
+            run.error = String.valueOf(e);
+            run.finishedAt = Instant.now();
+            run.state = RecommendationJobStatus.State.FAILED;
+        }
+    }
+
+    private MeterRecommendation recommend(Commodity commodity, String smartMeterId) {
+        Optional<Map<String, BigDecimal>> costs = pricePlanService.calculateCostForEachPricePlan(commodity, smartMeterId);
+        if (!costs.isPresent() || costs.get().isEmpty()) {
+            return null;
+        }
+        List<PricePlanCost> cheapest = CheapestPlans.cheapest(costs.get().entrySet(), rankLimit, CHEAPEST_FIRST).stream()
+                .map(cost -> new PricePlanCost(cost.getKey(), cost.getValue()))
+                .collect(Collectors.toList());
+        if (cheapest.isEmpty()) {
+            return null;
+        }
+        String currentPricePlanId = commodity == Commodity.GAS
+                ? accountService.getGasPricePlanIdForSmartMeterId(smartMeterId)
+                : accountService.getPricePlanIdForSmartMeterId(smartMeterId);
+        BigDecimal currentCost = currentPricePlanId == null ? null : costs.get().get(currentPricePlanId);
+        BigDecimal potentialSaving = currentCost == null ? null : currentCost.subtract(cheapest.get(0).getUsage());
+        return MeterRecommendation.builder()
+                .commodity(commodity)
+                .smartMeterId(smartMeterId)
+                .currentPricePlanId(currentPricePlanId)
+                .currentCost(currentCost)
+                .cheapestPricePlans(cheapest)
+                .potentialSaving(potentialSaving)
+                .build();
+    }
+
+    private static final class Run {
+        private final Commodity[] commodities;
+        private final String[] meterIds;
+        private final MeterRecommendation[] results;
+        /**
+         * The meters that got a recommendation, in {@link #results} order; set once the run completes.
+         */
+        private MeterRecommendation[] report;
+        private final LongAdder processed = new LongAdder();
+        private final Instant startedAt = Instant.now();
+        private volatile Instant finishedAt;
+        private volatile RecommendationJobStatus.State state = RecommendationJobStatus.State.RUNNING;
+        private volatile String error;
+        private volatile Future<?> future;
+
+        private Run(Commodity[] commodities, String[] meterIds) {
+            this.commodities = commodities;
+            this.meterIds = meterIds;
+            this.results = new MeterRecommendation[meterIds.length];
+        }
+    }
+
+    private final class MeterRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Run run;
+        private final int from;
+        private final int to;
+
+        private MeterRange(Run run, int from, int to) {
+            this.run = run;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                for (int i = from; i < to; i++) {
+                    run.results[i] = recommend(run.commodities[i], run.meterIds[i]);
+                    run.processed.increment();
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new MeterRange(run, from, middle), new MeterRange(run, middle, to));
+        }
+    }
+}
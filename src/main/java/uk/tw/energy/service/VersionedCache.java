@@ -0,0 +1,121 @@
+package uk.tw.energy.service;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of per-meter results, each stored with the version of the meter's readings it was computed from.
+ * A lookup only hits when the meter's current version still matches, so an ingest invalidates exactly that meter's
+ * entry without anyone having to remove it. Entries are evicted least recently used first once there are more than
+ * {@code maxSize}, and an entry older than {@code maxAge} is dropped when it is next looked up.
+ * <p>
+ * Values are computed outside the lock; two callers missing on the same meter at once may both compute it.
+ */
+public class VersionedCache<V> {
+
+    private final int maxSize;
+    private final long maxAgeNanos;
+    private final LongSupplier nanoClock;
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public VersionedCache(int maxSize, Duration maxAge) {
+        this(maxSize, maxAge, System::nanoTime);
+    }
+
+    VersionedCache(int maxSize, Duration maxAge, LongSupplier nanoClock) {
+        this.maxSize = maxSize;
+        this.maxAgeNanos = maxAge.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * The cached value for {@code key} if it was computed at {@code version} and has not expired, otherwise a freshly
+     * computed one, which is then cached under that version. Callers must read the version before the data the value
+     * is computed from, so a value is never cached under a version newer than its data.
+     */
+    public V get(String key, long version, Supplier<V> compute) {
+        long now = nanoClock.getAsLong();
+        long startGeneration;
+        synchronized (entries) {
+            startGeneration = generation;
+            Entry<V> entry = entries.get(key);
+            if (entry != null && now - entry.createdNanos > maxAgeNanos) {
+                entries.remove(key);
+                evictions.increment();
+            } else if (entry != null && entry.version == version) {
+                hits.increment();
+                return entry.value;
+            }
+        }
+        misses.increment();
+        V value = compute.get();
+        synchronized (entries) {
+            if (generation != startGeneration) {
+                return value;
+            }
+            Entry<V> current = entries.get(key);
+            if (current == null || current.version <= version) {
+                entries.put(key, new Entry<>(version, now, value));
+            }
+            while (entries.size() > maxSize) {
+                Iterator<Map.Entry<String, Entry<V>>> eldest = entries.entrySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drops every entry, for when something other than a meter's readings changes the results. A value whose
+     * computation was already under way is returned to its caller but not cached.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            evictions.add(entries.size());
+            entries.clear();
+            generation++;
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static final class Entry<V> {
+        private final long version;
+        private final long createdNanos;
+        private final V value;
+
+        private Entry(long version, long createdNanos, V value) {
+            this.version = version;
+            this.createdNanos = createdNanos;
+            this.value = value;
+        }
+    }
+}
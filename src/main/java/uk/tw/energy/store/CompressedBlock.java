@@ -0,0 +1,234 @@
+package uk.tw.energy.store;
+
+import java.util.Arrays;
+
+/**
+ * {@link CompressedReadingColumns#BLOCK_SIZE} readings packed into a bit stream in the style of Facebook's Gorilla:
+ * <ul>
+ *     <li>seconds as the first value, then delta-of-delta: {@code 0} when readings keep their spacing, otherwise a
+ *     prefix of {@code 10}, {@code 110} or {@code 1110} followed by a 7, 9 or 12 bit signed value, or {@code 1111}
+ *     followed by all 64 bits;</li>
+ *     <li>nanos as {@code 0} when unchanged, otherwise {@code 1} and 30 bits;</li>
+ *     <li>fixed-point values XORed with the previous value: {@code 0} when equal, {@code 10} and the meaningful bits
+ *     when they fit the previous window of leading and trailing zeros, otherwise {@code 11}, 6 bits of leading zeros,
+ *     6 bits of length less one and the meaningful bits;</li>
+ *     <li>scales as {@code 0} when unchanged, otherwise {@code 1} and the 8 bit scale.</li>
+ * </ul>
+ * The first and last time of the block are kept unpacked so searches can skip whole blocks without decoding them.
+ */
+final class CompressedBlock {
+
+    private static final int OBJECT_BYTES = 48;
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    final long firstSecond;
+    final int firstNano;
+    final long lastSecond;
+    final int lastNano;
+    private final long[] words;
+
+    private CompressedBlock(long firstSecond, int firstNano, long lastSecond, int lastNano, long[] words) {
+        this.firstSecond = firstSecond;
+        this.firstNano = firstNano;
+        this.lastSecond = lastSecond;
+        this.lastNano = lastNano;
+        this.words = words;
+    }
+
+    static CompressedBlock encode(long[] epochSeconds, int[] nanos, long[] values, byte[] scales) {
+        int count = epochSeconds.length;
+        BitWriter out = new BitWriter(count);
+        out.write(epochSeconds[0], 64);
+        long previousDelta = 0;
+        int previousNano = 0;
+        long previousValue = 0;
+        int leading = Integer.MAX_VALUE;
+        int trailing = 0;
+        byte previousScale = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                long delta = epochSeconds[i] - epochSeconds[i - 1];
+                writeDeltaOfDelta(out, delta - previousDelta);
+                previousDelta = delta;
+            }
+
+            if (nanos[i] == previousNano) {
+                out.write(0, 1);
+            } else {
+                out.write(1, 1);
+                out.write(nanos[i], 30);
+                previousNano = nanos[i];
+            }
+
+            long xor = values[i] ^ previousValue;
+            if (xor == 0) {
+                out.write(0, 1);
+            } else {
+                int valueLeading = Long.numberOfLeadingZeros(xor);
+                int valueTrailing = Long.numberOfTrailingZeros(xor);
+                if (valueLeading >= leading && valueTrailing >= trailing) {
+                    out.write(0b10, 2);
+                    out.write(xor >>> trailing, 64 - leading - trailing);
+                } else {
+                    int length = 64 - valueLeading - valueTrailing;
+                    out.write(0b11, 2);
+                    out.write(valueLeading, 6);
+                    out.write(length - 1, 6);
+                    out.write(xor >>> valueTrailing, length);
+                    leading = valueLeading;
+                    trailing = valueTrailing;
+                }
+                previousValue = values[i];
+            }
+
+            if (scales[i] == previousScale) {
+                out.write(0, 1);
+            } else {
+                out.write(1, 1);
+                out.write(scales[i], 8);
+                previousScale = scales[i];
+            }
+        }
+        return new CompressedBlock(epochSeconds[0], nanos[0], epochSeconds[count - 1], nanos[count - 1], out.toWords());
+    }
+
+    void decode(long[] epochSeconds, int[] nanos, long[] values, byte[] scales) {
+        BitReader in = new BitReader(words);
+        long second = in.read(64);
+        long delta = 0;
+        int nano = 0;
+        long value = 0;
+        int leading = 0;
+        int trailing = 0;
+        byte scale = 0;
+        for (int i = 0; i < epochSeconds.length; i++) {
+            if (i > 0) {
+                delta += readDeltaOfDelta(in);
+                second += delta;
+            }
+            epochSeconds[i] = second;
+
+            if (in.read(1) != 0) {
+                nano = (int) in.read(30);
+            }
+            nanos[i] = nano;
+
+            if (in.read(1) != 0) {
+                if (in.read(1) != 0) {
+                    leading = (int) in.read(6);
+                    int length = (int) in.read(6) + 1;
+                    trailing = 64 - leading - length;
+                }
+                value ^= in.read(64 - leading - trailing) << trailing;
+            }
+            values[i] = value;
+
+            if (in.read(1) != 0) {
+                scale = (byte) in.read(8);
+            }
+            scales[i] = scale;
+        }
+    }
+
+    long heapBytes() {
+        return OBJECT_BYTES + ARRAY_HEADER_BYTES + 8L * words.length;
+    }
+
+    private static void writeDeltaOfDelta(BitWriter out, long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            out.write(0, 1);
+        } else if (fits(deltaOfDelta, 7)) {
+            out.write(0b10, 2);
+            out.write(deltaOfDelta, 7);
+        } else if (fits(deltaOfDelta, 9)) {
+            out.write(0b110, 3);
+            out.write(deltaOfDelta, 9);
+        } else if (fits(deltaOfDelta, 12)) {
+            out.write(0b1110, 4);
+            out.write(deltaOfDelta, 12);
+        } else {
+            out.write(0b1111, 4);
+            out.write(deltaOfDelta, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader in) {
+        if (in.read(1) == 0) {
+            return 0;
+        }
+        if (in.read(1) == 0) {
+            return signed(in.read(7), 7);
+        }
+        if (in.read(1) == 0) {
+            return signed(in.read(9), 9);
+        }
+        if (in.read(1) == 0) {
+            return signed(in.read(12), 12);
+        }
+        return in.read(64);
+    }
+
+    private static boolean fits(long value, int bits) {
+        return signed(value, bits) == value;
+    }
+
+    private static long signed(long value, int bits) {
+        return (value << (64 - bits)) >> (64 - bits);
+    }
+
+    private static final class BitWriter {
+        private long[] words;
+        private int position;
+
+        private BitWriter(int readings) {
+            words = new long[Math.max(1, readings / 2)];
+        }
+
+        /**
+         * Appends the low {@code count} bits of {@code value}, most significant first.
+         */
+        private void write(long value, int count) {
+            int word = position >>> 6;
+            if (word + 1 >= words.length) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+            long bits = count == 64 ? value : value & ((1L << count) - 1);
+            int free = 64 - (position & 63);
+            if (count <= free) {
+                words[word] |= bits << (free - count);
+            } else {
+                int spill = count - free;
+                words[word] |= bits >>> spill;
+                words[word + 1] |= bits << (64 - spill);
+            }
+            position += count;
+        }
+
+        private long[] toWords() {
+            return Arrays.copyOf(words, (position + 63) >>> 6);
+        }
+    }
+
+    private static final class BitReader {
+        private final long[] words;
+        private int position;
+
+        private BitReader(long[] words) {
+            this.words = words;
+        }
+
+        private long read(int count) {
+            int word = position >>> 6;
+            int free = 64 - (position & 63);
+            long bits;
+            if (count <= free) {
+                bits = words[word] >>> (free - count);
+            } else {
+                int spill = count - free;
+                bits = (words[word] << spill) | (words[word + 1] >>> (64 - spill));
+            }
+            position += count;
+            return count == 64 ? bits : bits & ((1L << count) - 1);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package uk.tw.energy.store;
+
+/**
+ * Reading columns packed into {@link CompressedBlock}s of {@link #BLOCK_SIZE} readings. Readings are written into an
+ * open block of plain arrays and the block is compressed once it is full; a full block never changes again, so growing
+ * the columns shares the sealed blocks rather than copying them.
+ * <p>
+ * Reads go through a per-thread buffer holding the last block decoded, so walking a series in order decodes each
+ * block once. Searches compare against the first and last time kept with every block and only decode the one block
+ * the instant falls in.
+ * <p>
+ * Slots must be written in index order, which is how {@link ReadingSeries} fills columns. A reader that sees the
+ * open block move on finds the block it wanted already sealed: the sealed block is stored before the open block is
+ * replaced.
+ */
+class CompressedReadingColumns extends ReadingColumns {
+
+    static final int BLOCK_SHIFT = 7;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    private static final int OBJECT_BYTES = 40;
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private static final ThreadLocal<DecodedBlock> DECODED = ThreadLocal.withInitial(DecodedBlock::new);
+
+    private final int capacity;
+    private final CompressedBlock[] sealed;
+    private volatile OpenBlock open;
+    private volatile long sealedBytes;
+    private int written;
+
+    CompressedReadingColumns(int capacity) {
+        this.capacity = capacity;
+        this.sealed = new CompressedBlock[(capacity + BLOCK_MASK) >>> BLOCK_SHIFT];
+        this.open = openBlock(0);
+    }
+
+    @Override
+    int capacity() {
+        return capacity;
+    }
+
+    @Override
+    long epochSecond(int index) {
+        return block(index >>> BLOCK_SHIFT).epochSeconds[index & BLOCK_MASK];
+    }
+
+    @Override
+    int nano(int index) {
+        return block(index >>> BLOCK_SHIFT).nanos[index & BLOCK_MASK];
+    }
+
+    @Override
+    long value(int index) {
+        return block(index >>> BLOCK_SHIFT).values[index & BLOCK_MASK];
+    }
+
+    @Override
+    int scale(int index) {
+        return block(index >>> BLOCK_SHIFT).scales[index & BLOCK_MASK];
+    }
+
+    @Override
+    void set(int index, long epochSecond, int nano, long value, int scale) {
+        if (index != written) {
+            throw new IllegalStateException("Compressed columns are written in index order, expected slot " + written + " but got " + index);
+        }
+        OpenBlock block = open;
+        int offset = index & BLOCK_MASK;
+        block.epochSeconds[offset] = epochSecond;
+        block.nanos[offset] = nano;
+        block.values[offset] = value;
+        block.scales[offset] = (byte) scale;
+        written++;
+        if (offset == BLOCK_MASK) {
+            seal(block);
+        }
+    }
+
+    @Override
+    long heapBytes() {
+        OpenBlock block = open;
+        return OBJECT_BYTES + ARRAY_HEADER_BYTES + 4L * sealed.length + sealedBytes
+                + 4L * ARRAY_HEADER_BYTES + (long) block.epochSeconds.length * BYTES_PER_READING;
+    }
+
+    @Override
+    long directBytes() {
+        return 0;
+    }
+
+    @Override
+    void copyFrom(ReadingColumns source, int sourceIndex, int targetIndex, int length) {
+        if (source instanceof CompressedReadingColumns && sourceIndex == 0 && targetIndex == 0 && written == 0) {
+            CompressedReadingColumns compressed = (CompressedReadingColumns) source;
+            int shared = length >>> BLOCK_SHIFT;
+            long bytes = 0;
+            for (int block = 0; block < shared; block++) {
+                sealed[block] = compressed.sealed[block];
+                bytes += sealed[block].heapBytes();
+            }
+            sealedBytes = bytes;
+            written = shared << BLOCK_SHIFT;
+            open = openBlock(shared);
+            super.copyFrom(source, written, written, length - written);
+            return;
+        }
+        super.copyFrom(source, sourceIndex, targetIndex, length);
+    }
+
+    @Override
+    int search(int size, long epochSecond, int nano, boolean strictlyAfter) {
+        int low = 0;
+        int high = size >>> BLOCK_SHIFT;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            CompressedBlock block = sealed[mid];
+            int cmp = SeriesSnapshot.compare(block.lastSecond, block.lastNano, epochSecond, nano);
+            if (cmp < 0 || (strictlyAfter && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int start = low << BLOCK_SHIFT;
+        if (start >= size) {
+            return size;
+        }
+        Slots block = block(low);
+        int from = 0;
+        int to = Math.min(size - start, BLOCK_SIZE);
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            int cmp = SeriesSnapshot.compare(block.epochSeconds[mid], block.nanos[mid], epochSecond, nano);
+            if (cmp < 0 || (strictlyAfter && cmp == 0)) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return start + from;
+    }
+
+    private Slots block(int index) {
+        OpenBlock current = open;
+        if (current.index == index) {
+            return current;
+        }
+        CompressedBlock block = sealed[index];
+        DecodedBlock decoded = DECODED.get();
+        if (decoded.source != block) {
+            block.decode(decoded.epochSeconds, decoded.nanos, decoded.values, decoded.scales);
+            decoded.source = block;
+        }
+        return decoded;
+    }
+
+    private void seal(OpenBlock block) {
+        CompressedBlock compressed = CompressedBlock.encode(block.epochSeconds, block.nanos, block.values, block.scales);
+        sealed[block.index] = compressed;
+        sealedBytes += compressed.heapBytes();
+        open = openBlock(block.index + 1);
+    }
+
+    private OpenBlock openBlock(int index) {
+        return new OpenBlock(index, Math.max(0, Math.min(BLOCK_SIZE, capacity - (index << BLOCK_SHIFT))));
+    }
+
+    private static class Slots {
+        final long[] epochSeconds;
+        final int[] nanos;
+        final long[] values;
+        final byte[] scales;
+
+        Slots(int length) {
+            epochSeconds = new long[length];
+            nanos = new int[length];
+            values = new long[length];
+            scales = new byte[length];
+        }
+    }
+
+    private static final class OpenBlock extends Slots {
+        private final int index;
+
+        private OpenBlock(int index, int length) {
+            super(length);
+            this.index = index;
+        }
+    }
+
+    private static final class DecodedBlock extends Slots {
+        private CompressedBlock source;
+
+        private DecodedBlock() {
+            super(BLOCK_SIZE);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package uk.tw.energy.store;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Hands out slices of large direct buffers so that millions of small series do not each pay for their own direct
+ * allocation. A slab stays reachable through its slices and is released by the garbage collector once none of them
+ * is, which keeps slices that a reader's snapshot still holds valid without any explicit freeing. Requests larger
+ * than a quarter of a slab get a direct buffer of their own.
+ * <p>
+ * Slices are never moved, so a slab is held whole for as long as any one of its slices is: a series that stops
+ * growing can pin a slab whose other slices were all outgrown. Series move to fresh slices when they grow or are
+ * compacted, which is what drains old slabs, but at worst the direct memory reserved is a slab per live series.
+ * {@link #reservedBytes} counts the slabs and own buffers not yet collected; the gap between it and the bytes the
+ * series actually use ({@link ReadingStore#directBytes}) is the fragmentation.
+ * <p>
+ * Off-heap usage is bounded by {@code -XX:MaxDirectMemorySize}.
+ */
+class DirectSlabAllocator {
+
+    static final int DEFAULT_SLAB_BYTES = 4 * 1024 * 1024;
+    private static final DirectSlabAllocator SHARED = new DirectSlabAllocator(DEFAULT_SLAB_BYTES);
+
+    private final int slabBytes;
+    private final ReferenceQueue<ByteBuffer> collected = new ReferenceQueue<>();
+    private final Set<Reservation> reservations = new HashSet<>();
+    private long reservedBytes;
+    private ByteBuffer slab;
+
+    DirectSlabAllocator(int slabBytes) {
+        this.slabBytes = slabBytes;
+    }
+
+    static DirectSlabAllocator shared() {
+        return SHARED;
+    }
+
+    synchronized ByteBuffer allocate(int bytes) {
+        release();
+        int aligned = (bytes + 7) & ~7;
+        if (aligned > slabBytes / 4) {
+            return reserve(ByteBuffer.allocateDirect(aligned)).order(ByteOrder.nativeOrder());
+        }
+        if (slab == null || slab.remaining() < aligned) {
+            slab = reserve(ByteBuffer.allocateDirect(slabBytes));
+        }
+        ByteBuffer slice = slab.slice();
+        slice.limit(aligned);
+        slab.position(slab.position() + aligned);
+        return slice.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Direct memory held by slabs and own buffers that the garbage collector has not yet found unreachable, used or
+     * not.
+     */
+    synchronized long reservedBytes() {
+        release();
+        return reservedBytes;
+    }
+
+    private ByteBuffer reserve(ByteBuffer buffer) {
+        reservations.add(new Reservation(buffer, collected));
+        reservedBytes += buffer.capacity();
+        return buffer;
+    }
+
+    private void release() {
+        Reference<? extends ByteBuffer> reference;
+        while ((reference = collected.poll()) != null) {
+            Reservation reservation = (Reservation) reference;
+            reservations.remove(reservation);
+            reservedBytes -= reservation.bytes;
+        }
+    }
+
+    /**
+     * Enqueued once a slab, and so every slice of it, or an own buffer is unreachable. One per buffer, not per slice,
+     * so tracking costs nothing per series.
+     */
+    private static final class Reservation extends PhantomReference<ByteBuffer> {
+        private final int bytes;
+
+        private Reservation(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue) {
+            super(buffer, queue);
+            this.bytes = buffer.capacity();
+        }
+    }
+}
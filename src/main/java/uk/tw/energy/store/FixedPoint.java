@@ -0,0 +1,86 @@
+package uk.tw.energy.store;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Readings are kept as longs scaled to {@link #SCALE} decimal places (micro-kW), together with
+ * the scale they arrived with so the original BigDecimal can be given back unchanged. Only readings that fit exactly
+ * are taken: {@link #toUnscaled} refuses more than {@link #SCALE} decimal places that are not all zero, and magnitudes
+ * of about 9.2e12 and up. Trailing zeros past {@link #SCALE} are dropped, so such a reading comes back at
+ * {@link #SCALE} decimal places with the same value.
+ * <p>
+ * The arithmetic helpers work on unscaled longs at an explicit scale and round {@link RoundingMode#HALF_UP} exactly as
+ * the equivalent BigDecimal operation would; they throw {@link ArithmeticException} rather than overflow.
+ */
+public final class FixedPoint {
+
+    public static final int SCALE = 6;
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+            10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+            1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+
+    private FixedPoint() { }
+
+    /**
+     * @throws ArithmeticException if {@code value} has non-zero digits past {@link #SCALE} decimal places or does not
+     *                             fit in a long at that scale
+     */
+    public static long toUnscaled(BigDecimal value) {
+        return value.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    public static byte scaleOf(BigDecimal value) {
+        return (byte) Math.max(Byte.MIN_VALUE, Math.min(SCALE, value.scale()));
+    }
+
+    public static BigDecimal toBigDecimal(long unscaled, int scale) {
+        return BigDecimal.valueOf(unscaled, SCALE).setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * {@code unscaled} at {@code fromScale} expressed at {@code toScale}, as {@code BigDecimal#setScale} would.
+     */
+    public static long rescale(long unscaled, int fromScale, int toScale) {
+        if (toScale >= fromScale) {
+            return Math.multiplyExact(unscaled, powerOfTen(toScale - fromScale));
+        }
+        return divideHalfUp(unscaled, powerOfTen(fromScale - toScale));
+    }
+
+    /**
+     * The product of two fixed-point values, rounded once to {@code resultScale}.
+     */
+    public static long multiply(long left, int leftScale, long right, int rightScale, int resultScale) {
+        return rescale(Math.multiplyExact(left, right), leftScale + rightScale, resultScale);
+    }
+
+    /**
+     * {@code dividend} at {@code dividendScale} divided by a whole number, rounded once to {@code resultScale}.
+     */
+    public static long divide(long dividend, int dividendScale, long divisor, int resultScale) {
+        if (resultScale >= dividendScale) {
+            return divideHalfUp(Math.multiplyExact(dividend, powerOfTen(resultScale - dividendScale)), divisor);
+        }
+        return divideHalfUp(dividend, Math.multiplyExact(divisor, powerOfTen(dividendScale - resultScale)));
+    }
+
+    static long divideHalfUp(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = Math.abs(dividend % divisor);
+        if (remainder >= Math.abs(divisor) - remainder) {
+            quotient += (dividend < 0) == (divisor < 0) ? 1 : -1;
+        }
+        return quotient;
+    }
+
+    private static long powerOfTen(int exponent) {
+        if (exponent >= POWERS_OF_TEN.length) {
+            throw new ArithmeticException("10^" + exponent + " does not fit in a long");
+        }
+        return POWERS_OF_TEN[exponent];
+    }
+}
@@ -0,0 +1,82 @@
+package uk.tw.energy.store;
+
+class HeapReadingColumns extends ReadingColumns {
+
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private final long[] epochSeconds;
+    private final int[] nanos;
+    private final long[] values;
+    private final byte[] scales;
+
+    HeapReadingColumns(int capacity) {
+        epochSeconds = new long[capacity];
+        nanos = new int[capacity];
+        values = new long[capacity];
+        scales = new byte[capacity];
+    }
+
+    @Override
+    int capacity() {
+        return epochSeconds.length;
+    }
+
+    @Override
+    long epochSecond(int index) {
+        return epochSeconds[index];
+    }
+
+    @Override
+    int nano(int index) {
+        return nanos[index];
+    }
+
+    @Override
+    long value(int index) {
+        return values[index];
+    }
+
+    @Override
+    int scale(int index) {
+        return scales[index];
+    }
+
+    @Override
+    void set(int index, long epochSecond, int nano, long value, int scale) {
+        epochSeconds[index] = epochSecond;
+        nanos[index] = nano;
+        values[index] = value;
+        scales[index] = (byte) scale;
+    }
+
+    @Override
+    long heapBytes() {
+        return 4L * ARRAY_HEADER_BYTES + (long) capacity() * BYTES_PER_READING;
+    }
+
+    @Override
+    long directBytes() {
+        return 0;
+    }
+
+    @Override
+    void copyFrom(ReadingColumns source, int sourceIndex, int targetIndex, int length) {
+        if (!(source instanceof HeapReadingColumns)) {
+            super.copyFrom(source, sourceIndex, targetIndex, length);
+            return;
+        }
+        HeapReadingColumns heap = (HeapReadingColumns) source;
+        System.arraycopy(heap.epochSeconds, sourceIndex, epochSeconds, targetIndex, length);
+        System.arraycopy(heap.nanos, sourceIndex, nanos, targetIndex, length);
+        System.arraycopy(heap.values, sourceIndex, values, targetIndex, length);
+        System.arraycopy(heap.scales, sourceIndex, scales, targetIndex, length);
+    }
+
+    @Override
+    void copyFrom(ReadingBatch batch, int batchIndex, int targetIndex, int length) {
+        System.arraycopy(batch.epochSeconds, batchIndex, epochSeconds, targetIndex, length);
+        System.arraycopy(batch.nanos, batchIndex, nanos, targetIndex, length);
+        System.arraycopy(batch.values, batchIndex, values, targetIndex, length);
+        System.arraycopy(batch.scales, batchIndex, scales, targetIndex, length);
+    }
+}
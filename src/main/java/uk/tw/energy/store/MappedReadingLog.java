@@ -0,0 +1,451 @@
+package uk.tw.energy.store;
+
+import uk.tw.energy.domain.Commodity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A {@link ReadingLog} written to fixed-size memory-mapped segment files.
+ * <p>
+ * Each record is {@code [payload length][CRC32 of payload][payload]}; a zero length or a checksum mismatch marks the
+ * end of a segment, so a torn write at a crash is simply where replay of that segment stops. Appenders copy their
+ * record into the mapping under a short lock and then wait for a single flusher thread, which forces every dirty
+ * segment in one go: all appends that arrived while the previous force was running share the next one.
+ * <p>
+ * {@link #mark} starts a fresh segment, so a checkpoint taken at it covers exactly the segments numbered below it. The
+ * checkpoint is written to {@code checkpoint-<mark>.ckp} with a trailing CRC32, fsynced and renamed into place before
+ * those segments and any older checkpoint are deleted, so the log on disk is never more than one checkpoint plus what
+ * was appended since. A checkpoint that fails its checksum stops replay rather than being skipped, since the segments
+ * it replaced are gone.
+ */
+public class MappedReadingLog implements ReadingLog {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".ckp";
+    private static final int CHECKPOINT_MAGIC = 0x52434b50;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int READING_BYTES = 8 + 4 + 8 + 1;
+    /**
+     * Meter ids are written with a two-byte length, in records and, as modified UTF-8 of up to one and a half times
+     * their UTF-8 length, in checkpoints.
+     */
+    static final int MAX_METER_ID_BYTES = 0xFFFF * 2 / 3;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean syncOnAppend;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dirty = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final List<MappedByteBuffer> unflushedSegments = new ArrayList<>();
+    private final CRC32 checksum = new CRC32();
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+    private MappedByteBuffer segment;
+    private long nextSegmentNumber;
+    private long appendedSequence;
+    private long flushedSequence;
+    private boolean closed;
+    private final Thread flusher;
+
+    public MappedReadingLog(Path directory, int segmentSize, boolean syncOnAppend) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncOnAppend = syncOnAppend;
+        Files.createDirectories(directory);
+        this.nextSegmentNumber = Math.max(segments().stream().mapToLong(MappedReadingLog::segmentNumber).max().orElse(0),
+                latestCheckpoint().map(MappedReadingLog::checkpointNumber).orElse(0L)) + 1;
+        this.flusher = new Thread(this::flushLoop, "reading-log-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public void append(Commodity commodity, String smartMeterId, ReadingBatch batch) {
+        byte[] meterId = smartMeterId.getBytes(StandardCharsets.UTF_8);
+        if (meterId.length > MAX_METER_ID_BYTES) {
+            throw new IllegalArgumentException("Smart meter id of " + meterId.length + " bytes is too long to log");
+        }
+        int fixedBytes = RECORD_HEADER_BYTES + 1 + 2 + meterId.length + 4;
+        int readingsPerRecord = (segmentSize - fixedBytes) / READING_BYTES;
+        if (readingsPerRecord <= 0) {
+            throw new IllegalArgumentException("Segment size " + segmentSize + " is too small for meter " + smartMeterId);
+        }
+        long sequence;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Reading log is closed");
+            }
+            int start = 0;
+            do {
+                int count = Math.min(readingsPerRecord, batch.size - start);
+                write(commodity, meterId, batch, start, count);
+                start += count;
+            } while (start < batch.size);
+            sequence = appendedSequence;
+            dirty.signal();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+        if (syncOnAppend) {
+            awaitFlushed(sequence);
+        }
+    }
+
+    @Override
+    public void replay(Replayer replayer) {
+        Optional<Path> checkpoint = latestCheckpoint();
+        long mark = checkpoint.map(MappedReadingLog::checkpointNumber).orElse(Long.MIN_VALUE);
+        Map<Commodity, Map<String, SeriesImage>> images = checkpoint.map(MappedReadingLog::readCheckpoint)
+                .orElse(Collections.emptyMap());
+        List<List<Record>> decoded = segments().parallelStream()
+                .filter(segment -> segmentNumber(segment) >= mark)
+                .map(MappedReadingLog::decode)
+                .collect(Collectors.toList());
+
+        Map<Commodity, Map<String, List<ReadingBatch>>> byMeter = new EnumMap<>(Commodity.class);
+        decoded.forEach(records -> records.forEach(record -> byMeter
+                .computeIfAbsent(record.commodity, commodity -> new LinkedHashMap<>())
+                .computeIfAbsent(record.smartMeterId, id -> new ArrayList<>())
+                .add(record.batch)));
+
+        for (Commodity commodity : Commodity.values()) {
+            Map<String, SeriesImage> commodityImages = images.getOrDefault(commodity, Collections.emptyMap());
+            Map<String, List<ReadingBatch>> commodityBatches = byMeter.getOrDefault(commodity, Collections.emptyMap());
+            Set<String> meters = new LinkedHashSet<>(commodityImages.keySet());
+            meters.addAll(commodityBatches.keySet());
+            meters.parallelStream().forEach(smartMeterId -> {
+                SeriesImage image = commodityImages.get(smartMeterId);
+                if (image != null) {
+                    replayer.restore(commodity, smartMeterId, image);
+                }
+                commodityBatches.getOrDefault(smartMeterId, Collections.emptyList())
+                        .forEach(batch -> replayer.replay(commodity, smartMeterId, batch));
+            });
+        }
+    }
+
+    @Override
+    public long mark() {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Reading log is closed");
+            }
+            rollSegment();
+            return nextSegmentNumber - 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void checkpoint(long mark, Map<Commodity, Map<String, SeriesImage>> images) {
+        Path path = directory.resolve(String.format("%s%010d%s", CHECKPOINT_PREFIX, mark, CHECKPOINT_SUFFIX));
+        Path partial = directory.resolve(path.getFileName() + ".partial");
+        try {
+            try (FileOutputStream file = new FileOutputStream(partial.toFile())) {
+                BufferedOutputStream buffered = new BufferedOutputStream(file, 1 << 16);
+                CRC32 crc = new CRC32();
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeInt(images.values().stream().mapToInt(Map::size).sum());
+                for (Map.Entry<Commodity, Map<String, SeriesImage>> commodity : images.entrySet()) {
+                    for (Map.Entry<String, SeriesImage> meter : commodity.getValue().entrySet()) {
+                        out.writeByte(commodity.getKey().ordinal());
+                        out.writeUTF(meter.getKey());
+                        meter.getValue().writeTo(out);
+                    }
+                }
+                out.flush();
+                new DataOutputStream(buffered).writeLong(crc.getValue());
+                buffered.flush();
+                file.getChannel().force(true);
+            }
+            Files.move(partial, path, StandardCopyOption.ATOMIC_MOVE);
+            for (Path segment : segments()) {
+                if (segmentNumber(segment) < mark) {
+                    Files.deleteIfExists(segment);
+                }
+            }
+            for (Path checkpoint : checkpoints()) {
+                if (checkpointNumber(checkpoint) < mark) {
+                    Files.deleteIfExists(checkpoint);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write reading log checkpoint " + path, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            dirty.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(Commodity commodity, byte[] meterId, ReadingBatch batch, int start, int count) throws IOException {
+        int payloadBytes = 1 + 2 + meterId.length + 4 + count * READING_BYTES;
+        if (scratch.capacity() < payloadBytes) {
+            scratch = ByteBuffer.allocate(Math.max(payloadBytes, scratch.capacity() * 2));
+        }
+        scratch.clear();
+        scratch.put((byte) commodity.ordinal());
+        scratch.putShort((short) meterId.length);
+        scratch.put(meterId);
+        scratch.putInt(count);
+        for (int i = start; i < start + count; i++) {
+            scratch.putLong(batch.epochSeconds[i]);
+            scratch.putInt(batch.nanos[i]);
+            scratch.putLong(batch.values[i]);
+            scratch.put(batch.scales[i]);
+        }
+        checksum.reset();
+        checksum.update(scratch.array(), 0, payloadBytes);
+
+        if (segment == null || segment.remaining() < RECORD_HEADER_BYTES + payloadBytes) {
+            rollSegment();
+        }
+        scratch.flip();
+        segment.putInt(payloadBytes);
+        segment.putInt((int) checksum.getValue());
+        segment.put(scratch);
+        appendedSequence++;
+    }
+
+    private void rollSegment() throws IOException {
+        if (segment != null) {
+            unflushedSegments.add(segment);
+        }
+        Path path = directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<MappedByteBuffer> toForce;
+            long target;
+            lock.lock();
+            try {
+                while (!closed && flushedSequence == appendedSequence) {
+                    dirty.awaitUninterruptibly();
+                }
+                if (closed && flushedSequence == appendedSequence) {
+                    flushed.signalAll();
+                    return;
+                }
+                target = appendedSequence;
+                toForce = new ArrayList<>(unflushedSegments);
+                unflushedSegments.clear();
+                toForce.add(segment);
+            } finally {
+                lock.unlock();
+            }
+            toForce.forEach(MappedByteBuffer::force);
+            lock.lock();
+            try {
+                flushedSequence = target;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void awaitFlushed(long sequence) {
+        lock.lock();
+        try {
+            while (flushedSequence < sequence) {
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<Path> segments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(MappedReadingLog::isSegment)
+                    .sorted(Comparator.comparingLong(MappedReadingLog::segmentNumber))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Path> checkpoints() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(MappedReadingLog::isCheckpoint)
+                    .sorted(Comparator.comparingLong(MappedReadingLog::checkpointNumber))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Optional<Path> latestCheckpoint() {
+        List<Path> checkpoints = checkpoints();
+        return checkpoints.isEmpty() ? Optional.empty() : Optional.of(checkpoints.get(checkpoints.size() - 1));
+    }
+
+    private static boolean isCheckpoint(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(CHECKPOINT_PREFIX) && name.endsWith(CHECKPOINT_SUFFIX);
+    }
+
+    private static long checkpointNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(CHECKPOINT_PREFIX.length(), name.length() - CHECKPOINT_SUFFIX.length()));
+    }
+
+    private static Map<Commodity, Map<String, SeriesImage>> readCheckpoint(Path path) {
+        Map<Commodity, Map<String, SeriesImage>> images = new EnumMap<>(Commodity.class);
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+            CRC32 crc = new CRC32();
+            DataInputStream in = new DataInputStream(new CheckedInputStream(file, crc));
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("Not a reading log checkpoint");
+            }
+            for (int count = in.readInt(); count > 0; count--) {
+                Commodity commodity = Commodity.values()[in.readByte()];
+                String smartMeterId = in.readUTF();
+                images.computeIfAbsent(commodity, c -> new HashMap<>()).put(smartMeterId, SeriesImage.readFrom(in));
+            }
+            long expected = crc.getValue();
+            if (new DataInputStream(file).readLong() != expected) {
+                throw new IOException("Checksum mismatch");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read reading log checkpoint " + path, e);
+        }
+        return images;
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static List<Record> decode(Path path) {
+        List<Record> records = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32 checksum = new CRC32();
+            while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                int payloadBytes = buffer.getInt();
+                int expectedChecksum = buffer.getInt();
+                if (payloadBytes <= 0 || payloadBytes > buffer.remaining()) {
+                    break;
+                }
+                byte[] payload = new byte[payloadBytes];
+                buffer.get(payload);
+                checksum.reset();
+                checksum.update(payload, 0, payloadBytes);
+                if ((int) checksum.getValue() != expectedChecksum) {
+                    break;
+                }
+                Optional<Record> record = Record.decode(ByteBuffer.wrap(payload));
+                if (!record.isPresent()) {
+                    break;
+                }
+                records.add(record.get());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return records;
+    }
+
+    private static class Record {
+        private final Commodity commodity;
+        private final String smartMeterId;
+        private final ReadingBatch batch;
+
+        private Record(Commodity commodity, String smartMeterId, ReadingBatch batch) {
+            this.commodity = commodity;
+            this.smartMeterId = smartMeterId;
+            this.batch = batch;
+        }
+
+        /**
+         * The record in {@code payload}, or empty if it does not parse, which replay treats like a checksum mismatch:
+         * the end of the segment, rather than a log that stops the service from starting.
+         */
+        private static Optional<Record> decode(ByteBuffer payload) {
+            try {
+                Commodity commodity = Commodity.values()[payload.get()];
+                byte[] meterId = new byte[payload.getShort() & 0xFFFF];
+                payload.get(meterId);
+                int count = payload.getInt();
+                if (count < 0 || (long) count * READING_BYTES != payload.remaining()) {
+                    return Optional.empty();
+                }
+                ReadingBatch batch = new ReadingBatch(count);
+                for (int i = 0; i < count; i++) {
+                    batch.add(payload.getLong(), payload.getInt(), payload.getLong(), payload.get());
+                }
+                return Optional.of(new Record(commodity, new String(meterId, StandardCharsets.UTF_8), batch));
+            } catch (RuntimeException e) {
+                return Optional.empty();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package uk.tw.energy.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reading columns laid out back to back in one direct buffer: seconds, then nanos, then values, then scales. The
+ * buffer is a slice of a {@link DirectSlabAllocator} slab, so a series costs one small header object on the heap
+ * whatever its length.
+ */
+class OffHeapReadingColumns extends ReadingColumns {
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final int nanosOffset;
+    private final int valuesOffset;
+    private final int scalesOffset;
+
+    OffHeapReadingColumns(ByteBuffer buffer, int capacity) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.nanosOffset = capacity * 8;
+        this.valuesOffset = nanosOffset + capacity * 4;
+        this.scalesOffset = valuesOffset + capacity * 8;
+    }
+
+    static OffHeapReadingColumns allocate(DirectSlabAllocator allocator, int capacity) {
+        return new OffHeapReadingColumns(allocator.allocate(capacity * BYTES_PER_READING), capacity);
+    }
+
+    @Override
+    int capacity() {
+        return capacity;
+    }
+
+    @Override
+    long epochSecond(int index) {
+        return buffer.getLong(index << 3);
+    }
+
+    @Override
+    int nano(int index) {
+        return buffer.getInt(nanosOffset + (index << 2));
+    }
+
+    @Override
+    long value(int index) {
+        return buffer.getLong(valuesOffset + (index << 3));
+    }
+
+    @Override
+    int scale(int index) {
+        return buffer.get(scalesOffset + index);
+    }
+
+    @Override
+    void set(int index, long epochSecond, int nano, long value, int scale) {
+        buffer.putLong(index << 3, epochSecond);
+        buffer.putInt(nanosOffset + (index << 2), nano);
+        buffer.putLong(valuesOffset + (index << 3), value);
+        buffer.put(scalesOffset + index, (byte) scale);
+    }
+
+    @Override
+    long heapBytes() {
+        return 0;
+    }
+
+    @Override
+    long directBytes() {
+        return (long) capacity * BYTES_PER_READING;
+    }
+
+    @Override
+    void copyFrom(ReadingColumns source, int sourceIndex, int targetIndex, int length) {
+        if (!(source instanceof OffHeapReadingColumns)) {
+            super.copyFrom(source, sourceIndex, targetIndex, length);
+            return;
+        }
+        OffHeapReadingColumns direct = (OffHeapReadingColumns) source;
+        copyRegion(direct.buffer, sourceIndex << 3, targetIndex << 3, length << 3);
+        copyRegion(direct.buffer, direct.nanosOffset + (sourceIndex << 2), nanosOffset + (targetIndex << 2), length << 2);
+        copyRegion(direct.buffer, direct.valuesOffset + (sourceIndex << 3), valuesOffset + (targetIndex << 3), length << 3);
+        copyRegion(direct.buffer, direct.scalesOffset + sourceIndex, scalesOffset + targetIndex, length);
+    }
+
+    private void copyRegion(ByteBuffer source, int sourceOffset, int targetOffset, int length) {
+        ByteBuffer from = source.duplicate();
+        from.limit(sourceOffset + length).position(sourceOffset);
+        ByteBuffer to = buffer.duplicate();
+        to.position(targetOffset);
+        to.put(from);
+    }
+}
@@ -0,0 +1,123 @@
+package uk.tw.energy.store;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A batch of readings for one meter laid out as primitive columns, ready to be appended to a {@link ReadingSeries}.
+ */
+public class ReadingBatch {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    long[] epochSeconds;
+    int[] nanos;
+    long[] values;
+    byte[] scales;
+    int size;
+
+    public ReadingBatch() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ReadingBatch(int capacity) {
+        int initialCapacity = Math.max(1, capacity);
+        epochSeconds = new long[initialCapacity];
+        nanos = new int[initialCapacity];
+        values = new long[initialCapacity];
+        scales = new byte[initialCapacity];
+    }
+
+    public static <T> ReadingBatch of(List<T> readings, Function<T, Instant> time, Function<T, BigDecimal> reading) {
+        ReadingBatch batch = new ReadingBatch(readings.size());
+        readings.forEach(r -> batch.add(time.apply(r), reading.apply(r)));
+        return batch;
+    }
+
+    /**
+     * @throws ArithmeticException if {@code reading} cannot be held exactly, see {@link FixedPoint#toUnscaled}
+     */
+    public void add(Instant time, BigDecimal reading) {
+        add(time.getEpochSecond(), time.getNano(), FixedPoint.toUnscaled(reading), FixedPoint.scaleOf(reading));
+    }
+
+    public void add(long epochSecond, int nano, long value, int scale) {
+        if (size == epochSeconds.length) {
+            grow();
+        }
+        epochSeconds[size] = epochSecond;
+        nanos[size] = nano;
+        values[size] = value;
+        scales[size] = (byte) scale;
+        size++;
+    }
+
+    /**
+     * Appends every reading of {@code other}, which is left as it was.
+     */
+    public void addAll(ReadingBatch other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.epochSeconds[i], other.nanos[i], other.values[i], other.scales[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    void sortByTime() {
+        if (isSorted()) {
+            return;
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingLong(i -> epochSeconds[i]).thenComparingInt(i -> nanos[i]));
+
+        long[] sortedSeconds = new long[epochSeconds.length];
+        int[] sortedNanos = new int[nanos.length];
+        long[] sortedValues = new long[values.length];
+        byte[] sortedScales = new byte[scales.length];
+        for (int i = 0; i < size; i++) {
+            int from = order[i];
+            sortedSeconds[i] = epochSeconds[from];
+            sortedNanos[i] = nanos[from];
+            sortedValues[i] = values[from];
+            sortedScales[i] = scales[from];
+        }
+        epochSeconds = sortedSeconds;
+        nanos = sortedNanos;
+        values = sortedValues;
+        scales = sortedScales;
+    }
+
+    private boolean isSorted() {
+        for (int i = 1; i < size; i++) {
+            if (SeriesSnapshot.compare(epochSeconds[i - 1], nanos[i - 1], epochSeconds[i], nanos[i]) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        int capacity = epochSeconds.length * 2;
+        epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+        nanos = Arrays.copyOf(nanos, capacity);
+        values = Arrays.copyOf(values, capacity);
+        scales = Arrays.copyOf(scales, capacity);
+    }
+}
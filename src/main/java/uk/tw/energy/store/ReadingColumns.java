@@ -0,0 +1,58 @@
+package uk.tw.energy.store;
+
+/**
+ * Fixed-capacity storage for the four reading columns of a series. Slots below a published snapshot's size are never
+ * written again, so implementations need no synchronisation of their own.
+ */
+abstract class ReadingColumns {
+
+    static final int BYTES_PER_READING = 8 + 4 + 8 + 1;
+
+    abstract int capacity();
+
+    abstract long epochSecond(int index);
+
+    abstract int nano(int index);
+
+    abstract long value(int index);
+
+    abstract int scale(int index);
+
+    abstract void set(int index, long epochSecond, int nano, long value, int scale);
+
+    abstract long heapBytes();
+
+    abstract long directBytes();
+
+    /**
+     * Index of the first reading at (unless {@code strictlyAfter}) or after the given time, among the first {@code size}.
+     */
+    int search(int size, long epochSecond, int nano, boolean strictlyAfter) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = SeriesSnapshot.compare(epochSecond(mid), nano(mid), epochSecond, nano);
+            if (cmp < 0 || (strictlyAfter && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    void copyFrom(ReadingColumns source, int sourceIndex, int targetIndex, int length) {
+        for (int i = 0; i < length; i++) {
+            int from = sourceIndex + i;
+            set(targetIndex + i, source.epochSecond(from), source.nano(from), source.value(from), source.scale(from));
+        }
+    }
+
+    void copyFrom(ReadingBatch batch, int batchIndex, int targetIndex, int length) {
+        for (int i = 0; i < length; i++) {
+            int from = batchIndex + i;
+            set(targetIndex + i, batch.epochSeconds[from], batch.nanos[from], batch.values[from], batch.scales[from]);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package uk.tw.energy.store;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Where a page of readings starts: at {@code from}, after skipping the first {@code skip} readings at or after it.
+ * The skip keeps paging exact when several readings share the time a page ended on. Cursors are passed to clients
+ * as {@code <epochSecond>:<nano>:<skip>}.
+ */
+public final class ReadingCursor {
+
+    private final Instant from;
+    private final int skip;
+
+    private ReadingCursor(Instant from, int skip) {
+        this.from = from;
+        this.skip = skip;
+    }
+
+    public static ReadingCursor at(Instant from) {
+        return new ReadingCursor(from, 0);
+    }
+
+    static ReadingCursor of(Instant from, int skip) {
+        return new ReadingCursor(from, skip);
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code cursor} is not one produced by {@link #toString()}
+     */
+    public static ReadingCursor parse(String cursor) {
+        String[] parts = cursor.split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor);
+        }
+        try {
+            int skip = Integer.parseInt(parts[2]);
+            if (skip < 0) {
+                throw new IllegalArgumentException("Malformed cursor: " + cursor);
+            }
+            return new ReadingCursor(Instant.ofEpochSecond(Long.parseLong(parts[0]), Integer.parseInt(parts[1])), skip);
+        } catch (NumberFormatException | DateTimeException e) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor, e);
+        }
+    }
+
+    public Instant getFrom() {
+        return from;
+    }
+
+    public int getSkip() {
+        return skip;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ReadingCursor that = (ReadingCursor) o;
+        return skip == that.skip && from.equals(that.from);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(from, skip);
+    }
+
+    @Override
+    public String toString() {
+        return from.getEpochSecond() + ":" + from.getNano() + ":" + skip;
+    }
+}
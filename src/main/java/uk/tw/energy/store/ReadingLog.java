@@ -0,0 +1,74 @@
+package uk.tw.energy.store;
+
+import uk.tw.energy.domain.Commodity;
+
+import java.io.Closeable;
+import java.util.Map;
+
+/**
+ * Write-ahead log of ingested batches. {@link #append} returns once the batch is durable (or, for {@link #NONE},
+ * immediately) and is called before the batch is applied to the in-memory store.
+ * <p>
+ * A checkpoint stands in for everything logged before its {@link #mark}: once written, replay restores the
+ * checkpointed series and then hands back only the batches appended after the mark, and the log may drop the rest.
+ */
+public interface ReadingLog extends Closeable {
+
+    ReadingLog NONE = new ReadingLog() {
+        @Override
+        public void append(Commodity commodity, String smartMeterId, ReadingBatch batch) {
+        }
+
+        @Override
+        public void replay(Replayer replayer) {
+        }
+
+        @Override
+        public long mark() {
+            return 0;
+        }
+
+        @Override
+        public void checkpoint(long mark, Map<Commodity, Map<String, SeriesImage>> images) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    void append(Commodity commodity, String smartMeterId, ReadingBatch batch);
+
+    /**
+     * Hands the latest checkpoint and every batch logged after it back to the replayer. A meter's image, if any,
+     * comes before its batches, and batches for the same meter are replayed in the order they were logged; different
+     * meters may be replayed concurrently.
+     */
+    void replay(Replayer replayer);
+
+    /**
+     * Marks the point a checkpoint will be taken at: every batch appended before this call falls before the mark,
+     * every batch appended after it after.
+     */
+    long mark();
+
+    /**
+     * Durably records {@code images} as the state of every series as of {@code mark}, then drops what the log held
+     * from before the mark. The images must reflect every batch appended before the mark and none after it.
+     */
+    void checkpoint(long mark, Map<Commodity, Map<String, SeriesImage>> images);
+
+    @Override
+    void close();
+
+    interface Replayer {
+        void replay(Commodity commodity, String smartMeterId, ReadingBatch batch);
+
+        /**
+         * Restores a meter's checkpointed series. Replayers that only take batches get the raw readings it still kept.
+         */
+        default void restore(Commodity commodity, String smartMeterId, SeriesImage image) {
+            replay(commodity, smartMeterId, image.readings());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package uk.tw.energy.store;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * One page of a series' readings, fixed to the snapshot it was cut from so it can be written out at leisure while
+ * appends carry on. Downsampled readings for compacted days come first, then raw readings; only the raw part is
+ * read straight from the columns, one reading at a time, as the page is visited.
+ */
+public final class ReadingPage {
+
+    /**
+     * Receives the readings of a page in time order.
+     */
+    public interface Visitor {
+        void visit(Instant time, BigDecimal reading) throws IOException;
+    }
+
+    private final List<Map.Entry<Instant, BigDecimal>> downsampled;
+    private final SeriesSnapshot snapshot;
+    private final int start;
+    private final int end;
+    private final ReadingCursor next;
+
+    ReadingPage(List<Map.Entry<Instant, BigDecimal>> downsampled, SeriesSnapshot snapshot, int start, int end,
+                ReadingCursor next) {
+        this.downsampled = downsampled;
+        this.snapshot = snapshot;
+        this.start = start;
+        this.end = end;
+        this.next = next;
+    }
+
+    public int size() {
+        return downsampled.size() + end - start;
+    }
+
+    /**
+     * The cursor for the following page, or empty if this page reaches the end of the range.
+     */
+    public Optional<ReadingCursor> next() {
+        return Optional.ofNullable(next);
+    }
+
+    public void forEach(Visitor visitor) throws IOException {
+        for (Map.Entry<Instant, BigDecimal> reading : downsampled) {
+            visitor.visit(reading.getKey(), reading.getValue());
+        }
+        for (int i = start; i < end; i++) {
+            visitor.visit(snapshot.time(i), snapshot.reading(i));
+        }
+    }
+}
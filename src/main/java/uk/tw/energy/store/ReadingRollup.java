@@ -0,0 +1,165 @@
+package uk.tw.energy.store;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+
+/**
+ * Count, sum, min and max of the readings falling in one hour or day bucket, plus the time of the first and last of
+ * them. Values are fixed-point (see {@link FixedPoint}); {@code maxScale} is the widest scale seen so that sums come
+ * back with the same scale a BigDecimal sum of the original readings would have.
+ */
+public final class ReadingRollup {
+
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+    private final int maxScale;
+    private final long firstSecond;
+    private final int firstNano;
+    private final long lastSecond;
+    private final int lastNano;
+
+    private ReadingRollup(long count, long sum, long min, long max, int maxScale,
+                          long firstSecond, int firstNano, long lastSecond, int lastNano) {
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+        this.maxScale = maxScale;
+        this.firstSecond = firstSecond;
+        this.firstNano = firstNano;
+        this.lastSecond = lastSecond;
+        this.lastNano = lastNano;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public int getMaxScale() {
+        return maxScale;
+    }
+
+    public BigDecimal sumAsBigDecimal() {
+        return FixedPoint.toBigDecimal(sum, Math.max(0, maxScale));
+    }
+
+    /**
+     * Mean of the bucket's readings, standing in for them once the raw readings have been compacted away.
+     */
+    public BigDecimal averageAsBigDecimal() {
+        return sumAsBigDecimal().divide(BigDecimal.valueOf(count), RoundingMode.HALF_UP);
+    }
+
+    public Instant firstTime() {
+        return Instant.ofEpochSecond(firstSecond, firstNano);
+    }
+
+    public Instant lastTime() {
+        return Instant.ofEpochSecond(lastSecond, lastNano);
+    }
+
+    /**
+     * Whole seconds from the first reading to the last, as {@code Duration.between(firstTime(), lastTime()).getSeconds()}.
+     */
+    public long elapsedSeconds() {
+        return lastNano < firstNano ? lastSecond - firstSecond - 1 : lastSecond - firstSecond;
+    }
+
+    /**
+     * Whether every reading in this bucket lies strictly after {@code from} and strictly before {@code to}.
+     */
+    boolean isWithin(Instant from, Instant to) {
+        return SeriesSnapshot.compare(firstSecond, firstNano, from.getEpochSecond(), from.getNano()) > 0
+                && SeriesSnapshot.compare(lastSecond, lastNano, to.getEpochSecond(), to.getNano()) < 0;
+    }
+
+    /**
+     * Whether the bucket's first reading lies strictly after {@code from} and strictly before {@code to}; how a bucket
+     * that can no longer be split is matched against a range.
+     */
+    boolean startsWithin(Instant from, Instant to) {
+        return SeriesSnapshot.compare(firstSecond, firstNano, from.getEpochSecond(), from.getNano()) > 0
+                && SeriesSnapshot.compare(firstSecond, firstNano, to.getEpochSecond(), to.getNano()) < 0;
+    }
+
+    public ReadingRollup merge(ReadingRollup other) {
+        boolean thisFirst = SeriesSnapshot.compare(firstSecond, firstNano, other.firstSecond, other.firstNano) <= 0;
+        boolean thisLast = SeriesSnapshot.compare(lastSecond, lastNano, other.lastSecond, other.lastNano) >= 0;
+        return new ReadingRollup(count + other.count, sum + other.sum,
+                Math.min(min, other.min), Math.max(max, other.max), Math.max(maxScale, other.maxScale),
+                thisFirst ? firstSecond : other.firstSecond, thisFirst ? firstNano : other.firstNano,
+                thisLast ? lastSecond : other.lastSecond, thisLast ? lastNano : other.lastNano);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeLong(sum);
+        out.writeLong(min);
+        out.writeLong(max);
+        out.writeInt(maxScale);
+        out.writeLong(firstSecond);
+        out.writeInt(firstNano);
+        out.writeLong(lastSecond);
+        out.writeInt(lastNano);
+    }
+
+    static ReadingRollup readFrom(DataInput in) throws IOException {
+        return new ReadingRollup(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readInt(),
+                in.readLong(), in.readInt(), in.readLong(), in.readInt());
+    }
+
+    static class Builder {
+        private long count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+        private int maxScale = Integer.MIN_VALUE;
+        private long firstSecond = Long.MAX_VALUE;
+        private int firstNano;
+        private long lastSecond = Long.MIN_VALUE;
+        private int lastNano;
+
+        Builder add(long epochSecond, int nano, long value, int scale) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            maxScale = Math.max(maxScale, scale);
+            if (SeriesSnapshot.compare(epochSecond, nano, firstSecond, firstNano) < 0) {
+                firstSecond = epochSecond;
+                firstNano = nano;
+            }
+            if (SeriesSnapshot.compare(epochSecond, nano, lastSecond, lastNano) > 0) {
+                lastSecond = epochSecond;
+                lastNano = nano;
+            }
+            return this;
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        ReadingRollup build() {
+            return new ReadingRollup(count, sum, min, max, maxScale, firstSecond, firstNano, lastSecond, lastNano);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package uk.tw.energy.store;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * The readings of one meter, kept ordered by time as primitive columns so time ranges can be found by binary search.
+ * <p>
+ * Appends are serialised per series; readers use {@link #snapshot()} and never block. An in-order append writes past
+ * the end of the published columns and then publishes a longer snapshot over the same columns, anything else
+ * (growth or an out-of-order merge) publishes fresh columns. Daily rollups are folded in on the same append.
+ * Where the columns live is decided by the store's {@link StorageMode}.
+ * <p>
+ * {@link #compact} applies the store's {@link RetentionPolicy}, after which the oldest days are only kept as rollups,
+ * hourly ones built from the raw readings it drops and then daily ones.
+ * {@link #toList} and the aggregates read across all tiers, so callers need not know what has been compacted.
+ */
+public class ReadingSeries {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final StorageMode storageMode;
+    private final TariffCalendar calendar;
+    private final SeriesRollups rollups;
+    private final StoreFootprint footprint;
+    private volatile SeriesSnapshot current = SeriesSnapshot.EMPTY;
+    private volatile long version;
+
+    public ReadingSeries() {
+        this(ReadingStoreOptions.defaults());
+    }
+
+    public ReadingSeries(ReadingStoreOptions options) {
+        this(options, new StoreFootprint());
+    }
+
+    /**
+     * A series of a store, which adds every change in the readings and bytes it holds to the store's {@code footprint}.
+     */
+    ReadingSeries(ReadingStoreOptions options, StoreFootprint footprint) {
+        this.storageMode = options.getStorageMode();
+        this.calendar = options.getCalendar();
+        this.rollups = new SeriesRollups(calendar);
+        this.footprint = footprint;
+        footprint.add(0, heapBytes(), current.directBytes());
+    }
+
+    public SeriesSnapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Goes up on every append and compaction, after the change is visible to readers. A result worked out after
+     * reading version {@code v} reflects at least everything up to {@code v}.
+     */
+    public long version() {
+        return version;
+    }
+
+    public SeriesRollups rollups() {
+        return rollups;
+    }
+
+    public SortedMap<Long, ReadingRollup> aggregateByDay(Instant from, Instant to) {
+        return rollups.aggregateByDay(current, from, to);
+    }
+
+    public ReadingRollup aggregate(Instant from, Instant to) {
+        return rollups.aggregate(current, from, to);
+    }
+
+    public ReadingRollup total() {
+        return rollups.total();
+    }
+
+    /**
+     * Estimated heap held by the series: its on-heap columns plus its rollups.
+     */
+    public long heapBytes() {
+        return current.heapBytes() + rollups.heapBytes();
+    }
+
+    /**
+     * Every reading of the series, with compacted days downsampled to one reading per retained rollup bucket.
+     */
+    public <T> List<T> toList(BiFunction<Instant, BigDecimal, T> factory) {
+        SeriesSnapshot snapshot = current;
+        if (!snapshot.isCompacted()) {
+            return snapshot.toList(factory);
+        }
+        List<T> readings = rollups.downsampled(snapshot, factory);
+        readings.addAll(snapshot.toList(factory));
+        return readings;
+    }
+
+    /**
+     * Readings strictly after {@code from} and strictly before {@code to}, downsampled where the range reaches into
+     * compacted days.
+     */
+    public <T> List<T> toList(Instant from, Instant to, BiFunction<Instant, BigDecimal, T> factory) {
+        SeriesSnapshot snapshot = current;
+        if (!snapshot.isCompacted()) {
+            return snapshot.toList(from, to, factory);
+        }
+        List<T> readings = rollups.downsampled(snapshot, from, to, factory);
+        readings.addAll(snapshot.toList(from, to, factory));
+        return readings;
+    }
+
+    /**
+     * Up to {@code limit} readings from {@code cursor} and strictly before {@code to}, downsampled where the range
+     * reaches into compacted days. Raw readings are left in the snapshot until the page is visited; the downsampled
+     * ones, at most one per retained rollup bucket, are gathered up front.
+     */
+    public ReadingPage page(ReadingCursor cursor, Instant to, int limit) {
+        SeriesSnapshot snapshot = current;
+        Instant from = cursor.getFrom();
+        List<Map.Entry<Instant, BigDecimal>> downsampled = snapshot.isCompacted()
+                ? rollups.downsampled(snapshot, AbstractMap.SimpleImmutableEntry<Instant, BigDecimal>::new).stream()
+                        .filter(reading -> !reading.getKey().isBefore(from) && reading.getKey().isBefore(to))
+                        .collect(Collectors.toList())
+                : Collections.emptyList();
+        int rawStart = snapshot.indexFrom(from);
+        int rawEnd = Math.max(rawStart, snapshot.indexFrom(to));
+        long total = downsampled.size() + (long) (rawEnd - rawStart);
+        long first = Math.min(cursor.getSkip(), total);
+        long last = Math.min(total, first + limit);
+
+        ReadingCursor next = null;
+        if (last > first && last < total) {
+            Instant lastTime = timeAt(downsampled, snapshot, rawStart, last - 1);
+            int ties = 1;
+            for (long position = last - 2; position >= 0 && timeAt(downsampled, snapshot, rawStart, position).equals(lastTime); position--) {
+                ties++;
+            }
+            next = ReadingCursor.of(lastTime, ties);
+        }
+        int downsampledCount = downsampled.size();
+        return new ReadingPage(downsampled.subList((int) Math.min(first, downsampledCount), (int) Math.min(last, downsampledCount)),
+                snapshot, rawStart + (int) Math.max(0, first - downsampledCount), rawStart + (int) Math.max(0, last - downsampledCount),
+                next);
+    }
+
+    private static Instant timeAt(List<Map.Entry<Instant, BigDecimal>> downsampled, SeriesSnapshot snapshot, int rawStart, long position) {
+        return position < downsampled.size()
+                ? downsampled.get((int) position).getKey()
+                : snapshot.time(rawStart + (int) (position - downsampled.size()));
+    }
+
+    public synchronized void append(ReadingBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        batch.sortByTime();
+        SeriesSnapshot snapshot = current;
+        long heapBytes = heapBytes();
+        long directBytes = snapshot.directBytes();
+        rollups.add(batch, snapshot);
+        int start = firstRetained(snapshot, batch);
+        if (start < batch.size) {
+            int size = snapshot.size();
+            if (size == 0 || SeriesSnapshot.compare(snapshot.epochSecond(size - 1), snapshot.nano(size - 1),
+                    batch.epochSeconds[start], batch.nanos[start]) <= 0) {
+                current = appendInOrder(snapshot, batch, start);
+            } else {
+                current = merge(snapshot, batch, start);
+            }
+        }
+        footprintChanged(snapshot.size(), heapBytes, directBytes);
+        version++;
+    }
+
+    /**
+     * The series as it stands, for a {@link ReadingLog} checkpoint. Copies the rollups but not the raw readings: the
+     * image keeps the current snapshot, which later appends never change, and reads it when it is written.
+     */
+    public synchronized SeriesImage image() {
+        return new SeriesImage(current, new TreeMap<>(rollups.hourly()), new TreeMap<>(rollups.daily()), rollups.total());
+    }
+
+    /**
+     * Replaces the whole series, compaction horizons included, with {@code image}.
+     */
+    public synchronized void restore(SeriesImage image) {
+        SeriesSnapshot snapshot = current;
+        long heapBytes = heapBytes();
+        long directBytes = snapshot.directBytes();
+        int size = image.snapshot.size();
+        ReadingColumns columns = storageMode.allocate(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(size) << 1));
+        columns.copyFrom(image.snapshot.columns, 0, 0, size);
+        current = new SeriesSnapshot(columns, size, image.rawFromDay, image.hourlyFromDay);
+        rollups.restore(image);
+        footprintChanged(snapshot.size(), heapBytes, directBytes);
+        version++;
+    }
+
+    /**
+     * Drops the tiers that {@code policy} no longer keeps as of {@code now}: raw readings of days before its raw
+     * horizon, which are rolled up by the hour first, and hourly rollups of days before its hourly horizon. Horizons
+     * only ever move forward.
+     */
+    public synchronized void compact(RetentionPolicy policy, Instant now) {
+        if (policy.keepsEverything()) {
+            return;
+        }
+        SeriesSnapshot snapshot = current;
+        long rawFromDay = Math.max(snapshot.rawFromDay, policy.rawFromDay(calendar, now));
+        long hourlyFromDay = Math.max(snapshot.hourlyFromDay, policy.hourlyFromDay(calendar, now));
+        if (rawFromDay == snapshot.rawFromDay && hourlyFromDay == snapshot.hourlyFromDay) {
+            return;
+        }
+        long heapBytes = heapBytes();
+        long directBytes = snapshot.directBytes();
+        int size = snapshot.size();
+        int drop = 0;
+        while (drop < size && calendar.dayIndex(snapshot.epochSecond(drop)) < rawFromDay) {
+            drop++;
+        }
+        ReadingColumns columns = snapshot.columns;
+        rollups.addHours(snapshot, drop, hourlyFromDay);
+        if (drop > 0) {
+            columns = storageMode.allocate(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(size - drop) << 1));
+            columns.copyFrom(snapshot.columns, drop, 0, size - drop);
+        }
+        current = new SeriesSnapshot(columns, size - drop, rawFromDay, hourlyFromDay);
+        rollups.dropHourlyBefore(hourlyFromDay);
+        footprintChanged(size, heapBytes, directBytes);
+        version++;
+    }
+
+    /**
+     * Adds the difference between what the series holds now and what it held before a change to the store's footprint.
+     * The counts are taken before the change, as an in-order append grows the columns of the published snapshot too.
+     */
+    private void footprintChanged(int readingsBefore, long heapBytesBefore, long directBytesBefore) {
+        SeriesSnapshot snapshot = current;
+        footprint.add(snapshot.size() - readingsBefore, heapBytes() - heapBytesBefore,
+                snapshot.directBytes() - directBytesBefore);
+    }
+
+    /**
+     * Index of the first reading of a sorted batch that falls on a day whose raw readings are still kept; earlier
+     * ones only reach the rollups.
+     */
+    private int firstRetained(SeriesSnapshot snapshot, ReadingBatch batch) {
+        int start = 0;
+        if (snapshot.isCompacted()) {
+            while (start < batch.size && calendar.dayIndex(batch.epochSeconds[start]) < snapshot.rawFromDay) {
+                start++;
+            }
+        }
+        return start;
+    }
+
+    private SeriesSnapshot appendInOrder(SeriesSnapshot snapshot, ReadingBatch batch, int start) {
+        int size = snapshot.size();
+        int length = batch.size - start;
+        int required = size + length;
+        ReadingColumns columns = snapshot.columns;
+        if (required > columns.capacity()) {
+            int capacity = Math.max(Math.max(required, INITIAL_CAPACITY), columns.capacity() * 2);
+            ReadingColumns grown = storageMode.allocate(capacity);
+            grown.copyFrom(columns, 0, 0, size);
+            columns = grown;
+        }
+        columns.copyFrom(batch, start, size, length);
+        return new SeriesSnapshot(columns, required, snapshot.rawFromDay, snapshot.hourlyFromDay);
+    }
+
+    private SeriesSnapshot merge(SeriesSnapshot snapshot, ReadingBatch batch, int start) {
+        int size = snapshot.size();
+        ReadingColumns existing = snapshot.columns;
+        ReadingColumns merged = storageMode.allocate(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(size + batch.size - start) << 1));
+
+        int left = 0;
+        int right = start;
+        int out = 0;
+        while (left < size && right < batch.size) {
+            if (SeriesSnapshot.compare(existing.epochSecond(left), existing.nano(left),
+                    batch.epochSeconds[right], batch.nanos[right]) <= 0) {
+                merged.set(out++, existing.epochSecond(left), existing.nano(left), existing.value(left), existing.scale(left));
+                left++;
+            } else {
+                merged.set(out++, batch.epochSeconds[right], batch.nanos[right], batch.values[right], batch.scales[right]);
+                right++;
+            }
+        }
+        merged.copyFrom(existing, left, out, size - left);
+        out += size - left;
+        merged.copyFrom(batch, right, out, batch.size - right);
+        out += batch.size - right;
+        return new SeriesSnapshot(merged, out, snapshot.rawFromDay, snapshot.hourlyFromDay);
+    }
+}
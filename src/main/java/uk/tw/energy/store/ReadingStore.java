@@ -0,0 +1,82 @@
+package uk.tw.energy.store;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-meter reading series for one commodity. Appends to different meters never contend with each other.
+ */
+public class ReadingStore {
+
+    private final Map<String, ReadingSeries> seriesByMeter = new ConcurrentHashMap<>();
+    private final ReadingStoreOptions options;
+    private final StoreFootprint footprint = new StoreFootprint();
+
+    public ReadingStore() {
+        this(ReadingStoreOptions.defaults());
+    }
+
+    public ReadingStore(ReadingStoreOptions options) {
+        this.options = options;
+    }
+
+    public Optional<ReadingSeries> getSeries(String smartMeterId) {
+        return Optional.ofNullable(seriesByMeter.get(smartMeterId));
+    }
+
+    public Optional<SeriesSnapshot> getSnapshot(String smartMeterId) {
+        return getSeries(smartMeterId).map(ReadingSeries::snapshot);
+    }
+
+    public void append(String smartMeterId, ReadingBatch batch) {
+        seriesByMeter.computeIfAbsent(smartMeterId, id -> new ReadingSeries(options, footprint)).append(batch);
+    }
+
+    /**
+     * Replaces the meter's series, creating it if need be, with {@code image}.
+     */
+    public void restore(String smartMeterId, SeriesImage image) {
+        seriesByMeter.computeIfAbsent(smartMeterId, id -> new ReadingSeries(options, footprint)).restore(image);
+    }
+
+    /**
+     * An image of every series, each taken on its own; callers that need them consistent with each other stop appends
+     * first.
+     */
+    public Map<String, SeriesImage> images() {
+        Map<String, SeriesImage> images = new HashMap<>(seriesByMeter.size() * 2);
+        seriesByMeter.forEach((smartMeterId, series) -> images.put(smartMeterId, series.image()));
+        return images;
+    }
+
+    /**
+     * Applies the store's {@link RetentionPolicy} to every series, one series at a time.
+     */
+    public void compact(Instant now) {
+        seriesByMeter.values().forEach(series -> series.compact(options.getRetention(), now));
+    }
+
+    public Set<String> meterIds() {
+        return seriesByMeter.keySet();
+    }
+
+    /**
+     * Raw readings held across every series; readings already compacted into rollups are not counted. Like the byte
+     * counts below, a running total kept as series change, so this does not walk the store.
+     */
+    public long readingCount() {
+        return footprint.readings();
+    }
+
+    public long heapBytes() {
+        return footprint.heapBytes();
+    }
+
+    public long directBytes() {
+        return footprint.directBytes();
+    }
+}
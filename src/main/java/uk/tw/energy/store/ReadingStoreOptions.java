@@ -0,0 +1,25 @@
+package uk.tw.energy.store;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Settings shared by every series of a {@link ReadingStore}.
+ */
+@Getter
+@Builder
+public class ReadingStoreOptions {
+
+    @Builder.Default
+    private final StorageMode storageMode = StorageMode.HEAP;
+
+    @Builder.Default
+    private final TariffCalendar calendar = TariffCalendar.systemDefault();
+
+    @Builder.Default
+    private final RetentionPolicy retention = RetentionPolicy.KEEP_ALL;
+
+    public static ReadingStoreOptions defaults() {
+        return builder().build();
+    }
+}
@@ -0,0 +1,57 @@
+package uk.tw.energy.store;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * How long each tier of a series is kept. Raw readings are kept for {@code raw}, after which only their hourly
+ * rollups remain; hourly rollups are kept for {@code hourly}, after which only daily rollups remain. Daily rollups
+ * are never dropped. A null duration keeps that tier for good.
+ * <p>
+ * Tiers are dropped a whole {@link TariffCalendar} day at a time, so a day is always served from a single tier.
+ */
+public class RetentionPolicy {
+
+    public static final RetentionPolicy KEEP_ALL = new RetentionPolicy(null, null);
+
+    private final Duration raw;
+    private final Duration hourly;
+
+    public RetentionPolicy(Duration raw, Duration hourly) {
+        if (raw == null && hourly != null || raw != null && hourly != null && hourly.compareTo(raw) < 0) {
+            throw new IllegalArgumentException("Hourly rollups must be kept at least as long as raw readings");
+        }
+        this.raw = raw;
+        this.hourly = hourly;
+    }
+
+    /**
+     * Builds a policy from day counts as configured in properties, where a negative count keeps the tier for good.
+     */
+    public static RetentionPolicy ofDays(int rawDays, int hourlyDays) {
+        return new RetentionPolicy(rawDays < 0 ? null : Duration.ofDays(rawDays),
+                hourlyDays < 0 ? null : Duration.ofDays(hourlyDays));
+    }
+
+    public boolean keepsEverything() {
+        return raw == null;
+    }
+
+    /**
+     * First tariff day, as of {@code now}, whose raw readings are still kept.
+     */
+    long rawFromDay(TariffCalendar calendar, Instant now) {
+        return fromDay(calendar, now, raw);
+    }
+
+    /**
+     * First tariff day, as of {@code now}, whose hourly rollups are still kept.
+     */
+    long hourlyFromDay(TariffCalendar calendar, Instant now) {
+        return fromDay(calendar, now, hourly);
+    }
+
+    private static long fromDay(TariffCalendar calendar, Instant now, Duration retention) {
+        return retention == null ? Long.MIN_VALUE : calendar.dayIndex(now.minus(retention).getEpochSecond());
+    }
+}
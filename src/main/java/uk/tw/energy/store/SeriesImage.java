@@ -0,0 +1,95 @@
+package uk.tw.energy.store;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Everything a {@link ReadingSeries} holds at one moment: its compaction horizons, its rollups and the raw readings
+ * it still keeps. A {@link ReadingLog} checkpoint stores these so that a restart comes back to the compacted series
+ * rather than replaying raw readings that retention has already folded away.
+ * <p>
+ * The raw readings are the series' immutable {@link SeriesSnapshot}, not a copy, so taking an image costs only the
+ * rollups and the readings are read from wherever the series keeps them when the image is written.
+ */
+public final class SeriesImage {
+
+    final long rawFromDay;
+    final long hourlyFromDay;
+    final NavigableMap<Long, ReadingRollup> hourly;
+    final NavigableMap<Long, ReadingRollup> daily;
+    final ReadingRollup total;
+    final SeriesSnapshot snapshot;
+
+    SeriesImage(SeriesSnapshot snapshot, NavigableMap<Long, ReadingRollup> hourly,
+                NavigableMap<Long, ReadingRollup> daily, ReadingRollup total) {
+        this.rawFromDay = snapshot.rawFromDay;
+        this.hourlyFromDay = snapshot.hourlyFromDay;
+        this.hourly = hourly;
+        this.daily = daily;
+        this.total = total;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * A copy of the raw readings the series still kept, oldest first.
+     */
+    public ReadingBatch readings() {
+        ReadingBatch readings = new ReadingBatch(snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            readings.add(snapshot.epochSecond(i), snapshot.nano(i), snapshot.value(i), snapshot.scale(i));
+        }
+        return readings;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(rawFromDay);
+        out.writeLong(hourlyFromDay);
+        writeBuckets(out, hourly);
+        writeBuckets(out, daily);
+        out.writeBoolean(total != null);
+        if (total != null) {
+            total.writeTo(out);
+        }
+        out.writeInt(snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            out.writeLong(snapshot.epochSecond(i));
+            out.writeInt(snapshot.nano(i));
+            out.writeLong(snapshot.value(i));
+            out.writeByte(snapshot.scale(i));
+        }
+    }
+
+    static SeriesImage readFrom(DataInput in) throws IOException {
+        long rawFromDay = in.readLong();
+        long hourlyFromDay = in.readLong();
+        NavigableMap<Long, ReadingRollup> hourly = readBuckets(in);
+        NavigableMap<Long, ReadingRollup> daily = readBuckets(in);
+        ReadingRollup total = in.readBoolean() ? ReadingRollup.readFrom(in) : null;
+        int count = in.readInt();
+        ReadingColumns columns = new HeapReadingColumns(count);
+        for (int i = 0; i < count; i++) {
+            columns.set(i, in.readLong(), in.readInt(), in.readLong(), in.readByte());
+        }
+        return new SeriesImage(new SeriesSnapshot(columns, count, rawFromDay, hourlyFromDay), hourly, daily, total);
+    }
+
+    private static void writeBuckets(DataOutput out, Map<Long, ReadingRollup> buckets) throws IOException {
+        out.writeInt(buckets.size());
+        for (Map.Entry<Long, ReadingRollup> bucket : buckets.entrySet()) {
+            out.writeLong(bucket.getKey());
+            bucket.getValue().writeTo(out);
+        }
+    }
+
+    private static NavigableMap<Long, ReadingRollup> readBuckets(DataInput in) throws IOException {
+        NavigableMap<Long, ReadingRollup> buckets = new TreeMap<>();
+        for (int count = in.readInt(); count > 0; count--) {
+            buckets.put(in.readLong(), ReadingRollup.readFrom(in));
+        }
+        return buckets;
+    }
+}
@@ -0,0 +1,295 @@
+package uk.tw.energy.store;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * Hourly and daily rollups of a series, keyed by {@link TariffCalendar} hour and day index. Daily buckets are updated
+ * on every append. Hourly buckets are only kept for days whose raw readings a {@link RetentionPolicy} has dropped:
+ * compaction builds them from the readings it drops, and late appends to those days update them. Days still held raw
+ * need no hourly buckets, as the parts of them a range cuts are re-read from the snapshot. Buckets are immutable and
+ * replaced whole, so readers always see a consistent bucket, although a bucket may already include readings appended
+ * after the snapshot they are querying alongside.
+ * <p>
+ * Once a day is compacted its buckets are the only record of it: days before the snapshot's {@code rawFromDay} are
+ * answered from hourly buckets and days before its {@code hourlyFromDay} from the daily bucket alone. A bucket that
+ * can no longer be split counts towards a range when its first reading does.
+ */
+public class SeriesRollups {
+
+    /**
+     * Rough heap cost of one bucket: a skip list node and its share of index nodes, the boxed key and the rollup.
+     */
+    private static final long BUCKET_BYTES = 120;
+
+    private final TariffCalendar calendar;
+    private final ConcurrentSkipListMap<Long, ReadingRollup> hourly = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Long, ReadingRollup> daily = new ConcurrentSkipListMap<>();
+    private volatile ReadingRollup total;
+    private volatile long bucketCount;
+
+    public SeriesRollups(TariffCalendar calendar) {
+        this.calendar = calendar;
+    }
+
+    public NavigableMap<Long, ReadingRollup> hourly() {
+        return hourly;
+    }
+
+    public NavigableMap<Long, ReadingRollup> daily() {
+        return daily;
+    }
+
+    /**
+     * Folds a time-ordered batch into the buckets. Only readings of days the snapshot holds as hourly buckets, from its
+     * {@code hourlyFromDay} up to its {@code rawFromDay}, reach an hourly bucket; the rest only reach the daily bucket
+     * and the total. Callers serialise appends.
+     */
+    void add(ReadingBatch batch, SeriesSnapshot snapshot) {
+        ReadingRollup.Builder hour = new ReadingRollup.Builder();
+        ReadingRollup.Builder day = new ReadingRollup.Builder();
+        ReadingRollup.Builder all = new ReadingRollup.Builder();
+        long currentEpochHour = Long.MIN_VALUE;
+        long currentHour = Long.MIN_VALUE;
+        long currentDay = Long.MIN_VALUE;
+        for (int i = 0; i < batch.size; i++) {
+            long epochHour = Math.floorDiv(batch.epochSeconds[i], 3600);
+            if (epochHour != currentEpochHour) {
+                currentEpochHour = epochHour;
+                long hourIndex = calendar.hourIndex(batch.epochSeconds[i]);
+                if (hourIndex != currentHour) {
+                    flushHour(currentHour, hour, snapshot);
+                    hour = new ReadingRollup.Builder();
+                    currentHour = hourIndex;
+                }
+                long dayIndex = TariffCalendar.dayOfHour(hourIndex);
+                if (dayIndex != currentDay) {
+                    flush(daily, currentDay, day);
+                    day = new ReadingRollup.Builder();
+                    currentDay = dayIndex;
+                }
+            }
+            hour.add(batch.epochSeconds[i], batch.nanos[i], batch.values[i], batch.scales[i]);
+            day.add(batch.epochSeconds[i], batch.nanos[i], batch.values[i], batch.scales[i]);
+            all.add(batch.epochSeconds[i], batch.nanos[i], batch.values[i], batch.scales[i]);
+        }
+        flushHour(currentHour, hour, snapshot);
+        flush(daily, currentDay, day);
+        if (!all.isEmpty()) {
+            total = total == null ? all.build() : total.merge(all.build());
+        }
+    }
+
+    /**
+     * Rollups per tariff day of the readings strictly after {@code from} and strictly before {@code to}. Whole days
+     * come straight from the daily buckets; a day cut by a range boundary is re-read from the raw snapshot where the
+     * snapshot still holds it, and drops to its hourly buckets where it has been compacted.
+     */
+    public SortedMap<Long, ReadingRollup> aggregateByDay(SeriesSnapshot snapshot, Instant from, Instant to) {
+        SortedMap<Long, ReadingRollup> result = new TreeMap<>();
+        if (!from.isBefore(to)) {
+            return result;
+        }
+        long fromDay = calendar.dayIndex(from.getEpochSecond());
+        long toDay = calendar.dayIndex(to.getEpochSecond());
+        for (Map.Entry<Long, ReadingRollup> day : daily.subMap(fromDay, true, toDay, true).entrySet()) {
+            if (day.getValue().isWithin(from, to)
+                    || day.getKey() < snapshot.hourlyFromDay && day.getValue().startsWithin(from, to)) {
+                result.put(day.getKey(), day.getValue());
+                continue;
+            }
+            if (day.getKey() < snapshot.hourlyFromDay) {
+                continue;
+            }
+            if (day.getKey() >= snapshot.rawFromDay) {
+                ReadingRollup bucket = scan(snapshot, day.getValue(), from, to);
+                if (bucket != null) {
+                    result.put(day.getKey(), bucket);
+                }
+                continue;
+            }
+            long firstHour = day.getKey() * 24;
+            for (Map.Entry<Long, ReadingRollup> hour : hourly.subMap(firstHour, true, firstHour + 24, false).entrySet()) {
+                if (hour.getValue().startsWithin(from, to)) {
+                    result.merge(day.getKey(), hour.getValue(), ReadingRollup::merge);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A single rollup of the readings strictly after {@code from} and strictly before {@code to}, or null if none.
+     */
+    public ReadingRollup aggregate(SeriesSnapshot snapshot, Instant from, Instant to) {
+        return aggregateByDay(snapshot, from, to).values().stream().reduce(ReadingRollup::merge).orElse(null);
+    }
+
+    /**
+     * A single rollup of every reading ever appended, or null if there are none. Kept up to date on append, so it
+     * costs nothing to read.
+     */
+    public ReadingRollup total() {
+        return total;
+    }
+
+    /**
+     * Estimated heap held by the buckets, from a count kept as buckets are added and dropped.
+     */
+    public long heapBytes() {
+        return bucketCount * BUCKET_BYTES;
+    }
+
+    /**
+     * One reading per bucket for the compacted days of the snapshot, in time order: the daily buckets before its
+     * {@code hourlyFromDay}, then the hourly buckets before its {@code rawFromDay}. Each reading is the mean of its
+     * bucket at the time of the bucket's first reading.
+     */
+    <T> List<T> downsampled(SeriesSnapshot snapshot, BiFunction<Instant, BigDecimal, T> factory) {
+        return downsampled(snapshot, Long.MIN_VALUE, Long.MAX_VALUE, bucket -> true, factory);
+    }
+
+    /**
+     * As {@link #downsampled(SeriesSnapshot, BiFunction)}, restricted to buckets whose first reading lies strictly
+     * after {@code from} and strictly before {@code to}.
+     */
+    <T> List<T> downsampled(SeriesSnapshot snapshot, Instant from, Instant to, BiFunction<Instant, BigDecimal, T> factory) {
+        if (!from.isBefore(to)) {
+            return new ArrayList<>();
+        }
+        return downsampled(snapshot, calendar.dayIndex(from.getEpochSecond()), calendar.dayIndex(to.getEpochSecond()),
+                bucket -> bucket.startsWithin(from, to), factory);
+    }
+
+    /**
+     * Replaces every bucket with those of {@code image}. Hourly buckets of days the image still holds raw, which images
+     * written before hourly buckets were left to compaction carry, are dropped: compaction rebuilds them. Callers
+     * serialise this with appends.
+     */
+    void restore(SeriesImage image) {
+        hourly.clear();
+        hourly.putAll(image.hourly.headMap(firstHourOf(image.rawFromDay)));
+        daily.clear();
+        daily.putAll(image.daily);
+        total = image.total;
+        bucketCount = hourly.size() + (long) daily.size();
+    }
+
+    /**
+     * Builds the hourly buckets of the first {@code end} readings of {@code snapshot}, which compaction is about to
+     * drop, skipping days before {@code hourlyFromDay} that keep only their daily bucket. Called before the compacted
+     * snapshot is published, so a reader that finds a day compacted also finds its hours. Callers serialise compaction
+     * with appends.
+     */
+    void addHours(SeriesSnapshot snapshot, int end, long hourlyFromDay) {
+        ReadingRollup.Builder hour = new ReadingRollup.Builder();
+        long currentHour = Long.MIN_VALUE;
+        for (int i = 0; i < end; i++) {
+            long hourIndex = calendar.hourIndex(snapshot.epochSecond(i));
+            if (TariffCalendar.dayOfHour(hourIndex) < hourlyFromDay) {
+                continue;
+            }
+            if (hourIndex != currentHour) {
+                flush(hourly, currentHour, hour);
+                hour = new ReadingRollup.Builder();
+                currentHour = hourIndex;
+            }
+            hour.add(snapshot.epochSecond(i), snapshot.nano(i), snapshot.value(i), snapshot.scale(i));
+        }
+        flush(hourly, currentHour, hour);
+    }
+
+    /**
+     * Drops the hourly buckets of days before {@code day}; their daily buckets are all that is kept of them from now
+     * on. Callers serialise compaction with appends.
+     */
+    void dropHourlyBefore(long day) {
+        if (day == Long.MIN_VALUE) {
+            return;
+        }
+        long firstHour = firstHourOf(day);
+        long dropped = 0;
+        while (!hourly.isEmpty() && hourly.firstKey() < firstHour) {
+            hourly.pollFirstEntry();
+            dropped++;
+        }
+        bucketCount -= dropped;
+    }
+
+    private <T> List<T> downsampled(SeriesSnapshot snapshot, long fromDay, long toDay, Predicate<ReadingRollup> include,
+                                    BiFunction<Instant, BigDecimal, T> factory) {
+        List<T> readings = new ArrayList<>();
+        if (!snapshot.isCompacted()) {
+            return readings;
+        }
+        if (snapshot.hourlyFromDay != Long.MIN_VALUE) {
+            long lastDay = Math.min(toDay, snapshot.hourlyFromDay - 1);
+            if (fromDay <= lastDay) {
+                addBuckets(readings, daily.subMap(fromDay, true, lastDay, true).values(), include, factory);
+            }
+        }
+        long firstDay = Math.max(fromDay, snapshot.hourlyFromDay);
+        long lastDay = Math.min(toDay, snapshot.rawFromDay - 1);
+        if (firstDay <= lastDay) {
+            addBuckets(readings, hourly.subMap(firstHourOf(firstDay), true, firstHourOf(lastDay + 1), false).values(),
+                    include, factory);
+        }
+        return readings;
+    }
+
+    private static <T> void addBuckets(List<T> readings, Collection<ReadingRollup> buckets, Predicate<ReadingRollup> include,
+                                       BiFunction<Instant, BigDecimal, T> factory) {
+        for (ReadingRollup bucket : buckets) {
+            if (include.test(bucket)) {
+                readings.add(factory.apply(bucket.firstTime(), bucket.averageAsBigDecimal()));
+            }
+        }
+    }
+
+    private static long firstHourOf(long day) {
+        if (day < Long.MIN_VALUE / 24) {
+            return Long.MIN_VALUE;
+        }
+        return day > Long.MAX_VALUE / 24 ? Long.MAX_VALUE : day * 24;
+    }
+
+    private static ReadingRollup scan(SeriesSnapshot snapshot, ReadingRollup day, Instant from, Instant to) {
+        int start = Math.max(snapshot.indexFrom(day.firstTime()), snapshot.indexAfter(from));
+        int end = Math.min(snapshot.indexAfter(day.lastTime()), snapshot.indexFrom(to));
+        ReadingRollup.Builder builder = new ReadingRollup.Builder();
+        for (int i = start; i < end; i++) {
+            builder.add(snapshot.epochSecond(i), snapshot.nano(i), snapshot.value(i), snapshot.scale(i));
+        }
+        return builder.isEmpty() ? null : builder.build();
+    }
+
+    private void flushHour(long key, ReadingRollup.Builder builder, SeriesSnapshot snapshot) {
+        long day = TariffCalendar.dayOfHour(key);
+        if (day >= snapshot.hourlyFromDay && day < snapshot.rawFromDay) {
+            flush(hourly, key, builder);
+        }
+    }
+
+    private void flush(ConcurrentSkipListMap<Long, ReadingRollup> tier, long key, ReadingRollup.Builder builder) {
+        if (builder.isEmpty()) {
+            return;
+        }
+        ReadingRollup bucket = builder.build();
+        ReadingRollup existing = tier.putIfAbsent(key, bucket);
+        if (existing == null) {
+            bucketCount++;
+        } else {
+            tier.put(key, existing.merge(bucket));
+        }
+    }
+}
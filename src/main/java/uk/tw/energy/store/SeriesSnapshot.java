@@ -0,0 +1,129 @@
+package uk.tw.energy.store;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * An immutable view of a {@link ReadingSeries} as of one append. Readers take a snapshot once and can then walk it
+ * without locking; later appends never touch the slots a published snapshot can see.
+ * <p>
+ * The snapshot also records which tariff days have been compacted by the series' {@link RetentionPolicy}: it holds
+ * raw readings only for days from {@code rawFromDay} on, and hourly rollups are only kept from {@code hourlyFromDay}.
+ */
+public class SeriesSnapshot {
+
+    static final SeriesSnapshot EMPTY = new SeriesSnapshot(new HeapReadingColumns(0), 0);
+
+    final ReadingColumns columns;
+    private final int size;
+    final long rawFromDay;
+    final long hourlyFromDay;
+
+    SeriesSnapshot(ReadingColumns columns, int size) {
+        this(columns, size, Long.MIN_VALUE, Long.MIN_VALUE);
+    }
+
+    SeriesSnapshot(ReadingColumns columns, int size, long rawFromDay, long hourlyFromDay) {
+        this.columns = columns;
+        this.size = size;
+        this.rawFromDay = rawFromDay;
+        this.hourlyFromDay = hourlyFromDay;
+    }
+
+    /**
+     * Whether any day of this series is served from rollups rather than raw readings.
+     */
+    public boolean isCompacted() {
+        return rawFromDay != Long.MIN_VALUE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long epochSecond(int index) {
+        return columns.epochSecond(index);
+    }
+
+    public int nano(int index) {
+        return columns.nano(index);
+    }
+
+    public long value(int index) {
+        return columns.value(index);
+    }
+
+    public int scale(int index) {
+        return columns.scale(index);
+    }
+
+    public Instant time(int index) {
+        return Instant.ofEpochSecond(columns.epochSecond(index), columns.nano(index));
+    }
+
+    public BigDecimal reading(int index) {
+        return FixedPoint.toBigDecimal(columns.value(index), columns.scale(index));
+    }
+
+    /**
+     * Bytes held by the columns behind this snapshot on the Java heap and in direct memory, including unused capacity.
+     */
+    public long heapBytes() {
+        return columns.heapBytes();
+    }
+
+    public long directBytes() {
+        return columns.directBytes();
+    }
+
+    /**
+     * Index of the first reading strictly after the given instant.
+     */
+    public int indexAfter(Instant instant) {
+        return search(instant.getEpochSecond(), instant.getNano(), true);
+    }
+
+    /**
+     * Index of the first reading at or after the given instant.
+     */
+    public int indexFrom(Instant instant) {
+        return search(instant.getEpochSecond(), instant.getNano(), false);
+    }
+
+    public <T> List<T> toList(BiFunction<Instant, BigDecimal, T> factory) {
+        return toList(0, size, factory);
+    }
+
+    /**
+     * Readings strictly after {@code from} and strictly before {@code to}.
+     */
+    public <T> List<T> toList(Instant from, Instant to, BiFunction<Instant, BigDecimal, T> factory) {
+        int start = indexAfter(from);
+        int end = indexFrom(to);
+        return toList(start, Math.max(start, end), factory);
+    }
+
+    public <T> List<T> toList(int start, int end, BiFunction<Instant, BigDecimal, T> factory) {
+        List<T> readings = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            readings.add(factory.apply(time(i), reading(i)));
+        }
+        return readings;
+    }
+
+    static int compare(long leftSeconds, int leftNanos, long rightSeconds, int rightNanos) {
+        int bySeconds = Long.compare(leftSeconds, rightSeconds);
+        return bySeconds != 0 ? bySeconds : Integer.compare(leftNanos, rightNanos);
+    }
+
+    private int search(long epochSecond, int nano, boolean strictlyAfter) {
+        return columns.search(size, epochSecond, nano, strictlyAfter);
+    }
+}
@@ -0,0 +1,51 @@
+package uk.tw.energy.store;
+
+/**
+ * Where series keep their reading columns. {@link #OFF_HEAP} moves the column data out of the Java heap so large
+ * fleets do not inflate garbage collection work; {@link #COMPRESSED} packs readings into Gorilla-style blocks at a
+ * fraction of the bytes per reading, paying for it with a block decode on read. Reads and writes go through the same
+ * snapshot API whichever is chosen. Only the raw reading columns are affected: a series' rollups stay on the heap in
+ * every mode, so they count towards the total of any mode.
+ */
+public enum StorageMode {
+    HEAP {
+        @Override
+        ReadingColumns allocate(int capacity) {
+            return new HeapReadingColumns(capacity);
+        }
+    },
+    OFF_HEAP {
+        @Override
+        ReadingColumns allocate(int capacity) {
+            return OffHeapReadingColumns.allocate(DirectSlabAllocator.shared(), capacity);
+        }
+
+        @Override
+        public long directReservedBytes() {
+            return DirectSlabAllocator.shared().reservedBytes();
+        }
+    },
+    COMPRESSED {
+        @Override
+        ReadingColumns allocate(int capacity) {
+            return new CompressedReadingColumns(capacity);
+        }
+    };
+
+    abstract ReadingColumns allocate(int capacity);
+
+    /**
+     * Direct memory reserved for columns in this mode across every store, including slab space that no live series
+     * uses any more but that another slice of the same slab still holds.
+     */
+    public long directReservedBytes() {
+        return 0;
+    }
+
+    /**
+     * Parses a property value such as {@code heap}, {@code off-heap} or {@code compressed}.
+     */
+    public static StorageMode parse(String value) {
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,32 @@
+package uk.tw.energy.store;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of what the series of one {@link ReadingStore} hold. Each series adds the difference every append,
+ * compaction or restore makes to it, so reading the totals costs the same however many series there are.
+ */
+final class StoreFootprint {
+
+    private final LongAdder readings = new LongAdder();
+    private final LongAdder heapBytes = new LongAdder();
+    private final LongAdder directBytes = new LongAdder();
+
+    void add(long readingsDelta, long heapBytesDelta, long directBytesDelta) {
+        readings.add(readingsDelta);
+        heapBytes.add(heapBytesDelta);
+        directBytes.add(directBytesDelta);
+    }
+
+    long readings() {
+        return readings.sum();
+    }
+
+    long heapBytes() {
+        return heapBytes.sum();
+    }
+
+    long directBytes() {
+        return directBytes.sum();
+    }
+}
@@ -0,0 +1,176 @@
+package uk.tw.energy.store;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps reading times to the hours, days and weeks that tariffs and usage reports are grouped by, in the configured
+ * tariff zone. Tariff days are the zone's local days shifted back by eight hours, the same convention
+ * {@code PricePlan#getPrice} uses; tariff weeks start on the Monday tariff day.
+ * <p>
+ * Bucketing is integer arithmetic on epoch seconds. The zone's offset is looked up once per stretch between two
+ * offset transitions and reused for every time inside it, so grouping a reading allocates nothing.
+ */
+public class TariffCalendar {
+
+    private static final long TARIFF_DAY_START_HOUR = 8;
+    private static final long TARIFF_DAY_SHIFT_SECONDS = TimeUnit.HOURS.toSeconds(TARIFF_DAY_START_HOUR);
+    private static final long SECONDS_PER_HOUR = TimeUnit.HOURS.toSeconds(1);
+    private static final long SECONDS_PER_DAY = TimeUnit.DAYS.toSeconds(1);
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final ZoneId zone;
+    private final ZoneRules rules;
+    private volatile OffsetPeriod period;
+
+    public TariffCalendar(ZoneId zone) {
+        this.zone = zone;
+        this.rules = zone.getRules();
+        this.period = periodOf(0);
+    }
+
+    public static TariffCalendar systemDefault() {
+        return new TariffCalendar(ZoneId.systemDefault());
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    public long hourIndex(long epochSecond) {
+        long shifted = epochSecond - TARIFF_DAY_SHIFT_SECONDS;
+        return Math.floorDiv(shifted + offsetAt(shifted), SECONDS_PER_HOUR);
+    }
+
+    public long dayIndex(long epochSecond) {
+        return dayOfHour(hourIndex(epochSecond));
+    }
+
+    public static long dayOfHour(long hourIndex) {
+        return Math.floorDiv(hourIndex, 24);
+    }
+
+    public static DayOfWeek dayOfWeek(long dayIndex) {
+        // day 0 is 1970-01-01, a Thursday
+        return DayOfWeek.of((int) Math.floorMod(dayIndex + 3, 7) + 1);
+    }
+
+    /**
+     * Index of the tariff week a tariff day falls in; week 0 starts on Monday 1969-12-29.
+     */
+    public static long weekOfDay(long dayIndex) {
+        return Math.floorDiv(dayIndex + 3, 7);
+    }
+
+    /**
+     * Minutes since Monday 00:00 on the zone's wall clock, the position {@code TariffTable} prices are laid out by.
+     */
+    public int minuteOfWeek(long epochSecond) {
+        long local = epochSecond + offsetAt(epochSecond);
+        long day = Math.floorDiv(local, SECONDS_PER_DAY);
+        int minuteOfDay = (int) (Math.floorMod(local, SECONDS_PER_DAY) / 60);
+        return (int) Math.floorMod(day + 3, 7) * MINUTES_PER_DAY + minuteOfDay;
+    }
+
+    /**
+     * The instant a tariff day starts: 08:00 local time on its date.
+     */
+    public Instant dayStart(long dayIndex) {
+        return LocalDate.ofEpochDay(dayIndex).atTime(LocalTime.of((int) TARIFF_DAY_START_HOUR, 0)).atZone(zone).toInstant();
+    }
+
+    /**
+     * The tariff day that {@code instant} falls in.
+     */
+    public Window day(Instant instant) {
+        long day = dayIndex(instant.getEpochSecond());
+        return new Window(day, day + 1);
+    }
+
+    /**
+     * The tariff week, Monday to Sunday, that {@code instant} falls in.
+     */
+    public Window week(Instant instant) {
+        long monday = weekOfDay(dayIndex(instant.getEpochSecond())) * 7 - 3;
+        return new Window(monday, monday + 7);
+    }
+
+    private int offsetAt(long epochSecond) {
+        OffsetPeriod current = period;
+        if (epochSecond < current.from || epochSecond >= current.to) {
+            current = periodOf(epochSecond);
+            period = current;
+        }
+        return current.offsetSeconds;
+    }
+
+    private OffsetPeriod periodOf(long epochSecond) {
+        Instant instant = Instant.ofEpochSecond(epochSecond);
+        int offset = rules.getOffset(instant).getTotalSeconds();
+        if (rules.isFixedOffset()) {
+            return new OffsetPeriod(Long.MIN_VALUE, Long.MAX_VALUE, offset);
+        }
+        ZoneOffsetTransition previous = rules.previousTransition(instant.plusSeconds(1));
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        return new OffsetPeriod(previous == null ? Long.MIN_VALUE : previous.toEpochSecond(),
+                next == null ? Long.MAX_VALUE : next.toEpochSecond(), offset);
+    }
+
+    /**
+     * A run of whole tariff days, worked out once for a query. {@link #from} is a nanosecond before the first day
+     * starts so that range queries, which exclude both ends, still take in a reading made exactly on the boundary.
+     */
+    public class Window {
+        private final long fromDay;
+        private final long toDay;
+
+        private Window(long fromDay, long toDay) {
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+        }
+
+        public long getFromDay() {
+            return fromDay;
+        }
+
+        /**
+         * The first day after the window.
+         */
+        public long getToDay() {
+            return toDay;
+        }
+
+        public Instant from() {
+            return dayStart(fromDay).minusNanos(1);
+        }
+
+        public Instant to() {
+            return dayStart(toDay);
+        }
+
+        /**
+         * The window of the same length just before this one.
+         */
+        public Window previous() {
+            return new Window(2 * fromDay - toDay, fromDay);
+        }
+    }
+
+    private static final class OffsetPeriod {
+        private final long from;
+        private final long to;
+        private final int offsetSeconds;
+
+        private OffsetPeriod(long from, long to, int offsetSeconds) {
+            this.from = from;
+            this.to = to;
+            this.offsetSeconds = offsetSeconds;
+        }
+    }
+}
@@ -1,30 +1,50 @@
 package uk.tw.energy.controller;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import uk.tw.energy.builders.MeterReadingsBuilder;
 import uk.tw.energy.domain.ElectricityReading;
 import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.exception.BadRequest;
+import uk.tw.energy.service.BatchReadingIngestService;
 import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.ReadingIngestPipeline;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 
 public class MeterReadingControllerTest {
 
     private static final String SMART_METER_ID = "10101010";
     private MeterReadingController meterReadingController;
     private MeterReadingService meterReadingService;
+    private ObjectMapper objectMapper;
 
     @BeforeEach
     public void setUp() {
         this.meterReadingService = new MeterReadingService(new HashMap<>(),new HashMap<>());
-        this.meterReadingController = new MeterReadingController(meterReadingService);
+        objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.meterReadingController = new MeterReadingController(meterReadingService,
+                new BatchReadingIngestService(meterReadingService, objectMapper), new ReadingIngestPipeline(meterReadingService),
+                objectMapper);
     }
 
     @Test
@@ -45,6 +65,17 @@ public class MeterReadingControllerTest {
         assertThat(meterReadingController.storeReadings(meterReadings).getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @Test
+    public void givenReadingsThatCannotBeStoredExactlyShouldRejectThemAsABadRequest() {
+        for (String reading : new String[]{"0.1234567", "9300000000000", "-9300000000000"}) {
+            MeterReadings meterReadings = new MeterReadings(SMART_METER_ID, Collections.singletonList(
+                    new ElectricityReading(Instant.parse("2021-11-22T00:00:00Z"), new BigDecimal(reading))));
+
+            assertThatThrownBy(() -> meterReadingController.storeReadings(meterReadings)).isInstanceOf(BadRequest.class);
+        }
+        assertThat(meterReadingService.getReadings(SMART_METER_ID)).isEmpty();
+    }
+
     @Test
     public void givenMultipleBatchesOfMeterReadingsShouldStore() {
         MeterReadings meterReadings = new MeterReadingsBuilder().setSmartMeterId(SMART_METER_ID)
@@ -61,6 +92,7 @@ public class MeterReadingControllerTest {
         List<ElectricityReading> expectedElectricityReadings = new ArrayList<>();
         expectedElectricityReadings.addAll(meterReadings.getElectricityReadings());
         expectedElectricityReadings.addAll(otherMeterReadings.getElectricityReadings());
+        expectedElectricityReadings.sort(Comparator.comparing(ElectricityReading::getTime));
 
         assertThat(meterReadingService.getReadings(SMART_METER_ID).get()).isEqualTo(expectedElectricityReadings);
     }
@@ -83,6 +115,37 @@ public class MeterReadingControllerTest {
 
     @Test
     public void givenMeterIdThatIsNotRecognisedShouldReturnNotFound() {
-        assertThat(meterReadingController.readReadings(SMART_METER_ID).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(meterReadingController.readReadings(SMART_METER_ID, null, null, null, null).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void givenLimitShouldStreamOnePageAndTheCursorForTheNext() throws IOException {
+        MeterReadings meterReadings = new MeterReadingsBuilder().setSmartMeterId(SMART_METER_ID)
+                .generateElectricityReadings(7)
+                .build();
+        meterReadingController.storeReadings(meterReadings);
+        List<ElectricityReading> expected = meterReadingService.getReadings(SMART_METER_ID).get();
+
+        ResponseEntity<StreamingResponseBody> first = meterReadingController.readReadings(SMART_METER_ID, null, null, 5, null);
+        String cursor = first.getHeaders().getFirst(MeterReadingController.NEXT_CURSOR_HEADER);
+        ResponseEntity<StreamingResponseBody> second = meterReadingController.readReadings(SMART_METER_ID, null, null, 5, cursor);
+
+        assertThat(readingsOf(first)).isEqualTo(expected.subList(0, 5));
+        assertThat(readingsOf(second)).isEqualTo(expected.subList(5, 7));
+        assertThat(second.getHeaders().containsKey(MeterReadingController.NEXT_CURSOR_HEADER)).isFalse();
+    }
+
+    @Test
+    public void givenMalformedCursorShouldRejectTheRequest() {
+        meterReadingController.storeReadings(new MeterReadingsBuilder().setSmartMeterId(SMART_METER_ID).generateElectricityReadings().build());
+
+        assertThatThrownBy(() -> meterReadingController.readReadings(SMART_METER_ID, null, null, 5, "not-a-cursor"))
+                .isInstanceOf(BadRequest.class);
+    }
+
+    private List<ElectricityReading> readingsOf(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        response.getBody().writeTo(body);
+        return objectMapper.readValue(body.toByteArray(), new TypeReference<List<ElectricityReading>>() { });
     }
 }
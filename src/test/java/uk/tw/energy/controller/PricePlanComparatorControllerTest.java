@@ -5,11 +5,16 @@ import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
 import uk.tw.energy.domain.DayCostElectricity;
 import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.GasPricePlan;
+import uk.tw.energy.domain.GasReading;
 import uk.tw.energy.domain.PricePlan;
 import uk.tw.energy.domain.PricePlanCost;
+import uk.tw.energy.exception.BadRequest;
+import uk.tw.energy.exception.ServiceUnavailable;
 import uk.tw.energy.service.AccountService;
 import uk.tw.energy.service.MeterReadingService;
 import uk.tw.energy.service.PricePlanService;
+import uk.tw.energy.store.TariffCalendar;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -19,22 +24,28 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 
 public class PricePlanComparatorControllerTest {
 
     private static final String PRICE_PLAN_1_ID = "test-supplier";
     private static final String PRICE_PLAN_2_ID = "best-supplier";
     private static final String PRICE_PLAN_3_ID = "second-best-supplier";
+    private static final String GAS_PRICE_PLAN_1_ID = "gas-ten-supplier";
+    private static final String GAS_PRICE_PLAN_2_ID = "gas-best-supplier";
     private static final String SMART_METER_ID = "smart-meter-id";
     private PricePlanComparatorController controller;
     private MeterReadingService meterReadingService;
@@ -49,11 +60,16 @@ public class PricePlanComparatorControllerTest {
         PricePlan pricePlan3 = new PricePlan(PRICE_PLAN_3_ID, null, BigDecimal.valueOf(2), peakTimeMultipliers);
 
         List<PricePlan> pricePlans = Arrays.asList(pricePlan1, pricePlan2, pricePlan3);
-        PricePlanService tariffService = new PricePlanService(pricePlans, meterReadingService);
+        List<GasPricePlan> gasPricePlans = Arrays.asList(
+                new GasPricePlan(GAS_PRICE_PLAN_1_ID, null, BigDecimal.valueOf(3), peakTimeMultipliers),
+                new GasPricePlan(GAS_PRICE_PLAN_2_ID, null, BigDecimal.ONE, peakTimeMultipliers));
+        PricePlanService tariffService = new PricePlanService(pricePlans, gasPricePlans, meterReadingService);
 
         Map<String, String> meterToTariffs = new HashMap<>();
         meterToTariffs.put(SMART_METER_ID, PRICE_PLAN_1_ID);
-        accountService = new AccountService(meterToTariffs);
+        Map<String, String> gasMeterToTariffs = new HashMap<>();
+        gasMeterToTariffs.put(SMART_METER_ID, GAS_PRICE_PLAN_1_ID);
+        accountService = new AccountService(meterToTariffs, gasMeterToTariffs);
 
         controller = new PricePlanComparatorController(tariffService, accountService);
     }
@@ -73,7 +89,17 @@ public class PricePlanComparatorControllerTest {
         Map<String, Object> expected = new HashMap<>();
         expected.put(PricePlanComparatorController.PRICE_PLAN_ID_KEY, PRICE_PLAN_1_ID);
         expected.put(PricePlanComparatorController.PRICE_PLAN_COMPARISONS_KEY, expectedPricePlanToCost);
-        assertThat(controller.calculatedCostForEachPricePlan(SMART_METER_ID).getBody()).isEqualTo(expected);
+        assertThat(controller.calculatedCostForEachPricePlan(SMART_METER_ID).join().getBody()).isEqualTo(expected);
+    }
+
+    @Test
+    public void givenComputePoolIsFullShouldAskTheCallerToRetry() {
+        PricePlanComparatorController saturated = new PricePlanComparatorController(
+                new PricePlanService(Collections.emptyList(), meterReadingService), accountService,
+                task -> { throw new RejectedExecutionException(); });
+
+        assertThatThrownBy(() -> saturated.calculatedCostForEachPricePlan(SMART_METER_ID))
+                .isInstanceOf(ServiceUnavailable.class);
     }
 
     @Test
@@ -88,7 +114,7 @@ public class PricePlanComparatorControllerTest {
         expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_3_ID, BigDecimal.valueOf(19.0000).setScale(4,RoundingMode.HALF_UP )));
         expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_1_ID, BigDecimal.valueOf(95.0000).setScale(4,RoundingMode.HALF_UP)));
 
-        assertThat(controller.recommendCheapestPricePlans(SMART_METER_ID, null).getBody()).isEqualTo(expectedPricePlanToCost);
+        assertThat(controller.recommendCheapestPricePlans(SMART_METER_ID, null).join().getBody()).isEqualTo(expectedPricePlanToCost);
     }
 
 
@@ -103,7 +129,7 @@ public class PricePlanComparatorControllerTest {
         expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_2_ID, BigDecimal.valueOf(9.375).setScale(4,RoundingMode.HALF_UP)));
         expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_3_ID, BigDecimal.valueOf(18.75).setScale(4,RoundingMode.HALF_UP)));
 
-        assertThat(controller.recommendCheapestPricePlans(SMART_METER_ID, 2).getBody()).isEqualTo(expectedPricePlanToCost);
+        assertThat(controller.recommendCheapestPricePlans(SMART_METER_ID, 2).join().getBody()).isEqualTo(expectedPricePlanToCost);
     }
 
     @Test
@@ -118,12 +144,57 @@ public class PricePlanComparatorControllerTest {
         expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_3_ID, BigDecimal.valueOf(28.0).setScale(4,RoundingMode.HALF_UP)));
         expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_1_ID, BigDecimal.valueOf(140.0).setScale(4,RoundingMode.HALF_UP)));
 
-        assertThat(controller.recommendCheapestPricePlans(SMART_METER_ID, 5).getBody()).isEqualTo(expectedPricePlanToCost);
+        assertThat(controller.recommendCheapestPricePlans(SMART_METER_ID, 5).join().getBody()).isEqualTo(expectedPricePlanToCost);
+    }
+
+    @Test
+    public void shouldPriceGasReadingsOnGasPlansOnly() {
+        meterReadingService.storeReadings(SMART_METER_ID, Arrays.asList(
+                new ElectricityReading(Instant.now().minusSeconds(3600), BigDecimal.valueOf(100.0)),
+                new ElectricityReading(Instant.now(), BigDecimal.valueOf(100.0))));
+        meterReadingService.storeGasReadings(SMART_METER_ID, Arrays.asList(
+                new GasReading(Instant.now().minusSeconds(3600), BigDecimal.valueOf(15.0)),
+                new GasReading(Instant.now(), BigDecimal.valueOf(5.0))));
+
+        Map<String, BigDecimal> expectedPricePlanToCost = new HashMap<>();
+        expectedPricePlanToCost.put(GAS_PRICE_PLAN_1_ID, BigDecimal.valueOf(30.0).setScale(4, RoundingMode.HALF_UP));
+        expectedPricePlanToCost.put(GAS_PRICE_PLAN_2_ID, BigDecimal.valueOf(10.0).setScale(4, RoundingMode.HALF_UP));
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put(PricePlanComparatorController.PRICE_PLAN_ID_KEY, GAS_PRICE_PLAN_1_ID);
+        expected.put(PricePlanComparatorController.PRICE_PLAN_COMPARISONS_KEY, expectedPricePlanToCost);
+        assertThat(controller.calculatedGasCostForEachPricePlan(SMART_METER_ID).join().getBody()).isEqualTo(expected);
+
+        List<Map.Entry<String, BigDecimal>> expectedRecommendation = new ArrayList<>();
+        expectedRecommendation.add(new AbstractMap.SimpleEntry<>(GAS_PRICE_PLAN_2_ID, BigDecimal.valueOf(10.0).setScale(4, RoundingMode.HALF_UP)));
+        assertThat(controller.recommendCheapestGasPricePlans(SMART_METER_ID, 1).join().getBody()).isEqualTo(expectedRecommendation);
+    }
+
+    @Test
+    public void shouldCostLastWeeksGasOnTheMetersGasPlan() {
+        TariffCalendar.Window lastWeek = meterReadingService.getCalendar().week(Instant.now()).previous();
+        Instant monday = lastWeek.from().plusNanos(1);
+        meterReadingService.storeGasReadings(SMART_METER_ID, Arrays.asList(
+                new GasReading(monday.plusSeconds(60), BigDecimal.valueOf(2)),
+                new GasReading(monday.plusSeconds(120), BigDecimal.valueOf(4))));
+
+        Map<String, BigDecimal> expectedWeekCost = new HashMap<>();
+        expectedWeekCost.put(DateTimeFormatter.ofPattern(PricePlanService.YYYY_MM_DD)
+                .format(monday.atZone(meterReadingService.getCalendar().getZone())), BigDecimal.valueOf(6));
+        expectedWeekCost.put(SMART_METER_ID, BigDecimal.valueOf(216.0).setScale(4, RoundingMode.HALF_UP));
+
+        assertThat(controller.getPriceOfLastWeekGasUsage(SMART_METER_ID).join().getBody()).isEqualTo(expectedWeekCost);
+    }
+
+    @Test
+    public void givenNoGasPlanForMeterShouldRejectLastWeeksGasCost() {
+        assertThatThrownBy(() -> controller.getPriceOfLastWeekGasUsage("not-found"))
+                .isInstanceOf(BadRequest.class);
     }
 
     @Test
     public void givenNoMatchingMeterIdShouldReturnNotFound() {
-        assertThat(controller.calculatedCostForEachPricePlan("not-found").getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(controller.calculatedCostForEachPricePlan("not-found").join().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
     }
 
     @Test
@@ -135,13 +206,13 @@ public class PricePlanComparatorControllerTest {
         ElectricityReading otherReading = new ElectricityReading(todayStart.minusMillis(TimeUnit.DAYS.toMillis(dayOfWeek+6)).plusSeconds(1),BigDecimal.valueOf(15));
 
         meterReadingService.storeReadings(SMART_METER_ID,Arrays.asList(electricityReading,otherReading));
-        System.out.println(controller.getPriceOfLastWeekUsage(SMART_METER_ID));
+        System.out.println(controller.getPriceOfLastWeekUsage(SMART_METER_ID).join());
         Map<String,BigDecimal> expectedWeekCost = new HashMap<>();
         expectedWeekCost.put("2022-01-03",BigDecimal.valueOf(25));
         expectedWeekCost.put("2021-12-27",BigDecimal.valueOf(15));
         expectedWeekCost.put(SMART_METER_ID,BigDecimal.valueOf(9600.0000).setScale(4,RoundingMode.HALF_UP));
 
-        assertThat(controller.getPriceOfLastWeekUsage(SMART_METER_ID).getBody()).isEqualTo(expectedWeekCost);
+        assertThat(controller.getPriceOfLastWeekUsage(SMART_METER_ID).join().getBody()).isEqualTo(expectedWeekCost);
 
     }
 
@@ -160,7 +231,7 @@ public class PricePlanComparatorControllerTest {
 
         expectedWeekCost.put(SMART_METER_ID,BigDecimal.valueOf(4800.0000).setScale(4,RoundingMode.HALF_UP));
 
-        assertThat(controller.getDayCostElectricityUsage(SMART_METER_ID,dayCostElectricity).getBody()).isEqualTo(expectedWeekCost);
+        assertThat(controller.getDayCostElectricityUsage(SMART_METER_ID,dayCostElectricity).join().getBody()).isEqualTo(expectedWeekCost);
 
     }
     @Test
@@ -179,7 +250,7 @@ public class PricePlanComparatorControllerTest {
         expectedWeekCost.put("FRIDAY",BigDecimal.valueOf(2400.0000).setScale(4,RoundingMode.HALF_UP));
         expectedWeekCost.put("SATURDAY",BigDecimal.valueOf(4800.0000).setScale(4,RoundingMode.HALF_UP));
 
-        assertThat(controller.getCurrentPricePlanRankForDifferentDaysOfWeek(SMART_METER_ID,dayCostElectricity).getBody()).isEqualTo(expectedWeekCost);
+        assertThat(controller.getCurrentPricePlanRankForDifferentDaysOfWeek(SMART_METER_ID,dayCostElectricity).join().getBody()).isEqualTo(expectedWeekCost);
 
     }
     @Test
@@ -203,7 +274,7 @@ public class PricePlanComparatorControllerTest {
         expectedWeekCost.put("SATURDAY",pricePlanCosts1);
         expectedWeekCost.put("SUNDAY",pricePlanCosts);
 
-        assertThat(controller.getPricePlanRank(SMART_METER_ID,dayCostElectricity,limit).getBody()).isEqualTo(expectedWeekCost);
+        assertThat(controller.getPricePlanRank(SMART_METER_ID,dayCostElectricity,limit).join().getBody()).isEqualTo(expectedWeekCost);
 
     }
 
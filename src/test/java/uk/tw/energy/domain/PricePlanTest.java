@@ -6,11 +6,14 @@ import org.junit.jupiter.api.Test;
 import java.math.BigDecimal;
 import java.time.DayOfWeek;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.Month;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 
 public class PricePlanTest {
@@ -19,11 +22,19 @@ public class PricePlanTest {
 
     @Test
     public void shouldReturnTheEnergySupplierGivenInTheConstructor() {
-        PricePlan pricePlan = new PricePlan(null, ENERGY_SUPPLIER_NAME, null, null);
+        PricePlan pricePlan = new PricePlan(null, ENERGY_SUPPLIER_NAME, BigDecimal.ONE, null);
 
         assertThat(pricePlan.getEnergySupplier()).isEqualTo(ENERGY_SUPPLIER_NAME);
     }
 
+    @Test
+    public void givenNoUnitRateShouldRejectThePlan() {
+        assertThatThrownBy(() -> new PricePlan("plan", ENERGY_SUPPLIER_NAME, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new GasPricePlan("plan", ENERGY_SUPPLIER_NAME, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test
     public void shouldReturnTheBasePriceGivenAnOrdinaryDateTime() throws Exception {
         LocalDateTime normalDateTime = LocalDateTime.of(2017, Month.AUGUST, 31, 12, 0, 0);
@@ -60,4 +71,42 @@ public class PricePlanTest {
         assertThat(price).isCloseTo(BigDecimal.TEN, Percentage.withPercentage(1));
     }
 
+    @Test
+    public void givenEveryHalfHourOfAWeekShouldPriceAsTheDayMultipliersDid() {
+        List<PricePlan.PeakTimeMultiplier> peakTimeMultipliers = Arrays.asList(
+                new PricePlan.PeakTimeMultiplier(DayOfWeek.SUNDAY, BigDecimal.valueOf(0.8)),
+                new PricePlan.PeakTimeMultiplier(DayOfWeek.MONDAY, BigDecimal.valueOf(0.3)),
+                new PricePlan.PeakTimeMultiplier(DayOfWeek.MONDAY, BigDecimal.valueOf(5)),
+                new PricePlan.PeakTimeMultiplier(DayOfWeek.FRIDAY, BigDecimal.valueOf(1.25)));
+        PricePlan pricePlan = new PricePlan(null, null, BigDecimal.valueOf(0.21), peakTimeMultipliers);
+
+        LocalDateTime monday = LocalDateTime.of(2021, Month.NOVEMBER, 22, 0, 0);
+        for (int minute = 0; minute < 7 * 24 * 60; minute += 10) {
+            LocalDateTime dateTime = monday.plusMinutes(minute);
+            BigDecimal expected = peakTimeMultipliers.stream()
+                    .filter(multiplier -> multiplier.dayOfWeek.equals(dateTime.minusHours(8).getDayOfWeek()))
+                    .findFirst()
+                    .map(multiplier -> BigDecimal.valueOf(0.21).multiply(multiplier.multiplier))
+                    .orElse(BigDecimal.valueOf(0.21));
+
+            assertThat(pricePlan.getPrice(dateTime)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void givenTimeOfUseBandsShouldPriceTheirHalfHoursFromTheBand() {
+        PricePlan.TimeOfUseBand eveningPeak = new PricePlan.TimeOfUseBand(null, LocalTime.of(16, 0), LocalTime.of(19, 30), BigDecimal.valueOf(2));
+        PricePlan.TimeOfUseBand sundayNight = new PricePlan.TimeOfUseBand(DayOfWeek.SUNDAY, LocalTime.of(23, 0), LocalTime.MIDNIGHT, BigDecimal.valueOf(0.5));
+        PricePlan pricePlan = new PricePlan(null, null, BigDecimal.ONE,
+                Collections.singletonList(new PricePlan.PeakTimeMultiplier(DayOfWeek.WEDNESDAY, BigDecimal.TEN)),
+                Arrays.asList(eveningPeak, sundayNight));
+
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 30, 15, 59))).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 30, 16, 0))).isEqualByComparingTo(BigDecimal.valueOf(2));
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 31, 19, 29))).isEqualByComparingTo(BigDecimal.valueOf(2));
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.AUGUST, 31, 19, 30))).isEqualByComparingTo(BigDecimal.ONE);
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.SEPTEMBER, 3, 23, 45))).isEqualByComparingTo(BigDecimal.valueOf(0.5));
+        assertThat(pricePlan.getPrice(LocalDateTime.of(2017, Month.SEPTEMBER, 4, 0, 15))).isEqualByComparingTo(BigDecimal.ONE);
+    }
+
 }
@@ -2,15 +2,21 @@ package uk.tw.energy.service;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.Commodity;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 
 public class AccountServiceTest {
 
     private static final String PRICE_PLAN_ID = "price-plan-id";
+    private static final String OTHER_PRICE_PLAN_ID = "other-price-plan-id";
     private static final String SMART_METER_ID = "smart-meter-id";
 
     private AccountService accountService;
@@ -19,6 +25,8 @@ public class AccountServiceTest {
     public void setUp() {
         Map<String, String> smartMeterToPricePlanAccounts = new HashMap<>();
         smartMeterToPricePlanAccounts.put(SMART_METER_ID, PRICE_PLAN_ID);
+        smartMeterToPricePlanAccounts.put("smart-meter-1", PRICE_PLAN_ID);
+        smartMeterToPricePlanAccounts.put("smart-meter-2", OTHER_PRICE_PLAN_ID);
 
         accountService = new AccountService(smartMeterToPricePlanAccounts);
     }
@@ -27,4 +35,74 @@ public class AccountServiceTest {
     public void givenTheSmartMeterIdReturnsThePricePlanId() throws Exception {
         assertThat(accountService.getPricePlanIdForSmartMeterId(SMART_METER_ID)).isEqualTo(PRICE_PLAN_ID);
     }
+
+    @Test
+    public void givenAPricePlanIdReturnsTheMetersOnIt() {
+        assertThat(accountService.getSmartMeterIdsOnPricePlan(Commodity.ELECTRICITY, PRICE_PLAN_ID))
+                .containsExactlyInAnyOrder(SMART_METER_ID, "smart-meter-1");
+        assertThat(accountService.getSmartMeterIdsOnPricePlan(Commodity.ELECTRICITY, "unknown")).isEmpty();
+        assertThat(accountService.getSmartMeterIdsOnPricePlan(Commodity.GAS, PRICE_PLAN_ID)).isEmpty();
+        assertThat(accountService.getAccountCountsByPricePlan(Commodity.ELECTRICITY))
+                .containsOnly(entry(PRICE_PLAN_ID, 2), entry(OTHER_PRICE_PLAN_ID, 1));
+    }
+
+    @Test
+    public void givenABulkSwitchKeepsBothDirectionsInStep() {
+        Map<String, String> switches = new HashMap<>();
+        switches.put(SMART_METER_ID, OTHER_PRICE_PLAN_ID);
+        switches.put("smart-meter-3", PRICE_PLAN_ID);
+
+        accountService.switchPricePlans(Commodity.ELECTRICITY, switches);
+
+        assertThat(accountService.getPricePlanIdForSmartMeterId(SMART_METER_ID)).isEqualTo(OTHER_PRICE_PLAN_ID);
+        assertThat(accountService.getSmartMeterIdsOnPricePlan(Commodity.ELECTRICITY, PRICE_PLAN_ID))
+                .containsExactlyInAnyOrder("smart-meter-1", "smart-meter-3");
+        assertThat(accountService.getSmartMeterIdsOnPricePlan(Commodity.ELECTRICITY, OTHER_PRICE_PLAN_ID))
+                .containsExactlyInAnyOrder(SMART_METER_ID, "smart-meter-2");
+    }
+
+    @Test
+    public void givenASwitchWithAMissingPlanAppliesNoneOfIt() {
+        Map<String, String> switches = new HashMap<>();
+        switches.put(SMART_METER_ID, OTHER_PRICE_PLAN_ID);
+        switches.put("smart-meter-1", null);
+
+        assertThatThrownBy(() -> accountService.switchPricePlans(Commodity.ELECTRICITY, switches))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(accountService.getPricePlanIdForSmartMeterId(SMART_METER_ID)).isEqualTo(PRICE_PLAN_ID);
+    }
+
+    @Test
+    public void givenAMoveEveryAccountOnThePlanMoves() {
+        assertThat(accountService.movePricePlanAccounts(Commodity.ELECTRICITY, PRICE_PLAN_ID, OTHER_PRICE_PLAN_ID)).isEqualTo(2);
+
+        assertThat(accountService.getPricePlanIdForSmartMeterId("smart-meter-1")).isEqualTo(OTHER_PRICE_PLAN_ID);
+        assertThat(accountService.getAccountCountsByPricePlan(Commodity.ELECTRICITY)).containsOnly(entry(OTHER_PRICE_PLAN_ID, 3));
+        assertThat(accountService.movePricePlanAccounts(Commodity.ELECTRICITY, PRICE_PLAN_ID, OTHER_PRICE_PLAN_ID)).isZero();
+    }
+
+    @Test
+    public void givenConcurrentMovesReadersNeverSeeAHalfMovedPlan() {
+        Map<String, String> accounts = new HashMap<>();
+        for (int meter = 0; meter < 1000; meter++) {
+            accounts.put("smart-meter-" + meter, PRICE_PLAN_ID);
+        }
+        AccountService service = new AccountService(accounts);
+        AtomicBoolean moving = new AtomicBoolean(true);
+
+        CompletableFuture<Void> mover = CompletableFuture.runAsync(() -> {
+            for (int move = 0; move < 500; move++) {
+                service.movePricePlanAccounts(Commodity.ELECTRICITY, PRICE_PLAN_ID, OTHER_PRICE_PLAN_ID);
+                service.movePricePlanAccounts(Commodity.ELECTRICITY, OTHER_PRICE_PLAN_ID, PRICE_PLAN_ID);
+            }
+            moving.set(false);
+        });
+        while (moving.get()) {
+            assertThat(service.getAccountCountsByPricePlan(Commodity.ELECTRICITY).values()).containsExactly(1000);
+            int onEither = service.getSmartMeterIdsOnPricePlan(Commodity.ELECTRICITY, PRICE_PLAN_ID).size()
+                    + service.getSmartMeterIdsOnPricePlan(Commodity.ELECTRICITY, OTHER_PRICE_PLAN_ID).size();
+            assertThat(onEither % 1000).isZero();
+        }
+        mover.join();
+    }
 }
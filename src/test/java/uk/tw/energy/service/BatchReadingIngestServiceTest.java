@@ -0,0 +1,136 @@
+package uk.tw.energy.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.GasReading;
+import uk.tw.energy.domain.MeterIngestSummary;
+import uk.tw.energy.exception.BadRequest;
+import uk.tw.energy.exception.ServiceUnavailable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BatchReadingIngestServiceTest {
+
+    private MeterReadingService meterReadingService;
+    private BatchReadingIngestService batchReadingIngestService;
+
+    @BeforeEach
+    public void setUp() {
+        meterReadingService = new MeterReadingService(new HashMap<>(), new HashMap<>());
+        batchReadingIngestService = new BatchReadingIngestService(meterReadingService, new ObjectMapper());
+    }
+
+    @Test
+    public void givenReadingsForSeveralMetersShouldStoreEachAndSummarise() throws IOException {
+        String body = "[" +
+                "{\"smartMeterId\":\"meter-1\",\"electricityReadings\":[" +
+                "{\"time\":\"2021-11-27T03:00:00Z\",\"reading\":0.5},{\"time\":1637985600,\"reading\":1.25}]}," +
+                "{\"gasReadings\":[{\"time\":\"2021-11-27T03:00:00Z\",\"reading\":2}],\"smartMeterId\":\"meter-2\"}" +
+                "]";
+
+        List<MeterIngestSummary> summaries = batchReadingIngestService.storeBatch(stream(body));
+
+        assertThat(summaries).containsExactly(new MeterIngestSummary("meter-1", 2, 0), new MeterIngestSummary("meter-2", 1, 0));
+        assertThat(meterReadingService.getReadings("meter-1").get()).containsExactly(
+                new ElectricityReading(Instant.parse("2021-11-27T03:00:00Z"), new BigDecimal("0.5")),
+                new ElectricityReading(Instant.ofEpochSecond(1637985600), new BigDecimal("1.25")));
+        assertThat(meterReadingService.getGasReadings("meter-2").get()).containsExactly(
+                new GasReading(Instant.parse("2021-11-27T03:00:00Z"), new BigDecimal("2")));
+    }
+
+    @Test
+    public void givenInvalidReadingsShouldRejectOnlyThose() throws IOException {
+        String body = "[{\"smartMeterId\":\"meter-1\",\"electricityReadings\":[" +
+                "{\"time\":\"not-a-time\",\"reading\":1},{\"reading\":1},{\"time\":\"2021-11-27T03:00:00Z\",\"reading\":1}," +
+                "{\"time\":\"2021-11-27T04:00:00Z\"}, 42]}]";
+
+        List<MeterIngestSummary> summaries = batchReadingIngestService.storeBatch(stream(body));
+
+        assertThat(summaries).containsExactly(new MeterIngestSummary("meter-1", 1, 4));
+        assertThat(meterReadingService.getReadings("meter-1").get()).hasSize(1);
+    }
+
+    @Test
+    public void givenDocumentWithoutMeterIdShouldRejectItsReadings() throws IOException {
+        String body = "[{\"electricityReadings\":[{\"time\":\"2021-11-27T03:00:00Z\",\"reading\":1}]}]";
+
+        List<MeterIngestSummary> summaries = batchReadingIngestService.storeBatch(stream(body));
+
+        assertThat(summaries).containsExactly(new MeterIngestSummary(null, 0, 1));
+    }
+
+    @Test
+    public void givenMoreReadingsThanOneChunkShouldStoreThemAll() throws IOException {
+        int readings = BatchReadingIngestService.CHUNK_SIZE * 2 + 7;
+        StringBuilder body = new StringBuilder("[{\"smartMeterId\":\"meter-1\",\"electricityReadings\":[");
+        for (int i = 0; i < readings; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"time\":").append(1637985600 + i).append(",\"reading\":1}");
+        }
+        body.append("]}]");
+
+        batchReadingIngestService.storeBatch(stream(body.toString()));
+
+        assertThat(meterReadingService.getReadings("meter-1").get()).hasSize(readings);
+    }
+
+    @Test
+    public void givenMoreThanAChunkOfReadingsBeforeTheMeterIdShouldBeRejected() {
+        StringBuilder body = new StringBuilder("[{\"electricityReadings\":[");
+        for (int i = 0; i <= BatchReadingIngestService.CHUNK_SIZE; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"time\":").append(1637985600 + i).append(",\"reading\":1}");
+        }
+        body.append("],\"smartMeterId\":\"meter-1\"}]");
+
+        assertThatThrownBy(() -> batchReadingIngestService.storeBatch(stream(body.toString())))
+                .isInstanceOf(BadRequest.class)
+                .hasMessageContaining("smartMeterId");
+        assertThat(meterReadingService.getReadings("meter-1")).isEmpty();
+    }
+
+    @Test
+    public void givenAMalformedDocumentAfterStoredOnesShouldSayWhatWasAlreadyStored() {
+        String body = "[{\"smartMeterId\":\"meter-1\",\"electricityReadings\":[" +
+                "{\"time\":1637985600,\"reading\":1},{\"time\":1637985660,\"reading\":2}]}," +
+                "{\"smartMeterId\":\"meter-2\",\"electricityReadings\":[{\"time\":1637985600,\"reading\":1}]},oops]";
+
+        assertThatThrownBy(() -> batchReadingIngestService.storeBatch(stream(body)))
+                .isInstanceOf(BadRequest.class)
+                .hasMessageEndingWith("; 3 readings before it were already stored");
+        assertThat(meterReadingService.getReadings("meter-1").get()).hasSize(2);
+    }
+
+    @Test
+    public void givenBodyThatIsNotAnArrayShouldBeRejected() {
+        assertThatThrownBy(() -> batchReadingIngestService.storeBatch(stream("{\"smartMeterId\":\"meter-1\"}")))
+                .isInstanceOf(BadRequest.class);
+    }
+
+    @Test
+    public void givenThePipelineTurnsAChunkAwayShouldAnswerServiceUnavailable() {
+        ReadingIngestPipeline pipeline = new ReadingIngestPipeline(meterReadingService, true, 16, 1, 16, 3, new SimpleMeterRegistry());
+        pipeline.close();
+        BatchReadingIngestService service = new BatchReadingIngestService(pipeline, new ObjectMapper());
+        String body = "[{\"smartMeterId\":\"meter-1\",\"electricityReadings\":[{\"time\":1637985600,\"reading\":1}]}]";
+
+        assertThatThrownBy(() -> service.storeBatch(stream(body)))
+                .isInstanceOfSatisfying(ServiceUnavailable.class, e -> assertThat(e.getRetryAfterSeconds()).isEqualTo(3));
+        assertThat(meterReadingService.getReadings("meter-1")).isEmpty();
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
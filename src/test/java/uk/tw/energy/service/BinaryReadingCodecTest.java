@@ -0,0 +1,68 @@
+package uk.tw.energy.service;
+
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.exception.BadRequest;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BinaryReadingCodecTest {
+
+    @Test
+    public void givenEncodedReadingsShouldStoreTheSameReadingsAsJson() throws IOException {
+        List<ElectricityReading> readings = new ElectricityReadingsGenerator().generate(100);
+        MeterReadingService meterReadingService = new MeterReadingService(new HashMap<>(), new HashMap<>());
+
+        BinaryReadingCodec.Upload upload = BinaryReadingCodec.decode(new ByteArrayInputStream(encode("smart-meter-0", readings)));
+        meterReadingService.storeReadings(upload.getSmartMeterId(), upload.getReadings());
+
+        assertThat(upload.getSmartMeterId()).isEqualTo("smart-meter-0");
+        assertThat(meterReadingService.getReadings("smart-meter-0").get()).isEqualTo(readings);
+    }
+
+    @Test
+    public void givenTimesBeforeTheEpochAndNegativeValuesShouldRoundTrip() throws IOException {
+        List<ElectricityReading> readings = Arrays.asList(
+                new ElectricityReading(Instant.parse("1969-12-31T23:59:59.5Z"), new BigDecimal("-1.25")),
+                new ElectricityReading(Instant.parse("2021-11-22T00:00:00Z"), new BigDecimal("3.50")));
+        MeterReadingService meterReadingService = new MeterReadingService(new HashMap<>(), new HashMap<>());
+
+        BinaryReadingCodec.Upload upload = BinaryReadingCodec.decode(new ByteArrayInputStream(encode("meter", readings)));
+        meterReadingService.storeReadings(upload.getSmartMeterId(), upload.getReadings());
+
+        assertThat(meterReadingService.getReadings("meter").get()).extracting(ElectricityReading::getReading)
+                .containsExactly(new BigDecimal("-1.25"), new BigDecimal("3.50"));
+    }
+
+    @Test
+    public void givenTruncatedUploadShouldRejectIt() throws IOException {
+        byte[] encoded = encode("smart-meter-0", new ElectricityReadingsGenerator().generate(3));
+
+        assertThatThrownBy(() -> BinaryReadingCodec.decode(new ByteArrayInputStream(Arrays.copyOf(encoded, encoded.length - 1))))
+                .isInstanceOf(BadRequest.class);
+    }
+
+    @Test
+    public void givenScaleWiderThanTheStoreShouldRejectIt() {
+        byte[] upload = {1, 1, 'm', 7, 0};
+
+        assertThatThrownBy(() -> BinaryReadingCodec.decode(new ByteArrayInputStream(upload))).isInstanceOf(BadRequest.class);
+    }
+
+    private static byte[] encode(String smartMeterId, List<ElectricityReading> readings) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        BinaryReadingCodec.encode(smartMeterId, readings, ElectricityReading::getTime, ElectricityReading::getReading, body);
+        return body.toByteArray();
+    }
+}
@@ -0,0 +1,87 @@
+package uk.tw.energy.service;
+
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.DayCostElectricity;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.PricePlanCost;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CheapestPlansTest {
+
+    private static final String SMART_METER_ID = "smart-meter-id";
+
+    @Test
+    public void shouldKeepTheKCheapestInTheOrderAStableSortGives() {
+        Random random = new Random(7);
+        for (int k : new int[]{0, 1, 3, 50, 200}) {
+            long[] costs = random.longs(100, 0, 20).toArray();
+            CheapestPlans cheapest = new CheapestPlans(k);
+            for (int plan = 0; plan < costs.length; plan++) {
+                cheapest.offer(plan, costs[plan]);
+            }
+            cheapest.sort();
+
+            List<Integer> expected = IntStream.range(0, costs.length).boxed()
+                    .sorted(Comparator.comparingLong(plan -> costs[plan]))
+                    .limit(k)
+                    .collect(Collectors.toList());
+            List<Integer> actual = IntStream.range(0, cheapest.size()).map(cheapest::plan).boxed().collect(Collectors.toList());
+            assertThat(actual).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void shouldPickTheCheapestItemsInOrder() {
+        List<Integer> items = Arrays.asList(9, 4, 7, 1, 8, 2);
+
+        assertThat(CheapestPlans.cheapest(items, 3, Comparator.naturalOrder())).containsExactly(1, 2, 4);
+        assertThat(CheapestPlans.cheapest(items, 10, Comparator.naturalOrder())).containsExactly(1, 2, 4, 7, 8, 9);
+        assertThat(CheapestPlans.cheapest(items, 0, Comparator.naturalOrder())).isEmpty();
+    }
+
+    @Test
+    public void givenALimitRankShouldMatchTheHeadOfTheFullRanking() {
+        Random random = new Random(3);
+        List<PricePlan> pricePlans = new ArrayList<>();
+        for (int plan = 0; plan < 500; plan++) {
+            List<PricePlan.PeakTimeMultiplier> multipliers = new ArrayList<>();
+            for (DayOfWeek day : DayOfWeek.values()) {
+                multipliers.add(new PricePlan.PeakTimeMultiplier(day, BigDecimal.valueOf(50 + random.nextInt(200), 2)));
+            }
+            pricePlans.add(new PricePlan("plan-" + plan, null, BigDecimal.valueOf(1 + random.nextInt(50), 2), multipliers));
+        }
+        MeterReadingService meterReadingService = new MeterReadingService(new HashMap<>(), new HashMap<>());
+        Instant monday = Instant.parse("2021-11-22T12:00:00Z");
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int hour = 0; hour < 7 * 24; hour++) {
+            readings.add(new ElectricityReading(monday.plusSeconds(3600L * hour), BigDecimal.valueOf(random.nextInt(100), 1)));
+        }
+        meterReadingService.storeReadings(SMART_METER_ID, readings);
+        PricePlanService pricePlanService = new PricePlanService(pricePlans, meterReadingService);
+        DayCostElectricity request = new DayCostElectricity("plan-0", new ElectricityReading(monday, BigDecimal.ONE));
+
+        Map<String, List<PricePlanCost>> everyPlan = pricePlanService.getPricePlanRank(SMART_METER_ID, request, null);
+        Map<String, List<PricePlanCost>> cheapestFive = pricePlanService.getPricePlanRank(SMART_METER_ID, request, 5);
+
+        assertThat(cheapestFive.keySet()).isEqualTo(everyPlan.keySet()).isNotEmpty();
+        everyPlan.forEach((day, ranking) -> {
+            assertThat(ranking).hasSize(pricePlans.size());
+            assertThat(cheapestFive.get(day)).isEqualTo(ranking.subList(0, 5));
+        });
+    }
+}
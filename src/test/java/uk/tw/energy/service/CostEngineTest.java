@@ -0,0 +1,98 @@
+package uk.tw.energy.service;
+
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.store.FixedPoint;
+import uk.tw.energy.store.ReadingBatch;
+import uk.tw.energy.store.ReadingRollup;
+import uk.tw.energy.store.ReadingSeries;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CostEngineTest {
+
+    private static final Instant START = Instant.parse("2021-11-22T00:00:00Z");
+
+    @Test
+    public void givenRandomReadingsShouldMatchTheBigDecimalCalculations() {
+        Random random = new Random(11);
+        for (int meter = 0; meter < 500; meter++) {
+            ReadingRollup rollup = randomRollup(random);
+            BigDecimal price = BigDecimal.valueOf(random.nextInt(5_000), random.nextInt(4))
+                    .multiply(BigDecimal.valueOf(random.nextInt(300), random.nextInt(3)));
+            // whole quarter hours, which the old double-based elapsed time represented exactly
+            long seconds = 900L * random.nextInt(30 * 24 * 4);
+
+            BigDecimal average = rollup.sumAsBigDecimal().divide(BigDecimal.valueOf(rollup.getCount()), RoundingMode.HALF_UP);
+            BigDecimal dayUsage = average.multiply(BigDecimal.valueOf(24)).setScale(4, RoundingMode.HALF_UP);
+            long engineAverage = CostEngine.averageReading(rollup);
+            int scale = CostEngine.averageScale(rollup);
+
+            assertThat(BigDecimal.valueOf(engineAverage, scale)).isEqualTo(average);
+            assertThat(CostEngine.toBigDecimal(CostEngine.usageOver(engineAverage, scale, seconds)))
+                    .isEqualTo(average.multiply(BigDecimal.valueOf(seconds / 3600.0)).setScale(4, RoundingMode.HALF_UP));
+            assertThat(CostEngine.toBigDecimal(CostEngine.dayUsage(engineAverage, scale))).isEqualTo(dayUsage);
+            assertThat(CostEngine.toBigDecimal(CostEngine.cost(CostEngine.dayUsage(engineAverage, scale), CostEngine.SCALE, price)))
+                    .isEqualTo(dayUsage.multiply(price).setScale(4, RoundingMode.HALF_UP));
+            assertThat(CostEngine.toBigDecimal(CostEngine.dayCost(engineAverage, scale, price)))
+                    .isEqualTo(average.multiply(BigDecimal.valueOf(24)).multiply(price).setScale(4, RoundingMode.HALF_UP));
+        }
+    }
+
+    @Test
+    public void shouldWorkOutUsageFromTheExactElapsedTime() {
+        assertThat(CostEngine.usageOver(18, 2, 1)).isEqualTo(1);
+        assertThat(CostEngine.usageOver(3, 0, 1200)).isEqualTo(10_000);
+    }
+
+    @Test
+    public void givenElapsedTimeOffAQuarterHourShouldDivideExactlyWhereTheDoubleHoursRoundedDown() {
+        // 4 s is 0.0011111111111111111 h as a double, which is just short of the exact 1/900 h
+        long seconds = 4;
+        BigDecimal average = new BigDecimal("0.045");
+
+        BigDecimal exact = average.multiply(BigDecimal.valueOf(seconds)).divide(BigDecimal.valueOf(3600), 4, RoundingMode.HALF_UP);
+        BigDecimal viaDouble = average.multiply(BigDecimal.valueOf(seconds / 3600.0)).setScale(4, RoundingMode.HALF_UP);
+
+        assertThat(CostEngine.toBigDecimal(CostEngine.usageOver(45, 3, seconds))).isEqualTo(exact).isEqualTo(new BigDecimal("0.0001"));
+        assertThat(viaDouble).isEqualTo(new BigDecimal("0.0000"));
+    }
+
+    @Test
+    public void shouldHoldOnlyReadingsItCanGiveBackExactly() {
+        for (String exact : new String[]{"0.123456", "1.5000000", "9223372036854.775807", "-9223372036854.775808"}) {
+            BigDecimal reading = new BigDecimal(exact);
+            BigDecimal back = FixedPoint.toBigDecimal(FixedPoint.toUnscaled(reading), FixedPoint.scaleOf(reading));
+            assertThat(back.compareTo(reading)).isZero();
+        }
+        for (String inexact : new String[]{"0.1234567", "9223372036854.775808", "1E13", "-1E13"}) {
+            assertThatThrownBy(() -> FixedPoint.toUnscaled(new BigDecimal(inexact))).isInstanceOf(ArithmeticException.class);
+        }
+    }
+
+    @Test
+    public void shouldRoundHalfAwayFromZeroLikeBigDecimal() {
+        for (long unscaled = -25; unscaled <= 25; unscaled++) {
+            assertThat(BigDecimal.valueOf(FixedPoint.rescale(unscaled, 1, 0)))
+                    .isEqualTo(BigDecimal.valueOf(unscaled, 1).setScale(0, RoundingMode.HALF_UP));
+        }
+    }
+
+    private static ReadingRollup randomRollup(Random random) {
+        ReadingSeries series = new ReadingSeries();
+        ReadingBatch batch = new ReadingBatch();
+        int readings = 1 + random.nextInt(200);
+        int maxScale = random.nextInt(5);
+        for (int i = 0; i < readings; i++) {
+            int scale = random.nextInt(maxScale + 1);
+            batch.add(START.plusSeconds(random.nextInt(7 * 24 * 3600)), BigDecimal.valueOf(random.nextInt(100 * (int) Math.pow(10, scale)), scale));
+        }
+        series.append(batch);
+        return series.total();
+    }
+}
@@ -0,0 +1,100 @@
+package uk.tw.energy.service;
+
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MeterReadingServiceConcurrencyTest {
+
+    private static final Instant START = Instant.parse("2021-01-01T00:00:00Z");
+    private static final int WRITERS = 8;
+    private static final int READERS = 4;
+    private static final int METERS = 4;
+    private static final int BATCHES_PER_WRITER = 200;
+    private static final int READINGS_PER_BATCH = 10;
+
+    @Test
+    public void givenConcurrentWritersAndReadersShouldNotLoseOrTearReadings() throws Exception {
+        MeterReadingService meterReadingService = new MeterReadingService(new HashMap<>(), new HashMap<>());
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+        CountDownLatch startGate = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        List<Future<?>> writers = new ArrayList<>();
+        for (int writer = 0; writer < WRITERS; writer++) {
+            int writerId = writer;
+            writers.add(executor.submit(() -> {
+                startGate.await();
+                for (int batch = 0; batch < BATCHES_PER_WRITER; batch++) {
+                    String meterId = "meter-" + (batch % METERS);
+                    meterReadingService.storeReadings(meterId, batch(writerId, batch));
+                }
+                return null;
+            }));
+        }
+        List<Future<?>> readers = new ArrayList<>();
+        for (int reader = 0; reader < READERS; reader++) {
+            int readerId = reader;
+            readers.add(executor.submit(() -> {
+                startGate.await();
+                while (writing.get()) {
+                    meterReadingService.getReadings("meter-" + (readerId % METERS)).ifPresent(this::assertOrderedAndUntorn);
+                }
+                return null;
+            }));
+        }
+
+        startGate.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(1, TimeUnit.MINUTES);
+        }
+        writing.set(false);
+        for (Future<?> reader : readers) {
+            reader.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        int expectedPerMeter = WRITERS * BATCHES_PER_WRITER * READINGS_PER_BATCH / METERS;
+        for (int meter = 0; meter < METERS; meter++) {
+            Optional<List<ElectricityReading>> readings = meterReadingService.getReadings("meter-" + meter);
+            assertThat(readings).isPresent();
+            assertThat(readings.get()).hasSize(expectedPerMeter);
+            assertOrderedAndUntorn(readings.get());
+        }
+    }
+
+    private List<ElectricityReading> batch(int writerId, int batch) {
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int i = 0; i < READINGS_PER_BATCH; i++) {
+            // every writer and batch owns distinct seconds, and odd writers go back in time to force merges
+            long offset = ((long) batch * READINGS_PER_BATCH + i) * WRITERS + writerId;
+            long second = writerId % 2 == 0 ? offset : -offset - 1;
+            readings.add(new ElectricityReading(START.plusSeconds(second), BigDecimal.valueOf(second, 3)));
+        }
+        return readings;
+    }
+
+    private void assertOrderedAndUntorn(List<ElectricityReading> readings) {
+        Instant previous = Instant.MIN;
+        for (ElectricityReading reading : readings) {
+            long second = reading.getTime().getEpochSecond() - START.getEpochSecond();
+            assertThat(reading.getReading()).isEqualTo(BigDecimal.valueOf(second, 3));
+            assertThat(reading.getTime()).isAfter(previous);
+            previous = reading.getTime();
+        }
+    }
+}
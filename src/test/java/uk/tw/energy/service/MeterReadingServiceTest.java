@@ -2,7 +2,14 @@ package uk.tw.energy.service;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.exception.BadRequest;
+import uk.tw.energy.store.ReadingLog;
+import uk.tw.energy.store.ReadingRollup;
+import uk.tw.energy.store.ReadingStoreOptions;
+import uk.tw.energy.store.RetentionPolicy;
 
+import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -12,11 +19,15 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
 
 import static java.time.LocalTime.now;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 
 public class MeterReadingServiceTest {
 
@@ -38,6 +49,53 @@ public class MeterReadingServiceTest {
         assertThat(meterReadingService.getReadings("random-id")).isEqualTo(Optional.of(new ArrayList<>()));
     }
 
+    @Test
+    public void givenAMeterIdLongerThanTheLimitShouldRejectItsReadings() {
+        char[] longId = new char[MeterReadingService.MAX_SMART_METER_ID_BYTES + 1];
+        Arrays.fill(longId, 'm');
+
+        assertThatThrownBy(() -> meterReadingService.storeReadings(new String(longId), Collections.singletonList(
+                new ElectricityReading(Instant.now(), BigDecimal.ONE)))).isInstanceOf(BadRequest.class);
+        assertThat(meterReadingService.getReadings(new String(longId))).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    public void givenReadingsOutOfOrderSummaryShouldMatchTheSameReadingsInOrder() {
+        Instant start = Instant.parse("2021-11-22T00:00:00Z");
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int hour = 0; hour < 48; hour++) {
+            readings.add(new ElectricityReading(start.plusSeconds(3600L * hour), BigDecimal.valueOf(hour % 7, 1)));
+        }
+        meterReadingService.storeReadings("in-order", readings);
+        meterReadingService.storeReadings("out-of-order", readings.subList(24, 48));
+        meterReadingService.storeReadings("out-of-order", readings.subList(0, 24));
+
+        ReadingRollup inOrder = meterReadingService.getReadingsSummary("in-order").get();
+        ReadingRollup outOfOrder = meterReadingService.getReadingsSummary("out-of-order").get();
+        assertThat(outOfOrder.sumAsBigDecimal()).isEqualTo(inOrder.sumAsBigDecimal());
+        assertThat(outOfOrder.getCount()).isEqualTo(48);
+        assertThat(outOfOrder.firstTime()).isEqualTo(start);
+        assertThat(outOfOrder.lastTime()).isEqualTo(start.plusSeconds(3600L * 47));
+    }
+
+    @Test
+    public void givenCompactionSummaryShouldStillCoverTheWholeHistory() {
+        MeterReadingService compacting = new MeterReadingService(new HashMap<>(), new HashMap<>(), ReadingLog.NONE,
+                ReadingStoreOptions.builder().retention(RetentionPolicy.ofDays(1, 1)).build());
+        Instant now = Instant.now();
+        compacting.storeReadings("smart-meter", Arrays.asList(
+                new ElectricityReading(now.minusSeconds(10 * 86400), BigDecimal.valueOf(2)),
+                new ElectricityReading(now, BigDecimal.valueOf(4))));
+        ReadingRollup before = compacting.getReadingsSummary("smart-meter").get();
+
+        compacting.compact(now);
+        ReadingRollup after = compacting.getReadingsSummary("smart-meter").get();
+
+        assertThat(after.getCount()).isEqualTo(2);
+        assertThat(after.sumAsBigDecimal()).isEqualTo(before.sumAsBigDecimal());
+        assertThat(after.elapsedSeconds()).isEqualTo(before.elapsedSeconds());
+    }
+
     @Test
     public void test(){
        String a= Instant.now().atZone(ZoneId.systemDefault()).getDayOfWeek().toString();
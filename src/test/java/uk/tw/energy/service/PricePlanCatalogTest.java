@@ -0,0 +1,120 @@
+package uk.tw.energy.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.tw.energy.domain.Commodity;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.GasPricePlan;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.TariffPlan;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PricePlanCatalogTest {
+
+    private static final String SMART_METER_ID = "smart-meter-id";
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    public void shouldLoadPlansFromTheFileAndKeepSeededPlansForFuelsItLeavesOut() throws IOException {
+        Path file = write("{\"electricity\": [" +
+                "{\"planName\": \"flat\", \"energySupplier\": \"Flat Co\", \"unitRate\": 2}," +
+                "{\"planName\": \"peaky\", \"unitRate\": 1," +
+                " \"peakTimeMultipliers\": [{\"dayOfWeek\": \"MONDAY\", \"multiplier\": 3}]," +
+                " \"timeOfUseBands\": [{\"dayOfWeek\": null, \"start\": \"16:00\", \"end\": \"19:00\", \"multiplier\": 5}]}]}");
+
+        PricePlanCatalog catalog = catalog(file);
+
+        PricePlanCatalog.Snapshot snapshot = catalog.snapshot();
+        assertThat(snapshot.plans(Commodity.ELECTRICITY)).extracting(TariffPlan::getPlanName).containsExactly("flat", "peaky");
+        assertThat(snapshot.plan(Commodity.ELECTRICITY, "flat").get().getEnergySupplier()).isEqualTo("Flat Co");
+        PricePlan peaky = (PricePlan) snapshot.plan(Commodity.ELECTRICITY, "peaky").get();
+        assertThat(peaky.getPrice(LocalDateTime.parse("2021-11-22T12:00:00"))).isEqualByComparingTo("3");
+        assertThat(peaky.getPrice(LocalDateTime.parse("2021-11-23T17:00:00"))).isEqualByComparingTo("5");
+        assertThat(snapshot.plans(Commodity.GAS)).extracting(TariffPlan::getPlanName).containsExactly("seeded-gas");
+        assertThat(snapshot.plan(Commodity.ELECTRICITY, "seeded")).isEmpty();
+    }
+
+    @Test
+    public void givenAReloadShouldSwapInANewSnapshotAndLeaveTheOldOneIntact() throws IOException {
+        Path file = write("{\"gas\": [{\"planName\": \"gas-a\", \"unitRate\": 1}]}");
+        PricePlanCatalog catalog = catalog(file);
+        PricePlanCatalog.Snapshot before = catalog.snapshot();
+
+        write("{\"gas\": [{\"planName\": \"gas-a\", \"unitRate\": 4}, {\"planName\": \"gas-b\", \"unitRate\": 2}]}");
+        catalog.reload();
+
+        assertThat(catalog.snapshot().getVersion()).isEqualTo(before.getVersion() + 1);
+        assertThat(catalog.snapshot().plan(Commodity.GAS, "gas-a").get().getUnitRate()).isEqualByComparingTo("4");
+        assertThat(before.plans(Commodity.GAS)).hasSize(1);
+        assertThat(before.plan(Commodity.GAS, "gas-a").get().getUnitRate()).isEqualByComparingTo("1");
+        assertThat(registry.get("price-plans.catalog.reloads").tag("result", "success").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void givenAnInvalidFileShouldKeepTheCurrentPlans() throws IOException {
+        Path file = write("{\"electricity\": [{\"planName\": \"flat\", \"unitRate\": 2}]}");
+        PricePlanCatalog catalog = catalog(file);
+        PricePlanCatalog.Snapshot before = catalog.snapshot();
+
+        write("{\"electricity\": [{\"planName\": \"flat\", \"unitRate\": 2}, {\"planName\": \"flat\", \"unitRate\": 3}]}");
+        assertThatThrownBy(catalog::reload).isInstanceOf(IllegalArgumentException.class);
+        write("{\"electricity\": [{\"planName\": \"no-rate\"}]}");
+        assertThatThrownBy(catalog::reload).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(catalog.snapshot()).isSameAs(before);
+    }
+
+    @Test
+    public void givenAReloadShouldPriceCachedMetersOnTheNewPlans() throws IOException {
+        Path file = write("{\"electricity\": [{\"planName\": \"flat\", \"unitRate\": 2}]}");
+        PricePlanCatalog catalog = catalog(file);
+        MeterReadingService meterReadingService = new MeterReadingService(new HashMap<>(), new HashMap<>());
+        meterReadingService.storeReadings(SMART_METER_ID, Arrays.asList(
+                new ElectricityReading(Instant.now().minusSeconds(3600), BigDecimal.ONE),
+                new ElectricityReading(Instant.now(), BigDecimal.ONE)));
+        PricePlanService pricePlanService = new PricePlanService(catalog, meterReadingService);
+
+        assertThat(pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID).get())
+                .containsOnlyKeys("flat");
+
+        write("{\"electricity\": [{\"planName\": \"flat\", \"unitRate\": 2}, {\"planName\": \"cheap\", \"unitRate\": 1}]}");
+        catalog.reload();
+
+        Map<String, BigDecimal> costs = pricePlanService.getConsumptionCostOfElectricityReadingsForEachPricePlan(SMART_METER_ID).get();
+        assertThat(costs).containsOnlyKeys("flat", "cheap");
+        assertThat(costs.get("cheap")).isEqualByComparingTo("1");
+    }
+
+    private PricePlanCatalog catalog(Path file) {
+        return new PricePlanCatalog(
+                Collections.singletonList(new PricePlan("seeded", null, BigDecimal.TEN, Collections.emptyList())),
+                Collections.singletonList(new GasPricePlan("seeded-gas", null, BigDecimal.TEN, Collections.emptyList())),
+                file.toString(), 0, new ObjectMapper(), registry);
+    }
+
+    private Path write(String json) throws IOException {
+        Path file = directory.resolve("price-plans.json");
+        Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
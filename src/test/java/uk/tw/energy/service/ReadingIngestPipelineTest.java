@@ -0,0 +1,175 @@
+package uk.tw.energy.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.Commodity;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.store.ReadingBatch;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReadingIngestPipelineTest {
+
+    private static final Instant START = Instant.parse("2021-11-22T00:00:00Z");
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    public void givenAsyncIngestShouldStoreEveryUploadInOrderPerMeter() throws Exception {
+        MeterReadingService meterReadingService = new MeterReadingService(new HashMap<>(), new HashMap<>());
+        try (ReadingIngestPipeline pipeline = new ReadingIngestPipeline(meterReadingService, true, 3 * 1200, 3, 16, 1, registry)) {
+            for (int upload = 0; upload < 200; upload++) {
+                for (int meter = 0; meter < 5; meter++) {
+                    assertThat(pipeline.submit(Commodity.ELECTRICITY, "meter-" + meter, batchAt(upload, meter))).isTrue();
+                }
+                assertThat(pipeline.submit(Commodity.GAS, "meter-0", batchAt(upload, 0))).isTrue();
+            }
+            pipeline.awaitIdle();
+
+            for (int meter = 0; meter < 5; meter++) {
+                assertThat(meterReadingService.getReadings("meter-" + meter).get()).hasSize(200)
+                        .isSortedAccordingTo((left, right) -> left.getTime().compareTo(right.getTime()));
+            }
+            assertThat(meterReadingService.getGasReadings("meter-0").get()).hasSize(200);
+            assertThat(pipeline.queueDepth()).isZero();
+            assertThat(registry.get("readings.ingest.lag").timer().count()).isEqualTo(1200);
+            assertThat(registry.get("readings.ingest.batch.size").summary().totalAmount()).isEqualTo(1200);
+        }
+    }
+
+    @Test
+    public void givenFullQueueShouldTurnUploadsAwayUntilTheWriterCatchesUp() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MeterReadingService meterReadingService = new MeterReadingService(new HashMap<>(), new HashMap<>()) {
+            @Override
+            public void storeReadings(String smartMeterId, ReadingBatch batch) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.storeReadings(smartMeterId, batch);
+            }
+        };
+        try (ReadingIngestPipeline pipeline = new ReadingIngestPipeline(meterReadingService, true, 2, 1, 16, 5, registry)) {
+            assertThat(pipeline.submit(Commodity.ELECTRICITY, "meter", batchAt(0, 0))).isTrue();
+            writing.await();
+            assertThat(pipeline.submit(Commodity.ELECTRICITY, "meter", batchAt(1, 0))).isTrue();
+            assertThat(pipeline.submit(Commodity.ELECTRICITY, "meter", batchAt(2, 0))).isTrue();
+
+            assertThat(pipeline.submit(Commodity.ELECTRICITY, "meter", batchAt(3, 0))).isFalse();
+            assertThat(pipeline.queueDepth()).isEqualTo(3);
+            assertThat(registry.get("readings.ingest.rejected").counter().count()).isEqualTo(1);
+
+            release.countDown();
+            pipeline.awaitIdle();
+            assertThat(pipeline.submit(Commodity.ELECTRICITY, "meter", batchAt(3, 0))).isTrue();
+            pipeline.awaitIdle();
+            assertThat(meterReadingService.getReadings("meter").get()).hasSize(4);
+        }
+    }
+
+    @Test
+    public void givenOneBadUploadInACoalescedWriteShouldStoreTheOthersAndKeepWriting() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MeterReadingService meterReadingService = new MeterReadingService(new HashMap<>(), new HashMap<>()) {
+            @Override
+            public void storeReadings(String smartMeterId, ReadingBatch batch) {
+                if (smartMeterId.equals("blocker")) {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                } else if (batch.size() >= 3) {
+                    // the bad upload carries three readings; an Error, so a RuntimeException catch would not do
+                    throw new InternalError("bad upload");
+                }
+                super.storeReadings(smartMeterId, batch);
+            }
+        };
+        try (ReadingIngestPipeline pipeline = new ReadingIngestPipeline(meterReadingService, true, 16, 1, 16, 1, registry)) {
+            assertThat(pipeline.submit(Commodity.ELECTRICITY, "blocker", batchAt(0, 0))).isTrue();
+            writing.await();
+            ReadingBatch bad = new ReadingBatch();
+            for (int reading = 0; reading < 3; reading++) {
+                bad.add(START.plusSeconds(3600 + reading), BigDecimal.ONE);
+            }
+            assertThat(pipeline.submit(Commodity.ELECTRICITY, "meter", batchAt(0, 0))).isTrue();
+            assertThat(pipeline.submit(Commodity.ELECTRICITY, "meter", bad)).isTrue();
+            assertThat(pipeline.submit(Commodity.ELECTRICITY, "meter", batchAt(1, 0))).isTrue();
+
+            release.countDown();
+            pipeline.awaitIdle();
+            assertThat(pipeline.submit(Commodity.ELECTRICITY, "meter", batchAt(2, 0))).isTrue();
+            pipeline.awaitIdle();
+
+            assertThat(meterReadingService.getReadings("meter").get()).hasSize(3);
+            assertThat(registry.get("readings.ingest.failed").counter().count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void givenUploadsRacingCloseShouldStoreEveryOneThatWasAccepted() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            MeterReadingService meterReadingService = new MeterReadingService(new HashMap<>(), new HashMap<>());
+            ReadingIngestPipeline pipeline = new ReadingIngestPipeline(meterReadingService, true, 1 << 16, 2, 16, 1,
+                    new SimpleMeterRegistry());
+            AtomicInteger accepted = new AtomicInteger();
+            ExecutorService submitters = Executors.newFixedThreadPool(4);
+            for (int meter = 0; meter < 4; meter++) {
+                int submitter = meter;
+                submitters.execute(() -> {
+                    for (int upload = 0; upload < 2000; upload++) {
+                        if (pipeline.submit(Commodity.ELECTRICITY, "meter-" + submitter, batchAt(upload, submitter))) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            Thread.sleep(1);
+            pipeline.close();
+            submitters.shutdown();
+            assertThat(submitters.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+            int stored = 0;
+            for (int meter = 0; meter < 4; meter++) {
+                stored += meterReadingService.getReadings("meter-" + meter).map(List::size).orElse(0);
+            }
+            assertThat(stored).isEqualTo(accepted.get());
+            assertThat(pipeline.queueDepth()).isZero();
+        }
+    }
+
+    @Test
+    public void givenSyncIngestShouldStoreBeforeReturning() {
+        MeterReadingService meterReadingService = new MeterReadingService(new HashMap<>(), new HashMap<>());
+        ReadingIngestPipeline pipeline = new ReadingIngestPipeline(meterReadingService);
+
+        assertThat(pipeline.submit(Commodity.ELECTRICITY, "meter", batchAt(0, 0))).isTrue();
+
+        assertThat(pipeline.isAsync()).isFalse();
+        assertThat(meterReadingService.getReadings("meter").get())
+                .containsExactly(new ElectricityReading(START, BigDecimal.valueOf(0)));
+    }
+
+    private static ReadingBatch batchAt(int upload, int meter) {
+        ReadingBatch batch = new ReadingBatch();
+        batch.add(START.plusSeconds(60L * upload), BigDecimal.valueOf(meter));
+        return batch;
+    }
+}
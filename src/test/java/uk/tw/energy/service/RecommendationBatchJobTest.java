@@ -0,0 +1,141 @@
+package uk.tw.energy.service;
+
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.Commodity;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.GasPricePlan;
+import uk.tw.energy.domain.GasReading;
+import uk.tw.energy.domain.MeterRecommendation;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.RecommendationJobStatus;
+import uk.tw.energy.domain.RecommendationReportPage;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RecommendationBatchJobTest {
+
+    private static final Instant START = Instant.parse("2021-11-22T00:00:00Z");
+    private static final int METERS = 500;
+
+    private final MeterReadingService meterReadingService = new MeterReadingService(new HashMap<>(), new HashMap<>());
+    private final AccountService accountService = new AccountService(new HashMap<>());
+    private final List<PricePlan> pricePlans = Arrays.asList(
+            new PricePlan("cheap", null, BigDecimal.ONE, Collections.emptyList()),
+            new PricePlan("middle", null, BigDecimal.valueOf(2), Collections.emptyList()),
+            new PricePlan("expensive", null, BigDecimal.TEN, Collections.emptyList()));
+    private final RecommendationBatchJob job = new RecommendationBatchJob(
+            new PricePlanService(pricePlans, meterReadingService), accountService, meterReadingService, 2, 4);
+
+    @Test
+    public void givenNoCompletedRunShouldHaveNoReport() {
+        assertThat(job.getStatus().getState()).isEqualTo(RecommendationJobStatus.State.IDLE);
+        assertThat(job.getReport(0, 10)).isEmpty();
+    }
+
+    @Test
+    public void shouldRecommendTheCheapestPlansAndSavingForEveryMeter() throws Exception {
+        Map<String, String> accounts = new HashMap<>();
+        for (int meter = 0; meter < METERS; meter++) {
+            String smartMeterId = String.format("smart-meter-%03d", meter);
+            meterReadingService.storeReadings(smartMeterId, Arrays.asList(
+                    new ElectricityReading(START, BigDecimal.valueOf(meter)),
+                    new ElectricityReading(START.plusSeconds(3600), BigDecimal.valueOf(meter))));
+            accounts.put(smartMeterId, "expensive");
+        }
+        accountService.switchPricePlans(Commodity.ELECTRICITY, accounts);
+
+        assertThat(job.start()).isTrue();
+        job.awaitCurrentRun();
+
+        RecommendationJobStatus status = job.getStatus();
+        assertThat(status.getState()).isEqualTo(RecommendationJobStatus.State.COMPLETED);
+        assertThat(status.getProcessedMeters()).isEqualTo(METERS);
+        assertThat(status.getTotalMeters()).isEqualTo(METERS);
+
+        RecommendationReportPage page = job.getReport(3, 100).get();
+        assertThat(page.getTotalRecommendations()).isEqualTo(METERS);
+        assertThat(page.getRecommendations()).hasSize(100);
+        MeterRecommendation recommendation = page.getRecommendations().get(0);
+        assertThat(recommendation.getSmartMeterId()).isEqualTo("smart-meter-300");
+        assertThat(recommendation.getCheapestPricePlans()).extracting("pricePlan").containsExactly("cheap", "middle");
+        assertThat(recommendation.getCurrentCost()).isEqualByComparingTo("3000");
+        assertThat(recommendation.getPotentialSaving()).isEqualByComparingTo("2700");
+        assertThat(job.getReport(5, 100).get().getRecommendations()).isEmpty();
+    }
+
+    @Test
+    public void givenMetersWithNoPlansToPriceShouldPageOverTheRecommendationsOnly() throws Exception {
+        for (int meter = 0; meter < 5; meter++) {
+            meterReadingService.storeGasReadings("gas-only-" + meter, Arrays.asList(
+                    new GasReading(START, BigDecimal.ONE), new GasReading(START.plusSeconds(3600), BigDecimal.ONE)));
+            meterReadingService.storeReadings("smart-meter-" + meter, Arrays.asList(
+                    new ElectricityReading(START, BigDecimal.ONE), new ElectricityReading(START.plusSeconds(3600), BigDecimal.ONE)));
+        }
+
+        assertThat(job.start()).isTrue();
+        job.awaitCurrentRun();
+
+        assertThat(job.getStatus().getTotalMeters()).isEqualTo(10);
+        RecommendationReportPage page = job.getReport(1, 3).get();
+        assertThat(page.getTotalRecommendations()).isEqualTo(5);
+        assertThat(page.getRecommendations()).extracting(MeterRecommendation::getSmartMeterId)
+                .containsExactly("smart-meter-3", "smart-meter-4");
+    }
+
+    @Test
+    public void shouldRecommendGasPlansForGasMetersAfterTheElectricityMeters() throws Exception {
+        RecommendationBatchJob gasJob = new RecommendationBatchJob(new PricePlanService(pricePlans, Arrays.asList(
+                new GasPricePlan("gas-cheap", null, BigDecimal.ONE, Collections.emptyList()),
+                new GasPricePlan("gas-expensive", null, BigDecimal.TEN, Collections.emptyList())), meterReadingService),
+                accountService, meterReadingService, 2, 4);
+        meterReadingService.storeReadings("smart-meter-0", Arrays.asList(
+                new ElectricityReading(START, BigDecimal.ONE), new ElectricityReading(START.plusSeconds(3600), BigDecimal.ONE)));
+        meterReadingService.storeGasReadings("smart-meter-0", Arrays.asList(
+                new GasReading(START, BigDecimal.ONE), new GasReading(START.plusSeconds(3600), BigDecimal.ONE)));
+        accountService.switchPricePlans(Commodity.GAS, Collections.singletonMap("smart-meter-0", "gas-expensive"));
+
+        assertThat(gasJob.start()).isTrue();
+        gasJob.awaitCurrentRun();
+
+        List<MeterRecommendation> recommendations = gasJob.getReport(0, 10).get().getRecommendations();
+        assertThat(recommendations).extracting(MeterRecommendation::getCommodity).containsExactly(Commodity.ELECTRICITY, Commodity.GAS);
+        MeterRecommendation gas = recommendations.get(1);
+        assertThat(gas.getCheapestPricePlans()).extracting("pricePlan").containsExactly("gas-cheap", "gas-expensive");
+        assertThat(gas.getCurrentPricePlanId()).isEqualTo("gas-expensive");
+        assertThat(gas.getPotentialSaving()).isEqualByComparingTo("9");
+        gasJob.close();
+    }
+
+    @Test
+    public void givenAMeterThatFailsWithAnErrorShouldReportTheRunAsFailedAndAllowAnother() throws Exception {
+        AccountService failing = new AccountService(new HashMap<>()) {
+            @Override
+            public String getPricePlanIdForSmartMeterId(String smartMeterId) {
+                throw new InternalError("accounts unavailable");
+            }
+        };
+        RecommendationBatchJob failingJob = new RecommendationBatchJob(
+                new PricePlanService(pricePlans, meterReadingService), failing, meterReadingService, 2, 4);
+        meterReadingService.storeReadings("smart-meter-0", Arrays.asList(
+                new ElectricityReading(START, BigDecimal.ONE), new ElectricityReading(START.plusSeconds(3600), BigDecimal.ONE)));
+
+        assertThat(failingJob.start()).isTrue();
+        failingJob.awaitCurrentRun();
+
+        RecommendationJobStatus status = failingJob.getStatus();
+        assertThat(status.getState()).isEqualTo(RecommendationJobStatus.State.FAILED);
+        assertThat(status.getError()).contains("accounts unavailable");
+        assertThat(failingJob.getReport(0, 10)).isEmpty();
+        assertThat(failingJob.start()).isTrue();
+        failingJob.awaitCurrentRun();
+        failingJob.close();
+    }
+}
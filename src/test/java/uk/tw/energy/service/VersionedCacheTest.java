@@ -0,0 +1,77 @@
+package uk.tw.energy.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VersionedCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger computations = new AtomicInteger();
+    private final VersionedCache<Integer> cache = new VersionedCache<>(2, Duration.ofSeconds(10), clock::get);
+
+    @Test
+    public void givenTheSameVersionShouldReturnTheCachedValue() {
+        assertThat(cache.get("meter-0", 1, computations::incrementAndGet)).isEqualTo(1);
+        assertThat(cache.get("meter-0", 1, computations::incrementAndGet)).isEqualTo(1);
+
+        assertThat(cache.hitCount()).isEqualTo(1);
+        assertThat(cache.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void givenANewVersionShouldRecompute() {
+        cache.get("meter-0", 1, computations::incrementAndGet);
+
+        assertThat(cache.get("meter-0", 2, computations::incrementAndGet)).isEqualTo(2);
+        assertThat(cache.get("meter-0", 2, computations::incrementAndGet)).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void givenAnOlderVersionShouldNotReplaceTheNewerEntry() {
+        cache.get("meter-0", 2, computations::incrementAndGet);
+        cache.get("meter-0", 1, computations::incrementAndGet);
+
+        assertThat(cache.get("meter-0", 2, computations::incrementAndGet)).isEqualTo(1);
+    }
+
+    @Test
+    public void givenInvalidationDuringAComputationShouldNotCacheTheStaleValue() {
+        cache.get("meter-0", 1, computations::incrementAndGet);
+
+        assertThat(cache.get("meter-1", 1, () -> {
+            cache.invalidateAll();
+            return computations.incrementAndGet();
+        })).isEqualTo(2);
+
+        assertThat(cache.size()).isZero();
+        assertThat(cache.get("meter-0", 1, computations::incrementAndGet)).isEqualTo(3);
+    }
+
+    @Test
+    public void givenMoreEntriesThanMaxSizeShouldEvictTheLeastRecentlyUsed() {
+        cache.get("meter-0", 1, computations::incrementAndGet);
+        cache.get("meter-1", 1, computations::incrementAndGet);
+        cache.get("meter-0", 1, computations::incrementAndGet);
+        cache.get("meter-2", 1, computations::incrementAndGet);
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.evictionCount()).isEqualTo(1);
+        assertThat(cache.get("meter-0", 1, computations::incrementAndGet)).isEqualTo(1);
+        assertThat(cache.get("meter-1", 1, computations::incrementAndGet)).isEqualTo(4);
+    }
+
+    @Test
+    public void givenAnEntryOlderThanMaxAgeShouldRecompute() {
+        cache.get("meter-0", 1, computations::incrementAndGet);
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+
+        assertThat(cache.get("meter-0", 1, computations::incrementAndGet)).isEqualTo(2);
+        assertThat(cache.evictionCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,32 @@
+package uk.tw.energy.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DirectSlabAllocatorTest {
+
+    private static final int SLAB_BYTES = 1024;
+
+    @Test
+    public void shouldReserveWholeSlabsAndOwnBuffersForTheirSlices() {
+        DirectSlabAllocator allocator = new DirectSlabAllocator(SLAB_BYTES);
+        List<ByteBuffer> held = new ArrayList<>();
+
+        held.add(allocator.allocate(100));
+        assertThat(allocator.reservedBytes()).isEqualTo(SLAB_BYTES);
+
+        for (int i = 0; i < 10; i++) {
+            held.add(allocator.allocate(200));
+        }
+        assertThat(held.get(1).limit()).isEqualTo(200);
+        assertThat(allocator.reservedBytes()).isEqualTo(3 * SLAB_BYTES);
+
+        held.add(allocator.allocate(SLAB_BYTES));
+        assertThat(allocator.reservedBytes()).isEqualTo(4 * SLAB_BYTES);
+    }
+}
@@ -0,0 +1,177 @@
+package uk.tw.energy.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.tw.energy.domain.Commodity;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.GasReading;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.service.MeterReadingService;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MappedReadingLogTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void givenRestartShouldRecoverEveryStoredReading() throws IOException {
+        List<ElectricityReading> electricityReadings = new ElectricityReadingsGenerator().generate(500);
+        List<GasReading> gasReadings = Collections.singletonList(new GasReading(Instant.parse("2021-11-27T03:00:00Z"), new BigDecimal("1.25")));
+
+        try (MappedReadingLog log = new MappedReadingLog(directory, SEGMENT_SIZE, true)) {
+            MeterReadingService service = new MeterReadingService(new HashMap<>(), new HashMap<>(), log);
+            service.storeReadings("meter-1", electricityReadings.subList(0, 250));
+            service.storeReadings("meter-1", electricityReadings.subList(250, 500));
+            service.storeGasReadings("meter-2", gasReadings);
+        }
+        assertThat(segments()).hasSizeGreaterThan(1);
+
+        try (MappedReadingLog log = new MappedReadingLog(directory, SEGMENT_SIZE, true)) {
+            MeterReadingService recovered = new MeterReadingService(new HashMap<>(), new HashMap<>(), log);
+
+            assertThat(recovered.getReadings("meter-1").get()).isEqualTo(electricityReadings);
+            assertThat(recovered.getGasReadings("meter-2").get()).isEqualTo(gasReadings);
+        }
+    }
+
+    @Test
+    public void givenRestartAfterCompactionShouldComeBackCompactedFromTheCheckpoint() throws IOException {
+        ReadingStoreOptions options = ReadingStoreOptions.builder().retention(RetentionPolicy.ofDays(1, 1)).build();
+        Instant now = Instant.now();
+        List<ElectricityReading> old = new ArrayList<>();
+        for (int minute = 0; minute < 500; minute++) {
+            old.add(new ElectricityReading(now.minusSeconds(10 * 86400L - 60L * minute), BigDecimal.valueOf(minute)));
+        }
+        List<ElectricityReading> later = Collections.singletonList(new ElectricityReading(now.plusSeconds(60), BigDecimal.ONE));
+
+        List<ElectricityReading> compacted;
+        ReadingRollup summary;
+        try (MappedReadingLog log = new MappedReadingLog(directory, SEGMENT_SIZE, true)) {
+            MeterReadingService service = new MeterReadingService(new HashMap<>(), new HashMap<>(), log, options);
+            service.storeReadings("meter-1", old);
+            assertThat(segments()).hasSizeGreaterThan(1);
+            service.storeReadings("meter-1", Collections.singletonList(new ElectricityReading(now, BigDecimal.TEN)));
+            service.compact(now);
+            service.storeReadings("meter-1", later);
+            compacted = service.getReadings("meter-1").get();
+            summary = service.getReadingsSummary("meter-1").get();
+        }
+        assertThat(compacted).hasSizeLessThan(old.size());
+        List<String> files = segments().stream().map(path -> path.getFileName().toString()).collect(Collectors.toList());
+        assertThat(files).hasSize(2);
+        assertThat(files.get(0)).startsWith("checkpoint-");
+        assertThat(files.get(1)).isEqualTo(files.get(0).replace("checkpoint-", "segment-").replace(".ckp", ".log"));
+
+        try (MappedReadingLog log = new MappedReadingLog(directory, SEGMENT_SIZE, true)) {
+            MeterReadingService recovered = new MeterReadingService(new HashMap<>(), new HashMap<>(), log, options);
+
+            assertThat(recovered.getReadings("meter-1").get()).isEqualTo(compacted);
+            assertThat(recovered.getReadingsSummary("meter-1").get().getCount()).isEqualTo(summary.getCount());
+            assertThat(recovered.getReadingsSummary("meter-1").get().getSum()).isEqualTo(summary.getSum());
+        }
+    }
+
+    @Test
+    public void givenTornRecordShouldStopReplayingThatSegmentAtIt() throws IOException {
+        try (MappedReadingLog log = new MappedReadingLog(directory, SEGMENT_SIZE, true)) {
+            log.append(Commodity.ELECTRICITY, "meter-1", batchOf(1));
+            log.append(Commodity.ELECTRICITY, "meter-1", batchOf(2));
+        }
+        Path segment = segments().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long secondRecordPayload = 8 + (1 + 2 + "meter-1".length() + 4 + 21) + 8;
+            file.seek(secondRecordPayload);
+            file.write(0x7f);
+        }
+
+        HashMap<String, Integer> replayed = new HashMap<>();
+        try (MappedReadingLog log = new MappedReadingLog(directory, SEGMENT_SIZE, true)) {
+            log.replay((commodity, smartMeterId, batch) -> replayed.merge(smartMeterId, batch.size(), Integer::sum));
+        }
+
+        assertThat(replayed).containsEntry("meter-1", 1);
+    }
+
+    @Test
+    public void givenARecordThatPassesItsChecksumButDoesNotParseShouldStopReplayingThatSegmentAtIt() throws IOException {
+        try (MappedReadingLog log = new MappedReadingLog(directory, SEGMENT_SIZE, true)) {
+            log.append(Commodity.ELECTRICITY, "meter-1", batchOf(1));
+            log.append(Commodity.ELECTRICITY, "meter-1", batchOf(2));
+        }
+        Path segment = segments().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long secondRecord = 8 + (1 + 2 + "meter-1".length() + 4 + 21);
+            file.seek(secondRecord);
+            byte[] payload = new byte[file.readInt()];
+            file.seek(secondRecord + 8);
+            file.readFully(payload);
+            // a meter id length running past the end of the record, as a truncated two-byte length would give
+            payload[1] = (byte) 0xFF;
+            payload[2] = (byte) 0xFF;
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            file.seek(secondRecord + 4);
+            file.writeInt((int) crc.getValue());
+            file.write(payload);
+        }
+
+        HashMap<String, Integer> replayed = new HashMap<>();
+        try (MappedReadingLog log = new MappedReadingLog(directory, SEGMENT_SIZE, true)) {
+            log.replay((commodity, smartMeterId, batch) -> replayed.merge(smartMeterId, batch.size(), Integer::sum));
+        }
+
+        assertThat(replayed).containsEntry("meter-1", 1);
+    }
+
+    @Test
+    public void givenAMeterIdTooLongToLogShouldRejectItAndKeepTheLogReplayable() throws IOException {
+        char[] longId = new char[MappedReadingLog.MAX_METER_ID_BYTES + 1];
+        Arrays.fill(longId, 'm');
+        try (MappedReadingLog log = new MappedReadingLog(directory, 1 << 20, true)) {
+            log.append(Commodity.ELECTRICITY, "meter-1", batchOf(1));
+            assertThatThrownBy(() -> log.append(Commodity.ELECTRICITY, new String(longId), batchOf(1)))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+
+        HashMap<String, Integer> replayed = new HashMap<>();
+        try (MappedReadingLog log = new MappedReadingLog(directory, 1 << 20, true)) {
+            log.replay((commodity, smartMeterId, batch) -> replayed.merge(smartMeterId, batch.size(), Integer::sum));
+        }
+
+        assertThat(replayed).containsOnlyKeys("meter-1");
+    }
+
+    private static ReadingBatch batchOf(int readings) {
+        ReadingBatch batch = new ReadingBatch();
+        for (int i = 0; i < readings; i++) {
+            batch.add(Instant.parse("2021-11-27T03:00:00Z").plusSeconds(i), BigDecimal.ONE);
+        }
+        return batch;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+}
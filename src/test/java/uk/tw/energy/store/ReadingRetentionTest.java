@@ -0,0 +1,110 @@
+package uk.tw.energy.store;
+
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ReadingRetentionTest {
+
+    // tariff days start at 08:00 UTC in a UTC calendar
+    private static final Instant START = Instant.parse("2021-11-22T08:00:00Z");
+    private static final TariffCalendar CALENDAR = new TariffCalendar(ZoneOffset.UTC);
+    private static final Instant NOW = START.plus(Duration.ofDays(10));
+
+    @Test
+    public void shouldKeepRawReadingsHourlyRollupsAndDailyRollupsForTheirRetention() {
+        ReadingSeries series = tenDaysOfHalfHourlyReadings();
+        ReadingRollup totalBefore = series.total();
+        SortedMap<Long, ReadingRollup> daysBefore = series.aggregateByDay(START.minusSeconds(1), NOW);
+
+        series.compact(RetentionPolicy.ofDays(3, 6), NOW);
+
+        SeriesSnapshot snapshot = series.snapshot();
+        assertThat(snapshot.size()).isEqualTo(3 * 48);
+        assertThat(snapshot.time(0)).isEqualTo(START.plus(Duration.ofDays(7)));
+        assertThat(series.rollups().hourly().firstKey()).isEqualTo(CALENDAR.hourIndex(START.plus(Duration.ofDays(4)).getEpochSecond()));
+        assertThat(series.rollups().hourly()).hasSize(3 * 24);
+        assertThat(series.total().getCount()).isEqualTo(totalBefore.getCount());
+        assertThat(series.total().sumAsBigDecimal()).isEqualTo(totalBefore.sumAsBigDecimal());
+        assertThat(series.aggregateByDay(START.minusSeconds(1), NOW)).isEqualTo(daysBefore);
+    }
+
+    @Test
+    public void givenCompactedDaysShouldPageAcrossEveryTier() throws Exception {
+        ReadingSeries series = tenDaysOfHalfHourlyReadings();
+        series.compact(RetentionPolicy.ofDays(3, 6), NOW);
+
+        List<ElectricityReading> paged = new ArrayList<>();
+        ReadingCursor cursor = ReadingCursor.at(Instant.MIN);
+        while (cursor != null) {
+            ReadingPage page = series.page(cursor, Instant.MAX, 50);
+            page.forEach((time, reading) -> paged.add(new ElectricityReading(time, reading)));
+            cursor = page.next().orElse(null);
+        }
+
+        assertThat(paged).isEqualTo(series.toList(ElectricityReading::new));
+    }
+
+    @Test
+    public void givenCompactedDaysShouldListOneReadingPerRetainedRollup() {
+        ReadingSeries series = tenDaysOfHalfHourlyReadings();
+        series.compact(RetentionPolicy.ofDays(3, 6), NOW);
+
+        List<ElectricityReading> readings = series.toList(ElectricityReading::new);
+
+        assertThat(readings).hasSize(4 + 3 * 24 + 3 * 48);
+        assertThat(readings.get(0)).isEqualTo(new ElectricityReading(START, new BigDecimal("0.5")));
+        assertThat(readings.get(4)).isEqualTo(new ElectricityReading(START.plus(Duration.ofDays(4)), new BigDecimal("0.5")));
+        assertThat(readings).isSortedAccordingTo((left, right) -> left.getTime().compareTo(right.getTime()));
+
+        Instant from = START.plus(Duration.ofDays(6)).plus(Duration.ofHours(22));
+        Instant to = START.plus(Duration.ofDays(7)).plus(Duration.ofHours(1));
+        assertThat(series.toList(from, to, ElectricityReading::new)).extracting(ElectricityReading::getTime).containsExactly(
+                START.plus(Duration.ofDays(6)).plus(Duration.ofHours(23)),
+                START.plus(Duration.ofDays(7)),
+                START.plus(Duration.ofDays(7)).plusSeconds(1800));
+    }
+
+    @Test
+    public void givenLateReadingsForCompactedDaysShouldOnlyFoldThemIntoRollups() {
+        ReadingSeries series = tenDaysOfHalfHourlyReadings();
+        series.compact(RetentionPolicy.ofDays(3, 6), NOW);
+        long count = series.total().getCount();
+
+        ReadingBatch late = new ReadingBatch();
+        late.add(START.plus(Duration.ofDays(1)).plusSeconds(60), new BigDecimal("4"));
+        series.append(late);
+
+        assertThat(series.snapshot().size()).isEqualTo(3 * 48);
+        assertThat(series.total().getCount()).isEqualTo(count + 1);
+        assertThat(series.rollups().hourly().firstKey()).isEqualTo(CALENDAR.hourIndex(START.plus(Duration.ofDays(4)).getEpochSecond()));
+        assertThat(series.rollups().daily().get(CALENDAR.dayIndex(START.plus(Duration.ofDays(1)).getEpochSecond())).getCount())
+                .isEqualTo(49);
+    }
+
+    @Test
+    public void shouldRejectHourlyRetentionShorterThanRawRetention() {
+        assertThatThrownBy(() -> RetentionPolicy.ofDays(7, 3)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ReadingSeries tenDaysOfHalfHourlyReadings() {
+        ReadingSeries series = new ReadingSeries(ReadingStoreOptions.builder().calendar(CALENDAR).build());
+        ReadingBatch batch = new ReadingBatch();
+        for (int halfHour = 0; halfHour < 10 * 48; halfHour++) {
+            // 1.0 on the hour and 0.0 on the half hour, so every hour and every day averages 0.5
+            batch.add(START.plusSeconds(halfHour * 1800L), new BigDecimal(halfHour % 2 == 0 ? "1.0" : "0.0"));
+        }
+        series.append(batch);
+        return series;
+    }
+}
@@ -0,0 +1,184 @@
+package uk.tw.energy.store;
+
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReadingSeriesTest {
+
+    private static final Instant START = Instant.parse("2021-11-27T00:00:00Z");
+
+    @Test
+    public void givenOutOfOrderBatchesShouldKeepReadingsOrderedByTime() {
+        ReadingSeries series = new ReadingSeries();
+        series.append(batchOf(reading(2, "2.0"), reading(4, "4.0")));
+        series.append(batchOf(reading(3, "3.0"), reading(1, "1.0")));
+
+        assertThat(series.snapshot().toList(ElectricityReading::new))
+                .containsExactly(reading(1, "1.0"), reading(2, "2.0"), reading(3, "3.0"), reading(4, "4.0"));
+    }
+
+    @Test
+    public void shouldKeepTheScaleAndNanosOfStoredReadings() {
+        ElectricityReading reading = new ElectricityReading(START.plusNanos(123456789), new BigDecimal("0.4217"));
+        ReadingSeries series = new ReadingSeries();
+        series.append(batchOf(reading));
+
+        assertThat(series.snapshot().toList(ElectricityReading::new)).containsExactly(reading);
+    }
+
+    @Test
+    public void givenRangeShouldReturnOnlyReadingsStrictlyInsideIt() {
+        ReadingSeries series = new ReadingSeries();
+        series.append(batchOf(reading(0, "1"), reading(1, "2"), reading(2, "3"), reading(3, "4"), reading(4, "5")));
+
+        List<ElectricityReading> readings = series.snapshot().toList(START.plusSeconds(3600), START.plusSeconds(4 * 3600), ElectricityReading::new);
+
+        assertThat(readings).containsExactly(reading(2, "3"), reading(3, "4"));
+    }
+
+    @Test
+    public void givenRangeOutsideTheSeriesShouldReturnNoReadings() {
+        ReadingSeries series = new ReadingSeries();
+        series.append(batchOf(reading(0, "1"), reading(1, "2")));
+
+        assertThat(series.snapshot().toList(START.plusSeconds(5 * 3600), START.plusSeconds(6 * 3600), ElectricityReading::new)).isEmpty();
+        assertThat(series.snapshot().toList(START.plusSeconds(6 * 3600), START.plusSeconds(5 * 3600), ElectricityReading::new)).isEmpty();
+    }
+
+    @Test
+    public void givenOffHeapStorageShouldHoldTheSameReadingsAsHeapStorage() {
+        ReadingSeries heap = new ReadingSeries(ReadingStoreOptions.builder().storageMode(StorageMode.HEAP).build());
+        ReadingSeries offHeap = new ReadingSeries(ReadingStoreOptions.builder().storageMode(StorageMode.OFF_HEAP).build());
+        Random random = new Random(7);
+        for (int batch = 0; batch < 200; batch++) {
+            ReadingBatch readings = new ReadingBatch();
+            for (int i = 0; i < 100; i++) {
+                long second = batch % 3 == 0 ? random.nextInt(1_000_000) : batch * 100_000L + i;
+                readings.add(START.plusSeconds(second).plusNanos(random.nextInt(1000)), BigDecimal.valueOf(random.nextInt(100_000), random.nextInt(5)));
+            }
+            heap.append(readings);
+            offHeap.append(copyOf(readings));
+        }
+
+        assertThat(offHeap.snapshot().directBytes()).isPositive();
+        assertThat(offHeap.snapshot().heapBytes()).isZero();
+        assertThat(offHeap.snapshot().toList(ElectricityReading::new)).isEqualTo(heap.snapshot().toList(ElectricityReading::new));
+    }
+
+    @Test
+    public void givenCompressedStorageShouldHoldAndFindTheSameReadingsAsHeapStorage() {
+        ReadingSeries heap = new ReadingSeries(ReadingStoreOptions.builder().storageMode(StorageMode.HEAP).build());
+        ReadingSeries compressed = new ReadingSeries(ReadingStoreOptions.builder().storageMode(StorageMode.COMPRESSED).build());
+        Random random = new Random(11);
+        for (int batch = 0; batch < 200; batch++) {
+            ReadingBatch readings = new ReadingBatch();
+            for (int i = 0; i < 100; i++) {
+                long second = batch % 3 == 0 ? random.nextInt(1_000_000_000) : batch * 100_000L + i * (1 + random.nextInt(3));
+                long unscaled = random.nextBoolean() ? random.nextInt(100_000) : random.nextLong() % 100_000_000_000L;
+                readings.add(START.plusSeconds(second).plusNanos(random.nextInt(3) * 1000), BigDecimal.valueOf(unscaled, random.nextInt(7) - 1));
+            }
+            heap.append(readings);
+            compressed.append(copyOf(readings));
+        }
+
+        assertThat(compressed.snapshot().toList(ElectricityReading::new)).isEqualTo(heap.snapshot().toList(ElectricityReading::new));
+        for (int i = 0; i < 100; i++) {
+            Instant from = START.plusSeconds(random.nextInt(1_000_000_000));
+            Instant to = from.plusSeconds(random.nextInt(50_000_000));
+            assertThat(compressed.snapshot().indexFrom(from)).isEqualTo(heap.snapshot().indexFrom(from));
+            assertThat(compressed.snapshot().toList(from, to, ElectricityReading::new)).isEqualTo(heap.snapshot().toList(from, to, ElectricityReading::new));
+        }
+    }
+
+    @Test
+    public void givenRegularReadingsCompressedStorageShouldTakeAFractionOfTheHeap() {
+        ReadingSeries heap = new ReadingSeries(ReadingStoreOptions.builder().storageMode(StorageMode.HEAP).build());
+        ReadingSeries compressed = new ReadingSeries(ReadingStoreOptions.builder().storageMode(StorageMode.COMPRESSED).build());
+        ReadingBatch readings = new ReadingBatch();
+        for (int i = 0; i < 16_384; i++) {
+            readings.add(START.plusSeconds(60L * i), BigDecimal.valueOf(500 + (i / 30) % 7, 3));
+        }
+        heap.append(readings);
+        compressed.append(copyOf(readings));
+
+        assertThat(compressed.snapshot().heapBytes()).isLessThan(heap.snapshot().heapBytes() / 8);
+        assertThat(compressed.snapshot().toList(ElectricityReading::new)).isEqualTo(heap.snapshot().toList(ElectricityReading::new));
+    }
+
+    @Test
+    public void givenReadingsSharingATimeShouldPageThroughEveryReadingExactlyOnce() throws Exception {
+        ReadingSeries series = new ReadingSeries();
+        series.append(batchOf(reading(0, "1"), reading(1, "2"), reading(1, "3"), reading(1, "4"), reading(1, "5"),
+                reading(2, "6"), reading(3, "7")));
+
+        List<ElectricityReading> paged = new ArrayList<>();
+        ReadingCursor cursor = ReadingCursor.at(START);
+        int pages = 0;
+        while (cursor != null) {
+            ReadingPage page = series.page(cursor, START.plusSeconds(3 * 3600), 2);
+            page.forEach((time, reading) -> paged.add(new ElectricityReading(time, reading)));
+            cursor = page.next().orElse(null);
+            pages++;
+        }
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(paged).isEqualTo(series.snapshot().toList(0, 6, ElectricityReading::new));
+    }
+
+    @Test
+    public void givenCursorPastTheEndShouldReturnAnEmptyLastPage() {
+        ReadingSeries series = new ReadingSeries();
+        series.append(batchOf(reading(0, "1"), reading(1, "2")));
+
+        ReadingPage page = series.page(ReadingCursor.at(START.plusSeconds(2 * 3600)), Instant.MAX, 10);
+
+        assertThat(page.size()).isZero();
+        assertThat(page.next()).isEmpty();
+    }
+
+    @Test
+    public void givenAppendsAfterAnImageIsTakenShouldLeaveTheImageAsItWas() {
+        for (StorageMode mode : StorageMode.values()) {
+            ReadingSeries series = new ReadingSeries(ReadingStoreOptions.builder().storageMode(mode).build());
+            ReadingBatch readings = new ReadingBatch();
+            for (int i = 0; i < 200; i++) {
+                readings.add(START.plusSeconds(60L * i), BigDecimal.valueOf(i, 2));
+            }
+            series.append(readings);
+            List<ElectricityReading> before = series.snapshot().toList(ElectricityReading::new);
+
+            SeriesImage image = series.image();
+            series.append(batchOf(reading(10, "9.5"), reading(0, "0.5")));
+
+            ReadingSeries restored = new ReadingSeries();
+            restored.restore(image);
+            assertThat(restored.snapshot().toList(ElectricityReading::new)).isEqualTo(before);
+            assertThat(image.readings().size()).isEqualTo(200);
+        }
+    }
+
+    private static ElectricityReading reading(int hour, String value) {
+        return new ElectricityReading(START.plusSeconds(hour * 3600L), new BigDecimal(value));
+    }
+
+    private static ReadingBatch copyOf(ReadingBatch batch) {
+        ReadingBatch copy = new ReadingBatch(batch.size);
+        for (int i = 0; i < batch.size; i++) {
+            copy.add(batch.epochSeconds[i], batch.nanos[i], batch.values[i], batch.scales[i]);
+        }
+        return copy;
+    }
+
+    private static ReadingBatch batchOf(ElectricityReading... readings) {
+        return ReadingBatch.of(Arrays.asList(readings), ElectricityReading::getTime, ElectricityReading::getReading);
+    }
+}
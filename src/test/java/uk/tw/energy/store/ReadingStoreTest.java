@@ -0,0 +1,62 @@
+package uk.tw.energy.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReadingStoreTest {
+
+    private static final Instant START = Instant.parse("2021-11-22T08:00:00Z");
+
+    @Test
+    public void shouldKeepItsTotalsInStepWithTheSeriesThroughEveryChange() {
+        for (StorageMode mode : StorageMode.values()) {
+            ReadingStore store = new ReadingStore(ReadingStoreOptions.builder()
+                    .storageMode(mode)
+                    .calendar(new TariffCalendar(ZoneOffset.UTC))
+                    .retention(RetentionPolicy.ofDays(3, 6))
+                    .build());
+            for (int meter = 0; meter < 5; meter++) {
+                for (int day = 9; day >= 0; day--) {
+                    store.append("meter-" + meter, dayOfReadings(day));
+                }
+            }
+            assertInStep(store);
+
+            store.compact(START.plus(Duration.ofDays(10)));
+            assertInStep(store);
+
+            store.restore("meter-0", store.getSeries("meter-1").get().image());
+            store.restore("meter-5", store.getSeries("meter-2").get().image());
+            assertInStep(store);
+        }
+    }
+
+    private static void assertInStep(ReadingStore store) {
+        long readings = 0;
+        long heapBytes = 0;
+        long directBytes = 0;
+        for (String meter : store.meterIds()) {
+            ReadingSeries series = store.getSeries(meter).get();
+            readings += series.snapshot().size();
+            heapBytes += series.heapBytes();
+            directBytes += series.snapshot().directBytes();
+        }
+        assertThat(store.readingCount()).isEqualTo(readings);
+        assertThat(store.heapBytes()).isEqualTo(heapBytes);
+        assertThat(store.directBytes()).isEqualTo(directBytes);
+    }
+
+    private static ReadingBatch dayOfReadings(int day) {
+        ReadingBatch batch = new ReadingBatch();
+        for (int halfHour = 0; halfHour < 48; halfHour++) {
+            batch.add(START.plus(Duration.ofDays(day)).plusSeconds(1800L * halfHour), BigDecimal.valueOf(halfHour, 1));
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,104 @@
+package uk.tw.energy.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SeriesRollupsTest {
+
+    private static final Instant START = Instant.parse("2021-11-22T00:00:00Z");
+
+    @Test
+    public void shouldKeepDailyRollupsOfAppendedReadingsAndLeaveTheirHoursToTheRawReadings() {
+        ReadingSeries series = new ReadingSeries(ReadingStoreOptions.builder().calendar(new TariffCalendar(ZoneOffset.ofHours(8))).build());
+        ReadingBatch batch = new ReadingBatch();
+        batch.add(START.plusSeconds(60), new BigDecimal("1.5"));
+        batch.add(START.plusSeconds(120), new BigDecimal("0.5"));
+        batch.add(START.plusSeconds(3600), new BigDecimal("2"));
+        series.append(batch);
+
+        assertThat(series.rollups().hourly()).isEmpty();
+        ReadingRollup day = series.rollups().daily().firstEntry().getValue();
+        assertThat(day.getCount()).isEqualTo(3);
+        assertThat(day.sumAsBigDecimal()).isEqualTo(new BigDecimal("4.0"));
+        assertThat(day.getMin()).isEqualTo(FixedPoint.toUnscaled(new BigDecimal("0.5")));
+        assertThat(day.getMax()).isEqualTo(FixedPoint.toUnscaled(new BigDecimal("2")));
+        assertThat(day.firstTime()).isEqualTo(START.plusSeconds(60));
+        assertThat(day.lastTime()).isEqualTo(START.plusSeconds(3600));
+    }
+
+    @Test
+    public void givenArbitraryRangesShouldMatchAggregatingTheRawReadings() {
+        Random random = new Random(42);
+        TariffCalendar calendar = new TariffCalendar(ZoneId.of("Europe/London"));
+        ReadingSeries series = new ReadingSeries(ReadingStoreOptions.builder().calendar(calendar).build());
+        for (int batch = 0; batch < 40; batch++) {
+            ReadingBatch readings = new ReadingBatch();
+            for (int i = 0; i < 50; i++) {
+                long second = random.nextInt(14 * 24 * 3600);
+                readings.add(START.plusSeconds(second), BigDecimal.valueOf(random.nextInt(100_000), random.nextInt(5)));
+            }
+            series.append(readings);
+        }
+
+        for (int query = 0; query < 200; query++) {
+            Instant from = START.plusSeconds(random.nextInt(14 * 24 * 3600) - 3600);
+            Instant to = from.plusSeconds(random.nextInt(8 * 24 * 3600));
+            if (query % 10 == 0) {
+                to = from.plusSeconds(3600 * 24 * 7);
+            }
+
+            assertThat(sums(series.aggregateByDay(from, to))).isEqualTo(sums(bruteForce(series.snapshot(), calendar, from, to)));
+        }
+    }
+
+    @Test
+    public void shouldKeepARunningTotalOfEveryAppendedBatch() {
+        ReadingSeries series = new ReadingSeries();
+        assertThat(series.total()).isNull();
+
+        ReadingBatch later = new ReadingBatch();
+        later.add(START.plusSeconds(7200), new BigDecimal("2.25"));
+        series.append(later);
+        ReadingBatch earlier = new ReadingBatch();
+        earlier.add(START.plusSeconds(30).plusNanos(500), new BigDecimal("1"));
+        earlier.add(START.plusSeconds(3600), new BigDecimal("0.5"));
+        series.append(earlier);
+
+        ReadingRollup total = series.total();
+        assertThat(total.getCount()).isEqualTo(3);
+        assertThat(total.sumAsBigDecimal()).isEqualTo(new BigDecimal("3.75"));
+        assertThat(total.firstTime()).isEqualTo(START.plusSeconds(30).plusNanos(500));
+        assertThat(total.lastTime()).isEqualTo(START.plusSeconds(7200));
+        assertThat(total.elapsedSeconds()).isEqualTo(7169);
+    }
+
+    private static SortedMap<Long, ReadingRollup> bruteForce(SeriesSnapshot snapshot, TariffCalendar calendar, Instant from, Instant to) {
+        SortedMap<Long, ReadingRollup> result = new TreeMap<>();
+        for (int i = 0; i < snapshot.size(); i++) {
+            Instant time = snapshot.time(i);
+            if (time.isAfter(from) && time.isBefore(to)) {
+                ReadingRollup single = new ReadingRollup.Builder()
+                        .add(snapshot.epochSecond(i), snapshot.nano(i), snapshot.value(i), snapshot.scale(i)).build();
+                result.merge(calendar.dayIndex(snapshot.epochSecond(i)), single, ReadingRollup::merge);
+            }
+        }
+        return result;
+    }
+
+    private static Map<Long, String> sums(SortedMap<Long, ReadingRollup> rollups) {
+        Map<Long, String> sums = new TreeMap<>();
+        rollups.forEach((day, rollup) -> sums.put(day, rollup.getCount() + ":" + rollup.sumAsBigDecimal()
+                + ":" + rollup.getMin() + ":" + rollup.getMax() + ":" + rollup.firstTime() + ":" + rollup.lastTime()));
+        return sums;
+    }
+}
@@ -0,0 +1,75 @@
+package uk.tw.energy.store;
+
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.TariffTable;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TariffCalendarTest {
+
+    private static final ZoneId LONDON = ZoneId.of("Europe/London");
+    private static final long EIGHT_HOURS = 8 * 3600;
+
+    @Test
+    public void givenTimesInRandomOrderShouldBucketAsTheZonesWallClockDoes() {
+        TariffCalendar calendar = new TariffCalendar(LONDON);
+        Random random = new Random(42);
+        long from = Instant.parse("2019-01-01T00:00:00Z").getEpochSecond();
+        long to = Instant.parse("2023-01-01T00:00:00Z").getEpochSecond();
+        for (int i = 0; i < 100_000; i++) {
+            long epochSecond = from + (long) (random.nextDouble() * (to - from));
+            ZonedDateTime tariffTime = Instant.ofEpochSecond(epochSecond - EIGHT_HOURS).atZone(LONDON);
+            ZonedDateTime wallClock = Instant.ofEpochSecond(epochSecond).atZone(LONDON);
+
+            assertThat(calendar.hourIndex(epochSecond))
+                    .isEqualTo(Math.floorDiv(tariffTime.toLocalDateTime().toEpochSecond(ZoneOffset.UTC), 3600));
+            assertThat(calendar.dayIndex(epochSecond)).isEqualTo(tariffTime.toLocalDate().toEpochDay());
+            assertThat(TariffTable.slotOfMinuteOfWeek(calendar.minuteOfWeek(epochSecond)))
+                    .isEqualTo(TariffTable.slot(wallClock.toLocalDateTime()));
+        }
+    }
+
+    @Test
+    public void givenTheClocksGoingBackShouldBucketTheRepeatedHourTogether() {
+        TariffCalendar calendar = new TariffCalendar(LONDON);
+        long clocksGoBack = Instant.parse("2021-10-31T01:00:00Z").getEpochSecond();
+
+        assertThat(calendar.hourIndex(clocksGoBack + EIGHT_HOURS - 3600))
+                .isEqualTo(calendar.hourIndex(clocksGoBack + EIGHT_HOURS + 3599));
+        assertThat(calendar.minuteOfWeek(clocksGoBack - 1)).isEqualTo(6 * 24 * 60 + 60 + 59);
+        assertThat(calendar.minuteOfWeek(clocksGoBack)).isEqualTo(6 * 24 * 60 + 60);
+    }
+
+    @Test
+    public void givenAWednesdayShouldSpanMondayToMondayAtEightLocalTime() {
+        TariffCalendar calendar = new TariffCalendar(LONDON);
+
+        TariffCalendar.Window week = calendar.week(Instant.parse("2021-03-31T12:00:00Z"));
+        TariffCalendar.Window lastWeek = week.previous();
+
+        assertThat(TariffCalendar.dayOfWeek(week.getFromDay())).isEqualTo(DayOfWeek.MONDAY);
+        assertThat(week.getToDay() - week.getFromDay()).isEqualTo(7);
+        assertThat(week.from()).isEqualTo(Instant.parse("2021-03-29T07:00:00Z").minusNanos(1));
+        assertThat(week.to()).isEqualTo(Instant.parse("2021-04-05T07:00:00Z"));
+        assertThat(lastWeek.from()).isEqualTo(Instant.parse("2021-03-22T08:00:00Z").minusNanos(1));
+        assertThat(lastWeek.to()).isEqualTo(Instant.parse("2021-03-29T07:00:00Z"));
+    }
+
+    @Test
+    public void givenMondayBeforeEightShouldFallInThePreviousWeek() {
+        TariffCalendar calendar = new TariffCalendar(ZoneOffset.UTC);
+
+        TariffCalendar.Window week = calendar.week(Instant.parse("2021-11-22T07:59:59Z"));
+
+        assertThat(week.to()).isEqualTo(Instant.parse("2021-11-22T08:00:00Z"));
+        assertThat(calendar.day(Instant.parse("2021-11-22T08:00:00Z")).from())
+                .isEqualTo(Instant.parse("2021-11-22T08:00:00Z").minusNanos(1));
+    }
+}